@@ -0,0 +1,213 @@
+package com.dpe.lesspay2.benchmark;
+
+import com.dpe.lesspay2.demo.dto.ChannelExtraDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayinOrderDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO.PayoutOrderDetailDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark payloads
+ *
+ * Request bodies mirror the Payin, Card Payment and Payout Batch examples, with fixed
+ * values so every run measures the same bytes. Webhook bodies are the samples from
+ * PayoutWebhookVerifyExample.
+ */
+public final class Payloads {
+
+    public static final String APP_SECRET = "YOUR_APP_SECRET";
+
+    /**
+     * Payout callback sample (PayoutQueryVO with two details)
+     */
+    public static final String PAYOUT_WEBHOOK = """
+            {
+                "pay_order_id": "P202501130001",
+                "request_id": "PO1736740800001",
+                "order_status": "SUCCEED",
+                "currency": "PHP",
+                "total_amount": "1000.00",
+                "decimal_places": 2,
+                "fail_reason": null,
+                "created_at": "2025-01-13T10:00:00.000+08:00",
+                "details": [
+                    {
+                        "payout_order_detail_id": "POD202501130001",
+                        "mch_order_id": "MCH_001",
+                        "amount": "500.00",
+                        "actual_amount": "500.00",
+                        "status": "Succeeded",
+                        "audit_state": "APPROVED",
+                        "fail_reason": null,
+                        "rejected_reason": null,
+                        "channel_order_no": "CH_001",
+                        "bank_account_no": "1234****5678",
+                        "bank_account_name": "J****N",
+                        "bank_account_type": "business",
+                        "bank_name": "BDO",
+                        "bank_country_code": "PH",
+                        "bank_swift_code": "BNORPHMM",
+                        "success_time": "2025-01-13T10:01:40.000+08:00"
+                    },
+                    {
+                        "payout_order_detail_id": "POD202501130002",
+                        "mch_order_id": "MCH_002",
+                        "amount": "500.00",
+                        "actual_amount": "500.00",
+                        "status": "Succeeded",
+                        "audit_state": "APPROVED",
+                        "fail_reason": null,
+                        "rejected_reason": null,
+                        "channel_order_no": "CH_002",
+                        "bank_account_no": "8765****4321",
+                        "bank_account_name": "M****Y",
+                        "bank_account_type": "individual",
+                        "bank_name": "BPI",
+                        "bank_country_code": "PH",
+                        "bank_swift_code": "BPIIPHMM",
+                        "success_time": "2025-01-13T10:01:40.000+08:00"
+                    }
+                ]
+            }
+            """;
+
+    /**
+     * Payout callback sample without details
+     */
+    public static final String PAYOUT_WEBHOOK_NO_DETAILS = """
+            {
+                "pay_order_id": "P202501130001",
+                "request_id": "PO1736740800001",
+                "order_status": "SUCCEED",
+                "currency": "PHP",
+                "total_amount": "1000.00",
+                "decimal_places": 2,
+                "created_at": "2025-01-13T10:00:00.000+08:00",
+                "details": []
+            }
+            """;
+
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private Payloads() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * Build a request body by name: payin, card, or batch followed by the detail count (e.g. batch100)
+     */
+    public static Object request(String name) {
+        if ("payin".equals(name)) {
+            return payin();
+        }
+        if ("card".equals(name)) {
+            return cardPayin();
+        }
+        if (name.startsWith("batch")) {
+            return batchPayout(Integer.parseInt(name.substring("batch".length())));
+        }
+        throw new IllegalArgumentException("Unknown payload: " + name);
+    }
+
+    /**
+     * Build a webhook body by name: payout or payoutNoDetails
+     */
+    public static String webhook(String name) {
+        return switch (name) {
+            case "payout" -> PAYOUT_WEBHOOK;
+            case "payoutNoDetails" -> PAYOUT_WEBHOOK_NO_DETAILS;
+            default -> throw new IllegalArgumentException("Unknown webhook payload: " + name);
+        };
+    }
+
+    /**
+     * Cashier mode payin (PayinExample)
+     */
+    public static CreatePayinOrderDTO payin() {
+        CreatePayinOrderDTO dto = new CreatePayinOrderDTO();
+        dto.setRequestId("MCH1736740800001");
+        dto.setProductName("Test Product");
+        dto.setDescription("This is a test order for demo");
+        dto.setTargetAmount("100.00");
+        dto.setTargetCurrency("HKD");
+        dto.setTransactionType("PAY_IN");
+        dto.setSuccessUrl("https://www.example.com/success");
+        dto.setFailUrl("https://www.example.com/fail");
+        dto.setApiVersion("V2");
+        dto.setPayAccessType(1);
+        dto.setNotifyUrl("https://www.example.com/notify");
+        dto.setExpiredTime(1800);
+        return dto;
+    }
+
+    /**
+     * OpenAPI direct card payin with nested ChannelExtraDTO (CardPaymentExample)
+     */
+    public static CreatePayinOrderDTO cardPayin() {
+        CreatePayinOrderDTO dto = new CreatePayinOrderDTO();
+        dto.setRequestId("M1736740800001");
+        dto.setProductName("Lesspay Order");
+        dto.setDescription("Lesspay Order Description");
+        dto.setTargetAmount("100");
+        dto.setTargetCurrency("CNY");
+        dto.setTransactionType("PAY_IN");
+        dto.setSuccessUrl("https://www.doopayment.com");
+        dto.setFailUrl("https://www.doopayment.com");
+        dto.setNotifyUrl("https://merchant.domain.com/api/callbackUrl");
+        dto.setApiVersion("V2");
+        dto.setExpiredTime(1800);
+        dto.setPayAccessType(2);
+        dto.setWayType("CARD_PAYMENT");
+
+        ChannelExtraDTO extra = new ChannelExtraDTO();
+        extra.setExtraType("card");
+        extra.setCardData(ChannelExtraDTO.CardData.builder()
+                .number("4242424242424242")
+                .expiryMonth(12)
+                .expiryYear(2027)
+                .cvv("123")
+                .storeForFutureUse(true)
+                .build());
+        dto.setChannelExtra(extra);
+        return dto;
+    }
+
+    /**
+     * Bank payout batch with the given number of details (PayoutBatchExample)
+     */
+    public static CreatePayoutOrderDTO batchPayout(int details) {
+        Random random = new Random(details);
+        CreatePayoutOrderDTO dto = new CreatePayoutOrderDTO();
+        dto.setRequestId("PO17367408000011234");
+        dto.setCurrency("PHP");
+        dto.setProductName("payout product");
+        dto.setDescription("payout product");
+        dto.setNotifyUrl("https://www.example.com/payout-notify");
+        dto.setDestinationType("bank");
+        dto.setWayCode("TAZAPAY_PAYOUT");
+
+        List<PayoutOrderDetailDTO> list = new ArrayList<>(details);
+        long total = 0;
+        for (int i = 0; i < details; i++) {
+            int amount = 100 + random.nextInt(400);
+            total += amount;
+            PayoutOrderDetailDTO detail = new PayoutOrderDetailDTO();
+            detail.setMchOrderId("POD1736740800001" + (100000 + i));
+            detail.setAmount(String.valueOf(amount));
+            detail.setBankAccountName("account_name_" + (1000 + random.nextInt(9000)));
+            detail.setBankAccountNo("138" + (100_000_000 + random.nextInt(900_000_000)));
+            detail.setBankAccountType("business");
+            detail.setBankCountryCode("PH");
+            detail.setBankName("Hong Kong and Shanghai Banking Corp.");
+            detail.setBankSwiftCode("HSBCPH22");
+            list.add(detail);
+        }
+        dto.setTotalAmount(String.valueOf(total));
+        dto.setPayoutOrderDetails(list);
+        return dto;
+    }
+}
@@ -0,0 +1,60 @@
+package com.dpe.lesspay2.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * fastjson DTO serialization benchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"payin", "card", "batch10", "batch100", "batch1000"})
+    public String payload;
+
+    private Object body;
+
+    @Setup
+    public void setUp() {
+        body = Payloads.request(payload);
+    }
+
+    /**
+     * String body, as the examples pass to RequestBody.create
+     */
+    @Benchmark
+    public String toJSONString() {
+        return JSON.toJSONString(body);
+    }
+
+    /**
+     * String body encoded to UTF-8, which is what OkHttp sends
+     */
+    @Benchmark
+    public byte[] toJSONStringUtf8() {
+        return JSON.toJSONString(body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] toJSONBytes() {
+        return JSON.toJSONBytes(body);
+    }
+}
@@ -0,0 +1,76 @@
+package com.dpe.lesspay2.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.dpe.lesspay2.demo.sign.CanonicalSigner;
+import com.dpe.lesspay2.demo.sign.SignedBody;
+import com.dpe.lesspay2.demo.util.SignUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request signing benchmark
+ *
+ * SignUtil.createSign mutates its input, so each invocation parses a fresh JSONObject
+ * from the serialized body, exactly as the examples do before signing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignBenchmark {
+
+    @Param({"payin", "card", "batch10", "batch100", "batch1000"})
+    public String payload;
+
+    private Object body;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        body = Payloads.request(payload);
+        json = JSON.toJSONString(body);
+        String expected = SignUtil.createSign(JSON.parseObject(json), Payloads.APP_SECRET);
+        if (!expected.equals(CanonicalSigner.signObject(body, Payloads.APP_SECRET))) {
+            throw new IllegalStateException("CanonicalSigner disagrees with SignUtil for " + payload);
+        }
+    }
+
+    /**
+     * SignUtil on a parsed body, as in the examples
+     */
+    @Benchmark
+    public String signUtilCreateSign() {
+        return SignUtil.createSign(JSON.parseObject(json), Payloads.APP_SECRET);
+    }
+
+    /**
+     * Streaming signer on the DTO itself
+     */
+    @Benchmark
+    public String canonicalSigner() {
+        return CanonicalSigner.signObject(body, Payloads.APP_SECRET);
+    }
+
+    /**
+     * What LesspayApiClient.post() does: body bytes and signature from one traversal
+     */
+    @Benchmark
+    public String signedBody() {
+        try (SignedBody signed = SignedBody.of(body, Payloads.APP_SECRET)) {
+            return signed.getSignature();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.dpe.lesspay2.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.sign.CanonicalSigner;
+import com.dpe.lesspay2.demo.util.SignUtil;
+import com.dpe.lesspay2.demo.webhook.WebhookVerifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Webhook signature verification benchmark on the PayoutWebhookVerifyExample samples
+ *
+ * Each invocation starts from the raw body and the X-Auth-Signature header value,
+ * as a webhook receiver does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookVerifyBenchmark {
+
+    @Param({"payout", "payoutNoDetails"})
+    public String payload;
+
+    private String body;
+    private String signature;
+    private WebhookVerifier verifier;
+
+    @Setup
+    public void setUp() {
+        body = Payloads.webhook(payload);
+        signature = SignUtil.createSign(JSON.parseObject(body), Payloads.APP_SECRET);
+        ApiConfig config = new ApiConfig();
+        config.setAppSecret(Payloads.APP_SECRET);
+        verifier = new WebhookVerifier(config);
+        if (verifier.verifyPayout(body, signature) == null) {
+            throw new IllegalStateException("WebhookVerifier rejects the " + payload + " sample");
+        }
+    }
+
+    /**
+     * Receiver pseudo code from PayoutWebhookVerifyExample
+     */
+    @Benchmark
+    public boolean signUtilVerify() {
+        return SignUtil.createSign(JSON.parseObject(body), Payloads.APP_SECRET).equals(signature);
+    }
+
+    @Benchmark
+    public boolean canonicalSignerVerify() {
+        return CanonicalSigner.sign(JSON.parseObject(body), Payloads.APP_SECRET).equals(signature);
+    }
+
+    /**
+     * Production verifier: single parse, constant-time comparison, parsed notification returned
+     */
+    @Benchmark
+    public Object webhookVerifier() {
+        return verifier.verifyPayout(body, signature);
+    }
+}
@@ -0,0 +1,266 @@
+package com.dpe.lesspay2.benchmark.load;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.Feature;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Load test report
+ *
+ * One run as JSON: its settings, and per operation (plus "all") the throughput, the outcome counts
+ * and the response and service time percentiles in milliseconds, followed by the connection acquire
+ * figures of the client. {@link #compare} renders runs as Markdown tables, each value with its change
+ * against the first run, and only the settings that differ between them.
+ */
+public final class LoadReport {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final JSONObject json;
+
+    LoadReport(String label, Map<String, String> settings) {
+        this.json = new JSONObject(true);
+        json.put("label", label);
+        json.put("started_at", System.currentTimeMillis());
+        json.put("settings", new JSONObject(new LinkedHashMap<>(settings)));
+        json.put("operations", new JSONObject(true));
+        json.put("connections", new JSONObject(true));
+    }
+
+    private LoadReport(JSONObject json) {
+        this.json = json;
+    }
+
+    public static LoadReport read(Path file) throws IOException {
+        return new LoadReport(JSON.parseObject(Files.readString(file, StandardCharsets.UTF_8), Feature.OrderedField));
+    }
+
+    public void write(Path file) throws IOException {
+        Files.writeString(file, JSON.toJSONString(json, SerializerFeature.PrettyFormat), StandardCharsets.UTF_8);
+    }
+
+    public String getLabel() {
+        return json.getString("label");
+    }
+
+    long getStartedAt() {
+        return json.getLongValue("started_at");
+    }
+
+    /**
+     * @param seconds      Length of the measured period
+     * @param responseTime Microseconds from the intended start
+     * @param serviceTime  Microseconds from the actual send
+     */
+    void addOperation(String name, double seconds, Histogram responseTime, Histogram serviceTime,
+                      long succeeded, long failed, long rejected, long dropped) {
+        JSONObject operation = new JSONObject(true);
+        operation.put("throughput", round((succeeded + failed + rejected) / seconds));
+        operation.put("succeeded", succeeded);
+        operation.put("failed", failed);
+        operation.put("rejected", rejected);
+        operation.put("dropped", dropped);
+        operation.put("response_time_ms", percentiles(responseTime));
+        operation.put("service_time_ms", percentiles(serviceTime));
+        json.getJSONObject("operations").put(name, operation);
+    }
+
+    void addConnections(String connection, long count, double meanMillis, double maxMillis) {
+        JSONObject acquire = new JSONObject(true);
+        acquire.put("count", count);
+        acquire.put("mean_ms", round(meanMillis));
+        acquire.put("max_ms", round(maxMillis));
+        json.getJSONObject("connections").put(connection, acquire);
+    }
+
+    /**
+     * Render runs side by side; the first one is the baseline of the changes in parentheses
+     */
+    public static String compare(List<LoadReport> reports) {
+        StringBuilder out = new StringBuilder();
+        List<String> labels = new ArrayList<>();
+        for (LoadReport report : reports) {
+            labels.add(report.getLabel());
+        }
+
+        Set<String> keys = new LinkedHashSet<>();
+        for (LoadReport report : reports) {
+            keys.addAll(report.json.getJSONObject("settings").keySet());
+        }
+        keys.remove("label");
+        // Written by earlier versions of the load test
+        keys.remove("app-secret");
+        List<String[]> settingRows = new ArrayList<>();
+        for (String key : keys) {
+            String[] row = new String[reports.size() + 1];
+            row[0] = key;
+            boolean differs = false;
+            for (int i = 0; i < reports.size(); i++) {
+                row[i + 1] = Objects.toString(reports.get(i).json.getJSONObject("settings").getString(key), "");
+                differs |= !row[i + 1].equals(row[1]);
+            }
+            if (differs || reports.size() == 1) {
+                settingRows.add(row);
+            }
+        }
+        if (!settingRows.isEmpty()) {
+            out.append("### Settings\n\n");
+            table(out, "setting", labels, settingRows);
+        }
+
+        Set<String> operations = new LinkedHashSet<>();
+        for (LoadReport report : reports) {
+            operations.addAll(report.json.getJSONObject("operations").keySet());
+        }
+        for (String operation : operations) {
+            List<String[]> rows = new ArrayList<>();
+            rows.add(metric(reports, "throughput (req/s)", r -> number(operation(r, operation), "throughput")));
+            rows.add(metric(reports, "error rate (%)", r -> errorRate(operation(r, operation))));
+            for (String name : new String[]{"p50", "p90", "p99", "p99.9", "max"}) {
+                rows.add(metric(reports, "response " + name + " (ms)",
+                        r -> number(section(operation(r, operation), "response_time_ms"), name)));
+            }
+            for (String name : new String[]{"p50", "p99"}) {
+                rows.add(metric(reports, "service " + name + " (ms)",
+                        r -> number(section(operation(r, operation), "service_time_ms"), name)));
+            }
+            out.append("### ").append(operation).append("\n\n");
+            table(out, "metric", labels, rows);
+        }
+
+        Set<String> connections = new LinkedHashSet<>();
+        for (LoadReport report : reports) {
+            connections.addAll(report.json.getJSONObject("connections").keySet());
+        }
+        if (!connections.isEmpty()) {
+            List<String[]> rows = new ArrayList<>();
+            for (String connection : connections) {
+                rows.add(metric(reports, connection + " count",
+                        r -> number(r.json.getJSONObject("connections").getJSONObject(connection), "count")));
+                rows.add(metric(reports, connection + " acquire mean (ms)",
+                        r -> number(r.json.getJSONObject("connections").getJSONObject(connection), "mean_ms")));
+            }
+            out.append("### Connections\n\n");
+            table(out, "metric", labels, rows);
+        }
+        return out.toString();
+    }
+
+    private static JSONObject operation(LoadReport report, String name) {
+        return report.json.getJSONObject("operations").getJSONObject(name);
+    }
+
+    private static JSONObject section(JSONObject operation, String name) {
+        return operation != null ? operation.getJSONObject(name) : null;
+    }
+
+    private static Double number(JSONObject object, String name) {
+        return object != null && object.get(name) != null ? object.getDouble(name) : null;
+    }
+
+    private static Double errorRate(JSONObject operation) {
+        if (operation == null) {
+            return null;
+        }
+        double errors = operation.getLongValue("failed") + operation.getLongValue("rejected") + operation.getLongValue("dropped");
+        double total = errors + operation.getLongValue("succeeded");
+        return total > 0 ? round(100 * errors / total) : 0.0;
+    }
+
+    private static String[] metric(List<LoadReport> reports, String name, Function<LoadReport, Double> value) {
+        String[] row = new String[reports.size() + 1];
+        row[0] = name;
+        Double baseline = value.apply(reports.get(0));
+        for (int i = 0; i < reports.size(); i++) {
+            Double current = value.apply(reports.get(i));
+            if (current == null) {
+                row[i + 1] = "-";
+            } else if (i == 0 || baseline == null || baseline == 0) {
+                row[i + 1] = format(current);
+            } else {
+                row[i + 1] = String.format(Locale.ROOT, "%s (%+.1f%%)", format(current), 100 * (current - baseline) / baseline);
+            }
+        }
+        return row;
+    }
+
+    private static void table(StringBuilder out, String first, List<String> labels, List<String[]> rows) {
+        out.append("| ").append(first);
+        for (String label : labels) {
+            out.append(" | ").append(label);
+        }
+        out.append(" |\n|---");
+        out.append("|---:".repeat(labels.size()));
+        out.append("|\n");
+        for (String[] row : rows) {
+            out.append("| ").append(String.join(" | ", row)).append(" |\n");
+        }
+        out.append('\n');
+    }
+
+    private static JSONObject percentiles(Histogram histogram) {
+        JSONObject percentiles = new JSONObject(true);
+        percentiles.put("count", histogram.getTotalCount());
+        percentiles.put("mean", round(histogram.getMean() / 1000));
+        for (double percentile : PERCENTILES) {
+            percentiles.put("p" + format(percentile), round(histogram.getValueAtPercentile(percentile) / 1000.0));
+        }
+        percentiles.put("max", round(histogram.getMaxValue() / 1000.0));
+        return percentiles;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    /**
+     * HdrHistogram log of the run, one tagged interval per operation, readable by HistogramLogProcessor and the plotters
+     */
+    static final class HistogramLog implements Closeable {
+
+        private final PrintStream stream;
+        private final HistogramLogWriter writer;
+
+        HistogramLog(Path file) throws IOException {
+            this.stream = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8);
+            this.writer = new HistogramLogWriter(stream);
+            writer.outputLogFormatVersion();
+            writer.outputComment("Values in microseconds, response time from the intended start");
+            writer.outputLegend();
+        }
+
+        void write(String tag, Histogram histogram) {
+            histogram.setTag(tag);
+            // Microsecond values are logged as milliseconds
+            writer.outputIntervalHistogram(histogram.getStartTimeStamp() / 1000.0, histogram.getEndTimeStamp() / 1000.0, histogram, 1000.0);
+        }
+
+        @Override
+        public void close() {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.dpe.lesspay2.benchmark.load;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.benchmark.Payloads;
+import com.dpe.lesspay2.demo.client.HttpClients;
+import com.dpe.lesspay2.demo.client.LesspayApiClient;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayinOrderDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO;
+import com.dpe.lesspay2.demo.mock.Faults;
+import com.dpe.lesspay2.demo.mock.Latency;
+import com.dpe.lesspay2.demo.mock.MockGateway;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load test of LesspayApiClient
+ *
+ * Requests are started at a target rate (Poisson or constant arrivals) whatever the latency of the
+ * ones before, unlike a closed loop of threads that waits for each response. Response time is
+ * measured from the intended start time, so time spent queued behind a saturated dispatcher or
+ * connection pool is counted instead of hidden (coordinated omission). Service time, from the
+ * actual postAsync call, is recorded next to it; the two part when the harness itself falls behind.
+ *
+ * Traffic is a weighted mix of payin and payout creation and single order queries, sent by default
+ * to an embedded MockGateway with a log-normal latency. Each run writes a JSON report (see
+ * {@link LoadReport}) and an HdrHistogram log; {@code compare} prints runs side by side.
+ *
+ * Usage:
+ * <pre>
+ * java -cp target/benchmarks.jar com.dpe.lesspay2.benchmark.load.LoadTest rate=500 duration=60s max-requests-per-host=64 label=host64
+ * java -cp target/benchmarks.jar com.dpe.lesspay2.benchmark.load.LoadTest compare load-reports/host64.json load-reports/host128.json
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final String APP_ID = "LOAD_TEST_APP_ID";
+
+    /**
+     * Recorded values are microseconds, up to one hour
+     */
+    private static final long HIGHEST_TRACKABLE = TimeUnit.HOURS.toMicros(1);
+
+    private static final int CREATED_IDS = 4096;
+
+    private final Map<String, String> settings;
+    private final Map<Operation, Stats> stats = new LinkedHashMap<>();
+    private final Map<Operation, Integer> mix;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReferenceArray<String> payinIds = new AtomicReferenceArray<>(CREATED_IDS);
+    private final AtomicReferenceArray<String> payoutIds = new AtomicReferenceArray<>(CREATED_IDS);
+    private final AtomicLong payinCreated = new AtomicLong();
+    private final AtomicLong payoutCreated = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36).toUpperCase(Locale.ROOT);
+
+    private LoadTest(Map<String, String> settings) {
+        this.settings = settings;
+        this.mix = parseMix(settings.get("mix"));
+        for (Operation operation : mix.keySet()) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "compare".equals(args[0])) {
+            List<LoadReport> reports = new ArrayList<>();
+            for (int i = 1; i < args.length; i++) {
+                reports.add(LoadReport.read(Path.of(args[i])));
+            }
+            if (reports.isEmpty()) {
+                throw new IllegalArgumentException("compare needs at least one report");
+            }
+            System.out.println(LoadReport.compare(reports));
+            return;
+        }
+        Map<String, String> settings = defaults();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0 || !settings.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown argument: " + arg + "; known: " + settings.keySet());
+            }
+            settings.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        LoadReport report = new LoadTest(settings).run();
+        Path directory = Path.of(settings.get("report-dir"));
+        Files.createDirectories(directory);
+        Path file = directory.resolve(report.getLabel() + ".json");
+        report.write(file);
+        System.out.println(LoadReport.compare(List.of(report)));
+        System.out.println("Report written to " + file);
+        if (!settings.get("baseline").isEmpty()) {
+            System.out.println(LoadReport.compare(List.of(LoadReport.read(Path.of(settings.get("baseline"))), report)));
+        }
+    }
+
+    /**
+     * Arguments and their defaults
+     */
+    private static Map<String, String> defaults() {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("label", "run-" + System.currentTimeMillis());
+        settings.put("rate", "200");
+        settings.put("arrival", "poisson");
+        settings.put("duration", "60s");
+        settings.put("warmup", "10s");
+        settings.put("mix", "payin=40,payout=30,payin-query=15,payout-query=15");
+        settings.put("max-outstanding", "10000");
+        settings.put("seed", "42");
+        // Client settings under test
+        settings.put("max-requests", "256");
+        settings.put("max-requests-per-host", "128");
+        settings.put("max-idle-connections", "32");
+        settings.put("http2", "true");
+        settings.put("read-timeout", "30s");
+        settings.put("rate-limit", "false");
+        settings.put("circuit-breaker", "false");
+        // Target: the embedded mock unless base-url is set
+        settings.put("base-url", "");
+        settings.put("app-id", APP_ID);
+        settings.put("app-secret", Payloads.APP_SECRET);
+        settings.put("mock-median", "50ms");
+        settings.put("mock-p99", "400ms");
+        settings.put("mock-error-rate", "0");
+        settings.put("report-dir", "load-reports");
+        settings.put("baseline", "");
+        return settings;
+    }
+
+    private LoadReport run() throws IOException, InterruptedException {
+        MockGateway gateway = null;
+        String baseUrl = settings.get("base-url");
+        if (baseUrl.isEmpty()) {
+            gateway = new MockGateway(Map.of(settings.get("app-id"), settings.get("app-secret"))).start();
+            gateway.setLatency(null, Latency.logNormal(duration("mock-median"), duration("mock-p99")));
+            Faults faults = new Faults();
+            faults.setErrorRate(Double.parseDouble(settings.get("mock-error-rate")));
+            gateway.setFaults(null, faults);
+            baseUrl = gateway.getBaseUrl();
+        }
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.setBaseUrl(baseUrl);
+        apiConfig.setAppId(settings.get("app-id"));
+        apiConfig.setAppSecret(settings.get("app-secret"));
+        apiConfig.getHttp().setMaxRequests(Integer.parseInt(settings.get("max-requests")));
+        apiConfig.getHttp().setMaxRequestsPerHost(Integer.parseInt(settings.get("max-requests-per-host")));
+        apiConfig.getHttp().setMaxIdleConnections(Integer.parseInt(settings.get("max-idle-connections")));
+        apiConfig.getHttp().setHttp2(Boolean.parseBoolean(settings.get("http2")));
+        apiConfig.getHttp().getTimeouts().setRead(duration("read-timeout"));
+        apiConfig.getRateLimit().setEnabled(Boolean.parseBoolean(settings.get("rate-limit")));
+        apiConfig.getCircuitBreaker().setEnabled(Boolean.parseBoolean(settings.get("circuit-breaker")));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OkHttpClient httpClient = HttpClients.create(apiConfig.getHttp());
+        try {
+            LesspayApiClient apiClient = new LesspayApiClient(apiConfig, httpClient, registry);
+            long elapsed = drive(apiClient, duration("warmup").toNanos(), duration("duration").toNanos());
+            return report(elapsed, registry);
+        } finally {
+            HttpClients.shutdown(httpClient);
+            if (gateway != null) {
+                gateway.close();
+            }
+        }
+    }
+
+    /**
+     * Start requests at their intended times until warmup + duration has passed, then wait for the last responses
+     *
+     * @return Nanoseconds from the end of the warmup to the last response
+     */
+    private long drive(LesspayApiClient apiClient, long warmupNanos, long durationNanos) throws InterruptedException {
+        double rate = Double.parseDouble(settings.get("rate"));
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        boolean poisson = "poisson".equalsIgnoreCase(settings.get("arrival"));
+        int maxOutstanding = Integer.parseInt(settings.get("max-outstanding"));
+        SplittableRandom random = new SplittableRandom(Long.parseLong(settings.get("seed")));
+        double meanGapNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        double intended = start;
+        while (intended < end) {
+            long due = (long) intended;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            Operation operation = pick(random);
+            boolean measured = due >= measureFrom;
+            if (outstanding.get() >= maxOutstanding) {
+                if (measured) {
+                    stats.get(operation).dropped.increment();
+                }
+            } else {
+                send(apiClient, operation, due, measured);
+            }
+            intended += poisson ? -Math.log(1 - random.nextDouble()) * meanGapNanos : meanGapNanos;
+        }
+        long deadline = System.nanoTime() + duration("read-timeout").toNanos() + TimeUnit.SECONDS.toNanos(10);
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // Responses still arriving after the last start count towards the achieved rate
+        return Math.max(end, System.nanoTime()) - measureFrom;
+    }
+
+    private void send(LesspayApiClient apiClient, Operation operation, long intended, boolean measured) {
+        Stats operationStats = stats.get(operation);
+        outstanding.incrementAndGet();
+        long sent = System.nanoTime();
+        apiClient.postAsync(operation.path, body(operation), JSONObject.class).whenComplete((response, error) -> {
+            long now = System.nanoTime();
+            outstanding.decrementAndGet();
+            if (error == null && response.isSuccess()) {
+                remember(operation, response);
+            }
+            if (!measured) {
+                return;
+            }
+            operationStats.responseTime.recordValue(Math.min(HIGHEST_TRACKABLE, TimeUnit.NANOSECONDS.toMicros(now - intended)));
+            operationStats.serviceTime.recordValue(Math.min(HIGHEST_TRACKABLE, TimeUnit.NANOSECONDS.toMicros(now - sent)));
+            if (error != null) {
+                operationStats.failed.increment();
+            } else if (!response.isSuccess()) {
+                operationStats.rejected.increment();
+            } else {
+                operationStats.succeeded.increment();
+            }
+        });
+    }
+
+    private Object body(Operation operation) {
+        String requestId = "LT" + runId + sequence.incrementAndGet();
+        switch (operation) {
+            case PAYIN:
+                CreatePayinOrderDTO payin = Payloads.payin();
+                payin.setRequestId(requestId);
+                payin.setNotifyUrl(null);
+                return payin;
+            case PAYOUT:
+                CreatePayoutOrderDTO payout = Payloads.batchPayout(1);
+                payout.setRequestId(requestId);
+                payout.setNotifyUrl(null);
+                return payout;
+            case PAYIN_QUERY:
+                return Map.of("request_id", created(payinIds, payinCreated));
+            default:
+                return Map.of("request_id", created(payoutIds, payoutCreated));
+        }
+    }
+
+    /**
+     * Keep the request_ids of recently created orders for the queries
+     */
+    private void remember(Operation operation, ApiResponseDTO<JSONObject> response) {
+        String requestId = response.getData() != null ? response.getData().getString("request_id") : null;
+        if (requestId == null) {
+            return;
+        }
+        if (operation == Operation.PAYIN) {
+            payinIds.set((int) (payinCreated.getAndIncrement() % CREATED_IDS), requestId);
+        } else if (operation == Operation.PAYOUT) {
+            payoutIds.set((int) (payoutCreated.getAndIncrement() % CREATED_IDS), requestId);
+        }
+    }
+
+    private static String created(AtomicReferenceArray<String> ids, AtomicLong count) {
+        long filled = Math.min(count.get(), CREATED_IDS);
+        // Before the first order is created, a query for an unknown request_id still loads the endpoint
+        return filled == 0 ? "UNKNOWN" : ids.get(ThreadLocalRandom.current().nextInt((int) filled));
+    }
+
+    private Operation pick(SplittableRandom random) {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int roll = random.nextInt(total);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    private LoadReport report(long elapsedNanos, SimpleMeterRegistry registry) throws IOException {
+        double seconds = elapsedNanos / 1e9;
+        Map<String, String> reported = new LinkedHashMap<>(settings);
+        // Reports are shared and compared on the console; the secret of a real merchant must not be in them
+        reported.remove("app-secret");
+        LoadReport report = new LoadReport(settings.get("label"), reported);
+        Histogram all = new Histogram(HIGHEST_TRACKABLE, 3);
+        Histogram allService = new Histogram(HIGHEST_TRACKABLE, 3);
+        long succeeded = 0;
+        long failed = 0;
+        long rejected = 0;
+        long dropped = 0;
+        Path directory = Path.of(settings.get("report-dir"));
+        Files.createDirectories(directory);
+        try (LoadReport.HistogramLog log = new LoadReport.HistogramLog(directory.resolve(report.getLabel() + ".hlog"))) {
+            for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+                Stats operationStats = entry.getValue();
+                Histogram responseTime = operationStats.responseTime.getIntervalHistogram();
+                Histogram serviceTime = operationStats.serviceTime.getIntervalHistogram();
+                log.write(entry.getKey().key, responseTime);
+                all.add(responseTime);
+                allService.add(serviceTime);
+                report.addOperation(entry.getKey().key, seconds, responseTime, serviceTime, operationStats.succeeded.sum(),
+                        operationStats.failed.sum(), operationStats.rejected.sum(), operationStats.dropped.sum());
+                succeeded += operationStats.succeeded.sum();
+                failed += operationStats.failed.sum();
+                rejected += operationStats.rejected.sum();
+                dropped += operationStats.dropped.sum();
+            }
+            all.setStartTimeStamp(report.getStartedAt());
+            all.setEndTimeStamp(System.currentTimeMillis());
+            log.write("all", all);
+        }
+        report.addOperation("all", seconds, all, allService, succeeded, failed, rejected, dropped);
+        for (Timer timer : registry.find("lesspay.api.connection.acquire").timers()) {
+            String connection = timer.getId().getTag("connection");
+            report.addConnections(connection, timer.count(), timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS));
+        }
+        return report;
+    }
+
+    private Duration duration(String name) {
+        String value = settings.get(name).trim().toLowerCase(Locale.ROOT);
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        return switch (value.charAt(value.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            case 'h' -> Duration.ofHours(amount);
+            default -> throw new IllegalArgumentException(name + " must end with ms, s, m or h: " + value);
+        };
+    }
+
+    /**
+     * Parse "payin=40,payout=30,..." into weights
+     */
+    private static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split("=");
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                mix.put(Operation.of(pair[0].trim()), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("mix has no operation: " + value);
+        }
+        return mix;
+    }
+
+    private enum Operation {
+        PAYIN("payin", "/api/global/v1/pay/create-order"),
+        PAYOUT("payout", "/api/global/payout/batch/create-order"),
+        PAYIN_QUERY("payin-query", "/api/global/v1/pay/query-order"),
+        PAYOUT_QUERY("payout-query", "/api/global/payout/query");
+
+        private final String key;
+        private final String path;
+
+        Operation(String key, String path) {
+            this.key = key;
+            this.path = path;
+        }
+
+        private static Operation of(String key) {
+            for (Operation operation : values()) {
+                if (operation.key.equals(key)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation in mix: " + key);
+        }
+    }
+
+    /**
+     * Latencies and outcomes of one operation; recorded from OkHttp threads
+     */
+    private static final class Stats {
+
+        private final Recorder responseTime = new Recorder(HIGHEST_TRACKABLE, 3);
+        private final Recorder serviceTime = new Recorder(HIGHEST_TRACKABLE, 3);
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+    }
+}
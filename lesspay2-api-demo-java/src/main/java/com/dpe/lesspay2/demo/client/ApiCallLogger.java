@@ -0,0 +1,124 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.sign.SignedBody;
+import com.dpe.lesspay2.demo.util.JsonMasker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request/response logging of LesspayApiClient
+ *
+ * Lines are key=value pairs, each behind a level check:
+ * - INFO: one line per completed call, for a sample-rate share of the calls
+ * - WARN: calls failing with an HTTP error status or an exception, always
+ * - DEBUG: request and response bodies of sampled calls, masked and truncated
+ * - TRACE: the request signature
+ *
+ * Bodies are rendered by {@link JsonMasker} only when the line is actually written.
+ */
+final class ApiCallLogger {
+
+    private static final Logger logger = LoggerFactory.getLogger(LesspayApiClient.class);
+
+    private final JsonMasker masker;
+    private final int maxBodyBytes;
+    private final double sampleRate;
+
+    ApiCallLogger(ApiConfig.Logging settings) {
+        this.masker = new JsonMasker(settings.getMaskedFields());
+        this.maxBodyBytes = settings.getMaxBodyBytes();
+        this.sampleRate = settings.getSampleRate();
+    }
+
+    /**
+     * Start logging a call whose request body has been signed
+     */
+    Call start(String path, SignedBody body) {
+        boolean sampled = sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+        if (sampled && logger.isDebugEnabled()) {
+            logger.debug("lesspay.request path={} bytes={} body={}",
+                    path, body.length(), new LazyBody(body.array(), body.length()));
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("lesspay.request path={} signature={}", path, body.getSignature());
+        }
+        return new Call(path, body.length(), sampled, System.nanoTime());
+    }
+
+    /**
+     * A call in flight
+     */
+    final class Call {
+
+        private final String path;
+        private final int requestBytes;
+        private final boolean sampled;
+        private final long startNanos;
+
+        private Call(String path, int requestBytes, boolean sampled, long startNanos) {
+            this.path = path;
+            this.requestBytes = requestBytes;
+            this.sampled = sampled;
+            this.startNanos = startNanos;
+        }
+
+        void response(int status, String body) {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (status >= 400) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("lesspay.call path={} status={} elapsed_ms={} request_bytes={} body={}",
+                            path, status, elapsedMs, requestBytes, new LazyBody(body));
+                }
+                return;
+            }
+            if (!sampled) {
+                return;
+            }
+            if (logger.isInfoEnabled()) {
+                logger.info("lesspay.call path={} status={} elapsed_ms={} request_bytes={}",
+                        path, status, elapsedMs, requestBytes);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("lesspay.response path={} status={} body={}", path, status, new LazyBody(body));
+            }
+        }
+
+        void failure(Exception e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("lesspay.call path={} elapsed_ms={} request_bytes={} error={}",
+                        path, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), requestBytes, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Body masked and truncated when the log line is formatted
+     */
+    private final class LazyBody {
+
+        private final byte[] bytes;
+        private final int length;
+        private final String text;
+
+        private LazyBody(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+            this.text = null;
+        }
+
+        private LazyBody(String text) {
+            this.bytes = null;
+            this.length = 0;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text == null ? masker.mask(bytes, 0, length, maxBodyBytes) : masker.mask(text, maxBodyBytes);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.sign.SignedBody;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of LesspayApiClient
+ *
+ * - lesspay.api.calls: call latency by path, way_code, HTTP status, business code and exception
+ * - lesspay.api.serialization / lesspay.api.signing: time to write and to sign request bodies, by path
+ * - lesspay.api.connection.acquire: time from call start until a connection is acquired,
+ *   including dispatcher queueing and pool waits; connection=pooled|new
+ * - lesspay.api.circuit.state / lesspay.api.circuit.failure.rate: state (0 closed, 1 half-open, 2 open)
+ *   and window failure rate of each circuit breaker, by path and way_code
+ *
+ * Every meter is tagged with the app_id of its merchant client, so merchants sharing a registry stay apart.
+ * Timers publish fixed-bucket percentile histograms, recorded with lock-free counters,
+ * and are cached per tag combination so recording does not build tags on the hot path.
+ */
+final class ApiMetrics {
+
+    static final String NONE = "none";
+
+    private static final ClassValue<MethodHandle> WAY_CODE_GETTERS = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return MethodHandles.publicLookup()
+                        .findVirtual(type, "getWayCode", MethodType.methodType(String.class))
+                        .asType(MethodType.methodType(Object.class, Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return null;
+            }
+        }
+    };
+
+    private final MeterRegistry registry;
+    private final boolean histogram;
+    private final String appId;
+    private final Map<CallKey, Timer> callTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> serializationTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> signingTimers = new ConcurrentHashMap<>();
+    private final Timer pooledAcquireTimer;
+    private final Timer newAcquireTimer;
+
+    /**
+     * @param appId Merchant AppId of the client, tagged as app_id
+     */
+    ApiMetrics(MeterRegistry registry, ApiConfig.Metrics settings, String appId) {
+        this.registry = registry;
+        this.histogram = settings.isPercentileHistogram();
+        this.appId = appId != null ? appId : NONE;
+        this.pooledAcquireTimer = timer("lesspay.api.connection.acquire", "connection", "pooled");
+        this.newAcquireTimer = timer("lesspay.api.connection.acquire", "connection", "new");
+    }
+
+    /**
+     * Record the encoding phases of a request body
+     */
+    void recordEncoding(String path, SignedBody body) {
+        serializationTimers.computeIfAbsent(path, p -> timer("lesspay.api.serialization", "path", p))
+                .record(body.getSerializationNanos(), TimeUnit.NANOSECONDS);
+        signingTimers.computeIfAbsent(path, p -> timer("lesspay.api.signing", "path", p))
+                .record(body.getSigningNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record a completed call
+     *
+     * @param status       HTTP status, or -1 if no response was received
+     * @param responseBody Response body, null if none
+     * @param exception    Exception the call failed with, null if none
+     */
+    void recordCall(String path, String wayCode, int status, String responseBody, Throwable exception, long nanos) {
+        CallKey key = new CallKey(path, wayCode != null ? wayCode : NONE, status,
+                responseBody != null ? businessCode(responseBody) : NONE,
+                exception != null ? exception.getClass().getSimpleName() : NONE);
+        callTimers.computeIfAbsent(key, k -> Timer.builder("lesspay.api.calls")
+                        .tag("app_id", appId)
+                        .tag("path", k.path())
+                        .tag("way_code", k.wayCode())
+                        .tag("status", k.status() < 0 ? NONE : String.valueOf(k.status()))
+                        .tag("code", k.code())
+                        .tag("exception", k.exception())
+                        .publishPercentileHistogram(histogram)
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * OkHttp listener measuring connection acquisition of each call
+     */
+    EventListener.Factory eventListenerFactory() {
+        return call -> new EventListener() {
+            private final long start = System.nanoTime();
+            private boolean connected;
+
+            @Override
+            public void connectStart(@NotNull Call call, @NotNull InetSocketAddress address, @NotNull Proxy proxy) {
+                connected = true;
+            }
+
+            @Override
+            public void connectionAcquired(@NotNull Call call, @NotNull Connection connection) {
+                (connected ? newAcquireTimer : pooledAcquireTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    /**
+     * Expose the state of a circuit breaker
+     */
+    void registerCircuit(String path, String wayCode, CircuitBreaker breaker) {
+        Gauge.builder("lesspay.api.circuit.state", breaker, b -> b.getState().ordinal())
+                .tag("app_id", appId)
+                .tag("path", path)
+                .tag("way_code", wayCode != null ? wayCode : NONE)
+                .register(registry);
+        Gauge.builder("lesspay.api.circuit.failure.rate", breaker, CircuitBreaker::getFailureRate)
+                .tag("app_id", appId)
+                .tag("path", path)
+                .tag("way_code", wayCode != null ? wayCode : NONE)
+                .register(registry);
+    }
+
+    private Timer timer(String name, String tagKey, String tagValue) {
+        return Timer.builder(name).tag("app_id", appId).tag(tagKey, tagValue).publishPercentileHistogram(histogram)
+                .register(registry);
+    }
+
+    /**
+     * Read the way_code of a request body: a Map entry or a getWayCode() getter
+     */
+    static String wayCode(Object body) {
+        if (body instanceof Map<?, ?> map) {
+            Object wayCode = map.get("way_code");
+            return wayCode != null ? wayCode.toString() : null;
+        }
+        MethodHandle getter = WAY_CODE_GETTERS.get(body.getClass());
+        if (getter == null) {
+            return null;
+        }
+        try {
+            Object wayCode = getter.invoke(body);
+            return wayCode != null ? wayCode.toString() : null;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Find the top-level "code" number of a response envelope without parsing the body
+     *
+     * @return the code, or "none" if the body has no top-level numeric code
+     */
+    static String businessCode(String body) {
+        int depth = 0;
+        int length = body.length();
+        for (int i = 0; i < length; i++) {
+            char c = body.charAt(i);
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (c == '"') {
+                int close = i + 1;
+                while (close < length && body.charAt(close) != '"') {
+                    close += body.charAt(close) == '\\' ? 2 : 1;
+                }
+                if (depth == 1 && close - i == 5 && body.startsWith("code", i + 1)) {
+                    return numberAfterColon(body, close + 1);
+                }
+                i = close;
+            }
+        }
+        return NONE;
+    }
+
+    private static String numberAfterColon(String body, int from) {
+        int i = from;
+        while (i < body.length() && (body.charAt(i) == ' ' || body.charAt(i) == ':')) {
+            i++;
+        }
+        int start = i;
+        while (i < body.length() && (body.charAt(i) == '-' || Character.isDigit(body.charAt(i)))) {
+            i++;
+        }
+        return i > start ? body.substring(start, i) : NONE;
+    }
+
+    private record CallKey(String path, String wayCode, int status, String code, String exception) {
+    }
+}
@@ -0,0 +1,234 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Circuit breaker of one endpoint and way_code
+ *
+ * - CLOSED: calls go through and are counted in a sliding window of {@link #BUCKETS} time buckets;
+ *   once min-calls are in the window, a failure rate or slow call rate over its threshold opens the circuit
+ * - OPEN: calls fail at once for open-duration
+ * - HALF_OPEN: half-open-probes calls go through; if they all succeed the circuit closes with an
+ *   empty window, the first failed or slow one opens it again
+ *
+ * The current state is an immutable phase swapped by compare-and-set; a call reports its outcome
+ * to the phase it was let through in, so outcomes of calls sent before a transition are dropped.
+ * Nothing blocks or locks.
+ */
+final class CircuitBreaker {
+
+    private static final int BUCKETS = 10;
+
+    /**
+     * Circuit states, in the order of the lesspay.api.circuit.state gauge values
+     */
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final ApiConfig.CircuitBreaker settings;
+    private final long slowCallNanos;
+    private final long bucketNanos;
+    private final AtomicReference<Phase> phase;
+
+    CircuitBreaker(ApiConfig.CircuitBreaker settings) {
+        this(settings, settings.getSlowCallThreshold());
+    }
+
+    /**
+     * @param slowCallThreshold Calls slower than this count as slow, for the endpoint of this circuit
+     */
+    CircuitBreaker(ApiConfig.CircuitBreaker settings, Duration slowCallThreshold) {
+        if (settings.getHalfOpenProbes() < 1 || settings.getMinCalls() < 1) {
+            throw new IllegalArgumentException("Circuit breaker needs min-calls and half-open-probes of at least 1");
+        }
+        this.settings = settings;
+        this.slowCallNanos = slowCallThreshold.toNanos();
+        this.bucketNanos = Math.max(1, settings.getWindow().toNanos() / BUCKETS);
+        this.phase = new AtomicReference<>(closed());
+    }
+
+    /**
+     * Let a call through
+     *
+     * @return Permit to pass to {@link #record} or {@link #cancel}, or null if the call is refused
+     */
+    Object tryAcquire() {
+        while (true) {
+            Phase current = phase.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current;
+                case HALF_OPEN:
+                    return current.probes.getAndDecrement() > 0 ? current : null;
+                default:
+                    if (System.nanoTime() - current.until < 0) {
+                        return null;
+                    }
+                    phase.compareAndSet(current, new Phase(State.HALF_OPEN, 0, null, settings.getHalfOpenProbes()));
+            }
+        }
+    }
+
+    /**
+     * Report the outcome of a call let through
+     *
+     * @param failed Network error, HTTP 5xx or a failure code
+     * @param nanos  Call latency
+     */
+    void record(Object permit, boolean failed, long nanos) {
+        Phase acquired = (Phase) permit;
+        boolean slow = nanos > slowCallNanos;
+        if (acquired.state == State.HALF_OPEN) {
+            if (failed || slow) {
+                open(acquired);
+            } else if (acquired.successes.incrementAndGet() >= settings.getHalfOpenProbes()) {
+                phase.compareAndSet(acquired, closed());
+            }
+            return;
+        }
+        Window window = acquired.window;
+        window.record(failed, slow);
+        if (phase.get() != acquired) {
+            return;
+        }
+        long[] totals = window.totals();
+        long calls = totals[0];
+        if (calls >= settings.getMinCalls()
+                && (totals[1] >= settings.getFailureRateThreshold() * calls || totals[2] >= settings.getSlowCallRateThreshold() * calls)) {
+            open(acquired);
+        }
+    }
+
+    /**
+     * Give back the permit of a call that was not sent
+     */
+    void cancel(Object permit) {
+        Phase acquired = (Phase) permit;
+        if (acquired.state == State.HALF_OPEN) {
+            acquired.probes.incrementAndGet();
+        }
+    }
+
+    State getState() {
+        Phase current = phase.get();
+        if (current.state == State.OPEN && System.nanoTime() - current.until >= 0) {
+            return State.HALF_OPEN;
+        }
+        return current.state;
+    }
+
+    /**
+     * @return Share of failed calls in the window, 0 unless closed
+     */
+    double getFailureRate() {
+        Window window = phase.get().window;
+        if (window == null) {
+            return 0;
+        }
+        long[] totals = window.totals();
+        return totals[0] > 0 ? (double) totals[1] / totals[0] : 0;
+    }
+
+    private void open(Phase from) {
+        phase.compareAndSet(from, new Phase(State.OPEN, System.nanoTime() + settings.getOpenDuration().toNanos(), null, 0));
+    }
+
+    private Phase closed() {
+        return new Phase(State.CLOSED, 0, new Window(), 0);
+    }
+
+    private static final class Phase {
+
+        private final State state;
+
+        /**
+         * OPEN: System.nanoTime() from which probes are let through
+         */
+        private final long until;
+
+        /**
+         * CLOSED: calls of this phase
+         */
+        private final Window window;
+
+        /**
+         * HALF_OPEN: probes left to let through, and probes succeeded
+         */
+        private final AtomicInteger probes;
+        private final AtomicInteger successes = new AtomicInteger();
+
+        private Phase(State state, long until, Window window, int probes) {
+            this.state = state;
+            this.until = until;
+            this.window = window;
+            this.probes = new AtomicInteger(probes);
+        }
+    }
+
+    /**
+     * Ring of time buckets; a bucket of an older period is replaced by compare-and-set when reused
+     */
+    private final class Window {
+
+        private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(BUCKETS);
+
+        private void record(boolean failed, boolean slow) {
+            long period = System.nanoTime() / bucketNanos;
+            int index = (int) Math.floorMod(period, (long) BUCKETS);
+            Bucket bucket = buckets.get(index);
+            while (bucket == null || bucket.period != period) {
+                Bucket fresh = new Bucket(period);
+                if (buckets.compareAndSet(index, bucket, fresh)) {
+                    bucket = fresh;
+                } else {
+                    bucket = buckets.get(index);
+                    if (bucket != null && bucket.period > period) {
+                        return;
+                    }
+                }
+            }
+            bucket.calls.incrementAndGet();
+            if (failed) {
+                bucket.failures.incrementAndGet();
+            }
+            if (slow) {
+                bucket.slow.incrementAndGet();
+            }
+        }
+
+        /**
+         * @return Calls, failures and slow calls of the buckets still in the window
+         */
+        private long[] totals() {
+            long oldest = System.nanoTime() / bucketNanos - BUCKETS + 1;
+            long[] totals = new long[3];
+            for (int i = 0; i < BUCKETS; i++) {
+                Bucket bucket = buckets.get(i);
+                if (bucket != null && bucket.period >= oldest) {
+                    totals[0] += bucket.calls.get();
+                    totals[1] += bucket.failures.get();
+                    totals[2] += bucket.slow.get();
+                }
+            }
+            return totals;
+        }
+    }
+
+    private static final class Bucket {
+
+        private final long period;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger slow = new AtomicInteger();
+
+        private Bucket(long period) {
+            this.period = period;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.dpe.lesspay2.demo.client;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a call is refused because the circuit of its endpoint and way_code is open;
+ * nothing has been sent
+ */
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+    private final String wayCode;
+
+    public CircuitOpenException(String path, String wayCode) {
+        super("Circuit open: " + path + (wayCode != null ? " way_code=" + wayCode : ""));
+        this.path = path;
+        this.wayCode = wayCode;
+    }
+
+    /**
+     * @return API endpoint path of the refused call
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return way_code of the refused call, null if it has none
+     */
+    public String getWayCode() {
+        return wayCode;
+    }
+}
@@ -0,0 +1,215 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-side limiter of one endpoint
+ *
+ * A call needs two permits, both taken with compare-and-set only:
+ * - rate: a token bucket kept as the theoretical arrival time of the next call (GCRA), allowing
+ *   burst calls at once after an idle period
+ * - concurrency: calls in flight stay under an AIMD limit, halved on HTTP 429/503, lowered by 10%
+ *   on calls slower than latency-threshold (at most once per {@link #DECREASE_COOLDOWN_NANOS}),
+ *   and raised by one per limit-many successful calls up to max-concurrency
+ *
+ * Under QUEUE, a call waits (without holding a thread) up to max-wait for its permits; under
+ * FAIL_FAST, it fails at once. Refused calls fail with {@link RateLimitedException}.
+ */
+final class EndpointLimiter {
+
+    /**
+     * One decrease per cooldown, so a burst of 429s of calls sent together halves the limit once
+     */
+    private static final long DECREASE_COOLDOWN_NANOS = Duration.ofMillis(500).toNanos();
+
+    private static final Executor DIRECT = Runnable::run;
+
+    private final String path;
+    private final boolean queue;
+    private final long maxWaitNanos;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxConcurrency;
+    private final long latencyThresholdNanos;
+
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+    private final AtomicLong limitBits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime() - DECREASE_COOLDOWN_NANOS);
+    private final Queue<CompletableFuture<Void>> waiters = new ConcurrentLinkedQueue<>();
+
+    EndpointLimiter(String path, ApiConfig.RateLimit settings, ApiConfig.Limit limit) {
+        ApiConfig.Limit defaults = settings.getDefaults();
+        double rate = limit != null && limit.getRate() != null ? limit.getRate() : defaults.getRate();
+        int burst = limit != null && limit.getBurst() != null ? limit.getBurst() : defaults.getBurst();
+        int initial = limit != null && limit.getInitialConcurrency() != null ? limit.getInitialConcurrency() : defaults.getInitialConcurrency();
+        int max = limit != null && limit.getMaxConcurrency() != null ? limit.getMaxConcurrency() : defaults.getMaxConcurrency();
+        Duration threshold = limit != null && limit.getLatencyThreshold() != null ? limit.getLatencyThreshold() : defaults.getLatencyThreshold();
+        if (rate < 0 || burst < 1 || initial < 1 || max < initial) {
+            throw new IllegalArgumentException("Invalid rate limit of " + path + ": rate=" + rate + ", burst=" + burst
+                    + ", initial-concurrency=" + initial + ", max-concurrency=" + max);
+        }
+        this.path = path;
+        this.queue = settings.getPolicy() == ApiConfig.Policy.QUEUE;
+        this.maxWaitNanos = settings.getMaxWait().toNanos();
+        this.intervalNanos = rate > 0 ? (long) (1e9 / rate) : 0;
+        this.toleranceNanos = (burst - 1) * intervalNanos;
+        this.maxConcurrency = max;
+        this.latencyThresholdNanos = threshold.toNanos();
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(initial));
+    }
+
+    /**
+     * Take a rate and a concurrency permit
+     *
+     * @return Future completed once the call may be sent, or failed with RateLimitedException;
+     * every completed permit must be given back with {@link #release}
+     */
+    CompletableFuture<Void> acquire() {
+        long now = System.nanoTime();
+        long deadline = now + maxWaitNanos;
+        long delay = reserveRate(now);
+        if (delay < 0) {
+            return CompletableFuture.failedFuture(new RateLimitedException(path, "Rate limit exceeded"));
+        }
+        if (delay == 0) {
+            return acquireSlot(deadline);
+        }
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, DIRECT)).thenCompose(ignored -> acquireSlot(deadline));
+    }
+
+    /**
+     * Give back the concurrency permit of a completed call and adapt the limit to its outcome
+     *
+     * @param status       HTTP status, or -1 if the call failed without a response
+     * @param latencyNanos Time from the permit to the response
+     */
+    void release(int status, long latencyNanos) {
+        inFlight.decrementAndGet();
+        if (status == 429 || status == 503) {
+            decrease(0.5);
+        } else if (latencyNanos > latencyThresholdNanos) {
+            decrease(0.9);
+        } else if (status > 0 && status < 400) {
+            increase();
+        }
+        drain();
+    }
+
+    /**
+     * @return Current concurrency limit
+     */
+    double getLimit() {
+        return Double.longBitsToDouble(limitBits.get());
+    }
+
+    /**
+     * @return Calls holding a concurrency permit
+     */
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return Delay before the call may start, or -1 if it is refused
+     */
+    private long reserveRate(long now) {
+        if (intervalNanos == 0) {
+            return 0;
+        }
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long delay = Math.max(0, arrival - toleranceNanos - now);
+            if (delay > 0 && (!queue || delay > maxWaitNanos)) {
+                return -1;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, Math.max(arrival, now) + intervalNanos)) {
+                return delay;
+            }
+        }
+    }
+
+    private CompletableFuture<Void> acquireSlot(long deadline) {
+        if (tryIncrement()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long remaining = deadline - System.nanoTime();
+        if (!queue || remaining <= 0) {
+            return CompletableFuture.failedFuture(new RateLimitedException(path, "Concurrency limit reached"));
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        // A permit released before the waiter was queued must not be missed
+        drain();
+        CompletableFuture.delayedExecutor(remaining, TimeUnit.NANOSECONDS, DIRECT).execute(() -> {
+            if (waiter.completeExceptionally(new RateLimitedException(path, "Timed out waiting for a concurrency permit"))) {
+                waiters.remove(waiter);
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * Hand free permits to the oldest waiters
+     */
+    private void drain() {
+        while (!waiters.isEmpty() && tryIncrement()) {
+            CompletableFuture<Void> waiter = waiters.poll();
+            if (waiter == null || !waiter.complete(null)) {
+                // Timed out or taken by another drain; the permit goes back
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private boolean tryIncrement() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) getLimit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void increase() {
+        while (true) {
+            long bits = limitBits.get();
+            double limit = Double.longBitsToDouble(bits);
+            if (limit >= maxConcurrency) {
+                return;
+            }
+            double next = Math.min(maxConcurrency, limit + 1 / limit);
+            if (limitBits.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    private void decrease(double ratio) {
+        long now = System.nanoTime();
+        long last = lastDecrease.get();
+        if (now - last < DECREASE_COOLDOWN_NANOS || !lastDecrease.compareAndSet(last, now)) {
+            return;
+        }
+        while (true) {
+            long bits = limitBits.get();
+            double next = Math.max(1, Double.longBitsToDouble(bits) * ratio);
+            if (limitBits.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                return;
+            }
+        }
+    }
+}
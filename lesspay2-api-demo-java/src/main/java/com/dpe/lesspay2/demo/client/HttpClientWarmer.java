@@ -0,0 +1,78 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Shared HTTP client lifecycle
+ *
+ * On startup, pre-establishes TLS connections to base-url so the first API calls
+ * do not pay for DNS, TCP and TLS handshakes. On shutdown, releases the client's
+ * dispatcher threads and pooled connections.
+ */
+@Component
+public class HttpClientWarmer implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientWarmer.class);
+
+    private final ApiConfig apiConfig;
+    private final OkHttpClient httpClient;
+
+    public HttpClientWarmer(ApiConfig apiConfig, OkHttpClient httpClient) {
+        this.apiConfig = apiConfig;
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public void onApplicationEvent(@NotNull ApplicationReadyEvent event) {
+        warmUp();
+    }
+
+    /**
+     * Open up to warmup-connections connections to base-url in the background
+     *
+     * Concurrent HEAD requests each need their own HTTP/1.1 connection; over HTTP/2
+     * they share one. Failures are only logged, the pool simply stays cold.
+     */
+    public void warmUp() {
+        int connections = apiConfig.getHttp().getWarmupConnections();
+        HttpUrl url = apiConfig.getBaseUrl() != null ? HttpUrl.parse(apiConfig.getBaseUrl()) : null;
+        if (connections <= 0 || url == null) {
+            return;
+        }
+        Request request = new Request.Builder().url(url).head().build();
+        for (int i = 0; i < connections; i++) {
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    logger.debug("Warm-up connection to {} ready, protocol={}", url.host(), response.protocol());
+                    response.close();
+                }
+
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    logger.warn("Warm-up connection to {} failed: {}", url.host(), e.toString());
+                }
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        HttpClients.shutdown(httpClient);
+    }
+}
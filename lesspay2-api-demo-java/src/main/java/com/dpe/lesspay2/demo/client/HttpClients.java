@@ -0,0 +1,92 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OkHttpClient Factory
+ *
+ * Clients are expensive: each one owns a connection pool and a dispatcher thread pool.
+ * The application shares one client (see {@link com.dpe.lesspay2.demo.config.HttpClientConfig});
+ * per-endpoint timeouts derive from it with {@link #withTimeouts} and share its pool and dispatcher.
+ */
+public final class HttpClients {
+
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private HttpClients() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * Create a client from the HTTP settings
+     */
+    public static OkHttpClient create(ApiConfig.Http settings) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(settings.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(settings.getMaxRequestsPerHost());
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(settings.getMaxIdleConnections(),
+                        settings.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS))
+                .protocols(settings.isHttp2()
+                        ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : List.of(Protocol.HTTP_1_1));
+        applyTimeouts(builder, settings.getTimeouts());
+        return builder.build();
+    }
+
+    /**
+     * Client with default settings, shared by code running outside the Spring context (e.g. the examples)
+     */
+    public static OkHttpClient shared() {
+        return SharedHolder.CLIENT;
+    }
+
+    /**
+     * Derive a client with other timeouts, sharing the connection pool and dispatcher of {@code base}
+     */
+    public static OkHttpClient withTimeouts(OkHttpClient base, ApiConfig.Timeouts timeouts) {
+        OkHttpClient.Builder builder = base.newBuilder();
+        applyTimeouts(builder, timeouts);
+        return builder.build();
+    }
+
+    /**
+     * Release the dispatcher threads and pooled connections of a client
+     */
+    public static void shutdown(OkHttpClient client) {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private static void applyTimeouts(OkHttpClient.Builder builder, ApiConfig.Timeouts timeouts) {
+        if (timeouts.getConnect() != null) {
+            builder.connectTimeout(timeouts.getConnect());
+        }
+        if (timeouts.getRead() != null) {
+            builder.readTimeout(timeouts.getRead());
+        }
+        if (timeouts.getWrite() != null) {
+            builder.writeTimeout(timeouts.getWrite());
+        }
+        if (timeouts.getCall() != null) {
+            builder.callTimeout(timeouts.getCall());
+        }
+    }
+
+    /**
+     * Lazily created on first use, without locking afterwards
+     */
+    private static final class SharedHolder {
+        private static final OkHttpClient CLIENT = create(new ApiConfig.Http());
+    }
+}
@@ -1,16 +1,28 @@
 package com.dpe.lesspay2.demo.client;
 
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.TypeReference;
 import com.dpe.lesspay2.demo.config.ApiConfig;
-import com.dpe.lesspay2.demo.util.SignUtil;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.sign.CanonicalSigner;
+import com.dpe.lesspay2.demo.sign.SignedBody;
+import com.dpe.lesspay2.demo.sign.SigningKey;
+import io.micrometer.core.instrument.MeterRegistry;
 import okhttp3.*;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Lesspay2 API Client
@@ -18,24 +30,61 @@ import java.util.concurrent.TimeUnit;
  * Encapsulates HTTP requests and automatically handles:
  * - Signature calculation
  * - Header setting (x-auth-appid, X-Auth-Timestamp, x-auth-signature)
- * - Request/Response logging
+ * - Request/Response logging (see {@link ApiCallLogger})
+ *
+ * Every call is timed in Micrometer (see {@link ApiMetrics}).
+ *
+ * Requests go through the shared OkHttpClient; endpoints with their own timeouts
+ * (lesspay2.api.http.endpoints) use a derived client on the same connection pool.
+ *
+ * Each endpoint and way_code has a circuit breaker (lesspay2.api.circuit-breaker), and each endpoint
+ * a rate and concurrency limiter (lesspay2.api.rate-limit), both taken before the request is sent;
+ * a refused call fails with {@link CircuitOpenException} or {@link RateLimitedException}.
  */
 @Component
 public class LesspayApiClient {
 
-    private static final Logger logger = LoggerFactory.getLogger(LesspayApiClient.class);
     private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
 
-    private final ApiConfig apiConfig;
+    private final String appId;
+    private final String baseUrl;
+    private final SigningKey signingKey;
     private final OkHttpClient httpClient;
+    private final Map<String, OkHttpClient> endpointClients = new HashMap<>();
+    private final ApiCallLogger callLogger;
+    private final ApiMetrics metrics;
+    private final ApiConfig.RateLimit rateLimit;
+    private final Map<String, EndpointLimiter> limiters = new ConcurrentHashMap<>();
+    private final ApiConfig.CircuitBreaker circuitSettings;
+    private final Set<String> failureCodes;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
 
-    public LesspayApiClient(ApiConfig apiConfig) {
-        this.apiConfig = apiConfig;
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
+    public LesspayApiClient(ApiConfig apiConfig, OkHttpClient httpClient, MeterRegistry meterRegistry) {
+        this(apiConfig, apiConfig.getAppId(), apiConfig.getAppSecret(), apiConfig.getBaseUrl(), httpClient,
+                new ApiMetrics(meterRegistry, apiConfig.getMetrics(), apiConfig.getAppId()));
+    }
+
+    /**
+     * Client of one merchant, see {@link LesspayClientRegistry}
+     *
+     * @param httpClient Client whose dispatcher queues this merchant's calls
+     */
+    LesspayApiClient(ApiConfig apiConfig, String appId, String appSecret, String baseUrl, OkHttpClient httpClient,
+                     ApiMetrics metrics) {
+        this.appId = appId;
+        this.baseUrl = baseUrl;
+        this.signingKey = appSecret != null ? SigningKey.of(appSecret) : null;
+        this.callLogger = new ApiCallLogger(apiConfig.getLogging());
+        this.metrics = metrics;
+        this.rateLimit = apiConfig.getRateLimit();
+        this.circuitSettings = apiConfig.getCircuitBreaker();
+        this.failureCodes = new HashSet<>(circuitSettings.getFailureCodes());
+        // Same pool and dispatcher, plus the connection acquisition listener
+        this.httpClient = httpClient.newBuilder()
+                .eventListenerFactory(metrics.eventListenerFactory())
                 .build();
+        apiConfig.getHttp().getEndpoints().forEach((path, timeouts) ->
+                endpointClients.put(path, HttpClients.withTimeouts(this.httpClient, timeouts)));
     }
 
     /**
@@ -46,39 +95,316 @@ public class LesspayApiClient {
      * @return Response JSON string
      */
     public String post(String path, Object body) throws IOException {
-        String url = apiConfig.getBaseUrl() + path;
-        String jsonBody = JSON.toJSONString(body);
-        long timestamp = System.currentTimeMillis();
+        // Serialize and calculate signature in one pass
+        long start = System.nanoTime();
+        try (SignedBody signedBody = sign(body)) {
+            metrics.recordEncoding(path, signedBody);
+            Guard guard = admit(path, body, start);
+            if (guard.limiter != null) {
+                try {
+                    awaitPermit(guard.limiter, path, body, start);
+                } catch (IOException e) {
+                    guard.cancelCircuit();
+                    throw e;
+                }
+            }
+            guard.sent = System.nanoTime();
+            int status = -1;
+            String responseBody = null;
+            try {
+                Request request = newRequest(path, signedBody);
+                ApiCallLogger.Call log = callLogger.start(path, signedBody);
+
+                // Send request
+                try (Response response = clientFor(path).newCall(request).execute()) {
+                    status = response.code();
+                    responseBody = response.body() != null ? response.body().string() : "";
+                    log.response(response.code(), responseBody);
+                    metrics.recordCall(path, guard.wayCode, response.code(), responseBody, null, System.nanoTime() - start);
+                    return responseBody;
+                } catch (IOException e) {
+                    log.failure(e);
+                    metrics.recordCall(path, guard.wayCode, -1, null, e, System.nanoTime() - start);
+                    throw e;
+                }
+            } finally {
+                guard.release(status, responseBody);
+            }
+        }
+    }
+
+    /**
+     * Send POST request and decode the {code, msg, data} envelope
+     *
+     * @param path     API endpoint path
+     * @param body     Request body object
+     * @param dataType Type of the data field
+     * @return Decoded response; a non-zero business code is returned as is
+     * @throws IOException on network errors or when the response is not a JSON envelope
+     */
+    public <T> ApiResponseDTO<T> post(String path, Object body, Class<T> dataType) throws IOException {
+        return decodeEnvelope(post(path, body), envelopeType(dataType));
+    }
+
+    /**
+     * Send POST request and decode the envelope with a generic data type
+     */
+    public <T> ApiResponseDTO<T> post(String path, Object body, TypeReference<T> dataType) throws IOException {
+        return decodeEnvelope(post(path, body), envelopeType(dataType.getType()));
+    }
+
+    /**
+     * Send POST request without blocking the calling thread
+     *
+     * The request is signed on the calling thread and then queued on the OkHttp dispatcher,
+     * so thousands of calls can be in flight without parking a thread each.
+     * Cancelling the returned future cancels the underlying HTTP call; futures derived from it
+     * (thenApply, ...) do not propagate cancellation back, so cancel this one.
+     *
+     * @param path API endpoint path (e.g. /api/global/v1/pay/create-order)
+     * @param body Request body object
+     * @return Future of the response JSON string, failing with IOException on network errors
+     */
+    public CompletableFuture<String> postAsync(String path, Object body) {
+        return enqueue(path, body, responseBody -> responseBody);
+    }
+
+    /**
+     * Send POST request without blocking and decode the {code, msg, data} envelope
+     *
+     * A non-zero business code still completes normally; check {@link ApiResponseDTO#isSuccess()}.
+     * A response that is not a JSON envelope (e.g. an HTML 502 page) fails the future with IOException.
+     *
+     * @param path     API endpoint path
+     * @param body     Request body object
+     * @param dataType Type of the data field
+     * @return Future of the decoded response
+     */
+    public <T> CompletableFuture<ApiResponseDTO<T>> postAsync(String path, Object body, Class<T> dataType) {
+        return postAsync(path, body, (Type) dataType);
+    }
 
-        // Calculate signature
-        String signature = SignUtil.createSign(JSON.parseObject(jsonBody), apiConfig.getAppSecret());
+    /**
+     * Send POST request without blocking and decode the envelope with a generic data type
+     *
+     * Example: {@code postAsync(path, body, new TypeReference<List<BankDTO>>() {})}
+     */
+    public <T> CompletableFuture<ApiResponseDTO<T>> postAsync(String path, Object body, TypeReference<T> dataType) {
+        return postAsync(path, body, dataType.getType());
+    }
+
+    private <T> CompletableFuture<ApiResponseDTO<T>> postAsync(String path, Object body, Type dataType) {
+        Type responseType = envelopeType(dataType);
+        return enqueue(path, body, responseBody -> decodeEnvelope(responseBody, responseType));
+    }
+
+    private <R> CompletableFuture<R> enqueue(String path, Object body, ResponseDecoder<R> decoder) {
+        long start = System.nanoTime();
+        SignedBody signedBody = sign(body);
+        metrics.recordEncoding(path, signedBody);
+        CompletableFuture<R> future = new CompletableFuture<>();
+        Guard guard;
+        try {
+            guard = admit(path, body, start);
+        } catch (CircuitOpenException e) {
+            signedBody.close();
+            future.completeExceptionally(e);
+            return future;
+        }
+        if (guard.limiter == null) {
+            send(path, signedBody, decoder, guard, future, start);
+            return future;
+        }
+        guard.limiter.acquire().whenComplete((ignored, error) -> {
+            if (error != null) {
+                signedBody.close();
+                guard.cancelCircuit();
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                metrics.recordCall(path, guard.wayCode, -1, null, cause, System.nanoTime() - start);
+                future.completeExceptionally(cause);
+            } else if (future.isCancelled()) {
+                signedBody.close();
+                guard.cancel();
+            } else {
+                try {
+                    send(path, signedBody, decoder, guard, future, start);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Queue the signed request on the dispatcher; the permits of the guard are released with the response
+     */
+    private <R> void send(String path, SignedBody signedBody, ResponseDecoder<R> decoder, Guard guard,
+                          CompletableFuture<R> future, long start) {
+        guard.sent = System.nanoTime();
+        Call call;
+        ApiCallLogger.Call log;
+        try {
+            call = clientFor(path).newCall(newRequest(path, signedBody));
+            log = callLogger.start(path, signedBody);
+        } catch (RuntimeException e) {
+            signedBody.close();
+            guard.cancel();
+            throw e;
+        }
+
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                // The body has been written once the response arrives
+                signedBody.close();
+                try (response) {
+                    String responseBody;
+                    try {
+                        responseBody = response.body() != null ? response.body().string() : "";
+                    } catch (IOException e) {
+                        guard.release(-1, null);
+                        throw e;
+                    }
+                    guard.release(response.code(), responseBody);
+                    log.response(response.code(), responseBody);
+                    metrics.recordCall(path, guard.wayCode, response.code(), responseBody, null,
+                            System.nanoTime() - start);
+                    future.complete(decoder.decode(responseBody));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                signedBody.close();
+                if (call.isCanceled()) {
+                    guard.cancel();
+                } else {
+                    guard.release(-1, null);
+                    log.failure(e);
+                    metrics.recordCall(path, guard.wayCode, -1, null, e, System.nanoTime() - start);
+                }
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Let a call through the circuit breaker of its endpoint and way_code
+     *
+     * @throws CircuitOpenException if the circuit is open
+     */
+    private Guard admit(String path, Object body, long start) throws CircuitOpenException {
+        String wayCode = ApiMetrics.wayCode(body);
+        CircuitBreaker breaker = breakerFor(path, wayCode);
+        Object circuit = null;
+        if (breaker != null) {
+            circuit = breaker.tryAcquire();
+            if (circuit == null) {
+                CircuitOpenException e = new CircuitOpenException(path, wayCode);
+                metrics.recordCall(path, wayCode, -1, null, e, System.nanoTime() - start);
+                throw e;
+            }
+        }
+        return new Guard(wayCode, breaker, circuit, limiterFor(path));
+    }
+
+    /**
+     * Block until the limiter of the endpoint lets the call through
+     */
+    private void awaitPermit(EndpointLimiter limiter, String path, Object body, long start) throws IOException {
+        CompletableFuture<Void> permit = limiter.acquire();
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            // A permit granted after the interrupt goes back unused
+            permit.thenRun(() -> limiter.release(-1, 0));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a permit: " + path);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            metrics.recordCall(path, ApiMetrics.wayCode(body), -1, null, cause, System.nanoTime() - start);
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return Circuit breaker of the endpoint and way_code, or null when circuit breakers are disabled
+     */
+    private CircuitBreaker breakerFor(String path, String wayCode) {
+        if (!circuitSettings.isEnabled()) {
+            return null;
+        }
+        String key = wayCode != null ? path + "|" + wayCode : path;
+        return breakers.computeIfAbsent(key, k -> {
+            CircuitBreaker breaker = new CircuitBreaker(circuitSettings,
+                    circuitSettings.getSlowCallThresholds().getOrDefault(path, circuitSettings.getSlowCallThreshold()));
+            metrics.registerCircuit(path, wayCode, breaker);
+            return breaker;
+        });
+    }
+
+    /**
+     * @return Limiter of the endpoint, or null when rate limiting is disabled
+     */
+    private EndpointLimiter limiterFor(String path) {
+        if (!rateLimit.isEnabled()) {
+            return null;
+        }
+        return limiters.computeIfAbsent(path, p -> new EndpointLimiter(p, rateLimit, rateLimit.getEndpoints().get(p)));
+    }
+
+    private static <T> Type envelopeType(Type dataType) {
+        // T is a type variable that fastjson replaces with dataType
+        return new TypeReference<ApiResponseDTO<T>>(dataType) {
+        }.getType();
+    }
+
+    private static <T> ApiResponseDTO<T> decodeEnvelope(String responseBody, Type responseType) throws IOException {
+        ApiResponseDTO<T> response;
+        try {
+            response = JSON.parseObject(responseBody, responseType);
+        } catch (RuntimeException e) {
+            throw new IOException("Response is not a JSON envelope: " + abbreviate(responseBody), e);
+        }
+        if (response == null || response.getCode() == null) {
+            throw new IOException("Response has no code: " + abbreviate(responseBody));
+        }
+        return response;
+    }
+
+    private Request newRequest(String path, SignedBody signedBody) {
+        String url = baseUrl + path;
+        long timestamp = System.currentTimeMillis();
+        String signature = signedBody.getSignature();
 
         // Build request
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(url)
-                .post(RequestBody.create(jsonBody, JSON_MEDIA_TYPE))
+                .post(new SignedRequestBody(signedBody, JSON_MEDIA_TYPE))
                 .addHeader("Content-Type", "application/json")
-                .addHeader("x-auth-appid", apiConfig.getAppId())
+                .addHeader("x-auth-appid", appId)
                 .addHeader("X-Auth-Timestamp", String.valueOf(timestamp))
                 .addHeader("x-auth-signature", signature)
                 .build();
+    }
 
-        logger.info("=== HTTP Request ===");
-        logger.info("URL: {}", url);
-        logger.info("Headers: x-auth-appid={}, X-Auth-Timestamp={}", apiConfig.getAppId(), timestamp);
-        logger.info("Signature: {}", signature);
-        logger.info("Body: {}", jsonBody);
-
-        // Send request
-        try (Response response = httpClient.newCall(request).execute()) {
-            String responseBody = response.body() != null ? response.body().string() : "";
-
-            logger.info("=== HTTP Response ===");
-            logger.info("Status: {}", response.code());
-            logger.info("Body: {}", responseBody);
+    private static String abbreviate(String text) {
+        return text.length() <= 200 ? text : text.substring(0, 200) + "...";
+    }
 
-            return responseBody;
-        }
+    private OkHttpClient clientFor(String path) {
+        return endpointClients.getOrDefault(path, httpClient);
     }
 
     /**
@@ -89,7 +415,100 @@ public class LesspayApiClient {
      * @return Signature string
      */
     public String generateSignature(Object body) {
-        JSONObject jsonObject = JSON.parseObject(JSON.toJSONString(body));
-        return SignUtil.createSign(jsonObject, apiConfig.getAppSecret());
+        return CanonicalSigner.signObject(body, signingKey().secret());
+    }
+
+    /**
+     * @return Merchant AppId sent in x-auth-appid
+     */
+    public String getAppId() {
+        return appId;
+    }
+
+    private SignedBody sign(Object body) {
+        return SignedBody.of(body, signingKey());
+    }
+
+    private SigningKey signingKey() {
+        if (signingKey == null) {
+            throw new IllegalStateException("AppSecret of " + appId + " is not configured");
+        }
+        return signingKey;
+    }
+
+    /**
+     * Circuit breaker and limiter permits of one call
+     */
+    private final class Guard {
+
+        private final String wayCode;
+        private final CircuitBreaker breaker;
+        private final Object circuit;
+        private final EndpointLimiter limiter;
+
+        /**
+         * System.nanoTime() when the request was handed to OkHttp
+         */
+        private long sent;
+
+        private Guard(String wayCode, CircuitBreaker breaker, Object circuit, EndpointLimiter limiter) {
+            this.wayCode = wayCode;
+            this.breaker = breaker;
+            this.circuit = circuit;
+            this.limiter = limiter;
+        }
+
+        /**
+         * Report the outcome of a sent call
+         *
+         * @param status       HTTP status, or -1 if no response was received
+         * @param responseBody Response body, null if none
+         */
+        private void release(int status, String responseBody) {
+            long nanos = System.nanoTime() - sent;
+            if (limiter != null) {
+                limiter.release(status, nanos);
+            }
+            if (breaker != null) {
+                breaker.record(circuit, isFailure(status, responseBody), nanos);
+            }
+        }
+
+        /**
+         * Give back both permits of a call that was not sent
+         */
+        private void cancel() {
+            if (limiter != null) {
+                limiter.release(-1, 0);
+            }
+            cancelCircuit();
+        }
+
+        /**
+         * Give back the circuit permit of a call refused by its limiter
+         */
+        private void cancelCircuit() {
+            if (breaker != null) {
+                breaker.cancel(circuit);
+            }
+        }
+    }
+
+    /**
+     * Network errors, HTTP 5xx and configured business codes count against the circuit; 429 does not
+     */
+    private boolean isFailure(int status, String responseBody) {
+        if (status < 0 || status >= 500) {
+            return true;
+        }
+        return !failureCodes.isEmpty() && responseBody != null && failureCodes.contains(ApiMetrics.businessCode(responseBody));
+    }
+
+    /**
+     * Decodes a response body on the dispatcher thread
+     */
+    @FunctionalInterface
+    private interface ResponseDecoder<R> {
+        R decode(String responseBody) throws IOException;
     }
 }
@@ -0,0 +1,147 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.util.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking LesspayApiClient calls concurrently
+ *
+ * Keeps the blocking programming model of {@link LesspayApiClient#post} for fan-out
+ * workloads, e.g. querying hundreds of pay_order_id at once. With
+ * lesspay2.api.execution.virtual-threads enabled on Java 21+, every call runs on its
+ * own virtual thread; otherwise on a pool of platform threads. Either way at most
+ * max-concurrent-calls run at the same time, the others wait for a permit.
+ */
+@Component
+public class LesspayApiExecutor implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(LesspayApiExecutor.class);
+
+    private final LesspayApiClient apiClient;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final boolean virtualThreads;
+
+    public LesspayApiExecutor(ApiConfig apiConfig, LesspayApiClient apiClient) {
+        ApiConfig.Execution settings = apiConfig.getExecution();
+        this.apiClient = apiClient;
+        this.permits = new Semaphore(settings.getMaxConcurrentCalls());
+        if (settings.isVirtualThreads() && !VirtualThreads.isSupported()) {
+            logger.warn("Virtual threads require Java 21 or later, running calls on platform threads (Java {})",
+                    Runtime.version().feature());
+        }
+        this.virtualThreads = settings.isVirtualThreads() && VirtualThreads.isSupported();
+        this.executor = virtualThreads
+                ? VirtualThreads.newVirtualThreadPerTaskExecutor()
+                : newPlatformExecutor(settings.getMaxConcurrentCalls());
+    }
+
+    /**
+     * @return true if calls run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Run a blocking task once a permit is available
+     *
+     * @param task Task, typically calling LesspayApiClient
+     * @return Future completed with the task result or exception
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+                return;
+            }
+            try {
+                if (!future.isDone()) {
+                    future.complete(task.call());
+                }
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            } finally {
+                permits.release();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Send a POST request
+     *
+     * @return Future of the response JSON string
+     */
+    public CompletableFuture<String> submit(String path, Object body) {
+        return submit(() -> apiClient.post(path, body));
+    }
+
+    /**
+     * Send one POST request per body to the same endpoint
+     *
+     * @param path   API endpoint path (e.g. /api/global/v1/pay/query-order)
+     * @param bodies Request body objects
+     * @return Futures of the response JSON strings, in the order of the bodies
+     */
+    public List<CompletableFuture<String>> submitAll(String path, List<?> bodies) {
+        List<CompletableFuture<String>> futures = new ArrayList<>(bodies.size());
+        for (Object body : bodies) {
+            futures.add(submit(path, body));
+        }
+        return futures;
+    }
+
+    /**
+     * Send one POST request per body to the same endpoint and decode the {code, msg, data} envelopes
+     *
+     * @param path     API endpoint path
+     * @param bodies   Request body objects
+     * @param dataType Type of the data field
+     * @return Futures of the decoded responses, in the order of the bodies
+     */
+    public <T> List<CompletableFuture<ApiResponseDTO<T>>> submitAll(String path, List<?> bodies, Class<T> dataType) {
+        List<CompletableFuture<ApiResponseDTO<T>>> futures = new ArrayList<>(bodies.size());
+        for (Object body : bodies) {
+            futures.add(submit(() -> apiClient.post(path, body, dataType)));
+        }
+        return futures;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private static ExecutorService newPlatformExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+                    Thread thread = new Thread(task, "lesspay-api-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
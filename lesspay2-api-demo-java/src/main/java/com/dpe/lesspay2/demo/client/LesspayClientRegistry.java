@@ -0,0 +1,78 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lesspay2 client registry for several merchant AppIds
+ *
+ * Holds one {@link LesspayApiClient} per merchant of lesspay2.api.merchants, built once at startup,
+ * plus the LesspayApiClient bean under the default merchant (app-id), so the default merchant has
+ * one set of limiters and circuit breakers whichever way it is reached:
+ * - the signing key of each merchant is encoded once
+ * - every merchant has its own OkHttp Dispatcher, so its queue and max-requests limit are its own
+ *   and a burst of one merchant cannot hold the others' calls back; all dispatchers run on the
+ *   threads of the shared client and use its connection pool
+ * - {@link #client(String)} is a single hash lookup
+ * - the meters of each merchant are tagged with its app_id
+ */
+@Component
+public class LesspayClientRegistry {
+
+    private final Map<String, LesspayApiClient> clients;
+
+    /**
+     * @param defaultClient Client of the default merchant (app-id)
+     */
+    public LesspayClientRegistry(ApiConfig apiConfig, LesspayApiClient defaultClient, OkHttpClient httpClient,
+                                 MeterRegistry meterRegistry) {
+        Map<String, LesspayApiClient> clients = new HashMap<>();
+        if (defaultClient.getAppId() != null) {
+            clients.put(defaultClient.getAppId(), defaultClient);
+        }
+        apiConfig.getMerchants().forEach((appId, merchant) -> {
+            if (clients.containsKey(appId)) {
+                throw new IllegalArgumentException("lesspay2.api.merchants." + appId + " is the default app-id");
+            }
+            if (merchant.getAppSecret() == null) {
+                throw new IllegalArgumentException("lesspay2.api.merchants." + appId + ".app-secret is not set");
+            }
+            Dispatcher dispatcher = new Dispatcher(httpClient.dispatcher().executorService());
+            dispatcher.setMaxRequests(merchant.getMaxRequests());
+            dispatcher.setMaxRequestsPerHost(merchant.getMaxRequestsPerHost());
+            OkHttpClient merchantClient = httpClient.newBuilder().dispatcher(dispatcher).build();
+            String baseUrl = merchant.getBaseUrl() != null ? merchant.getBaseUrl() : apiConfig.getBaseUrl();
+            clients.put(appId, new LesspayApiClient(apiConfig, appId, merchant.getAppSecret(), baseUrl, merchantClient,
+                    new ApiMetrics(meterRegistry, apiConfig.getMetrics(), appId)));
+        });
+        this.clients = Collections.unmodifiableMap(clients);
+    }
+
+    /**
+     * @param appId Merchant AppId
+     * @return Client signing and sending as this merchant
+     * @throws IllegalArgumentException if the AppId is not configured
+     */
+    public LesspayApiClient client(String appId) {
+        LesspayApiClient client = clients.get(appId);
+        if (client == null) {
+            throw new IllegalArgumentException("Unknown merchant AppId: " + appId);
+        }
+        return client;
+    }
+
+    /**
+     * @return Configured merchant AppIds
+     */
+    public Set<String> getAppIds() {
+        return clients.keySet();
+    }
+}
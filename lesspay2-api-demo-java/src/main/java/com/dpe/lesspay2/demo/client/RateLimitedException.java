@@ -0,0 +1,25 @@
+package com.dpe.lesspay2.demo.client;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a call is refused by the client-side limiter of its endpoint, before anything is sent
+ */
+public class RateLimitedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+
+    public RateLimitedException(String path, String message) {
+        super(message + ": " + path);
+        this.path = path;
+    }
+
+    /**
+     * @return API endpoint path of the refused call
+     */
+    public String getPath() {
+        return path;
+    }
+}
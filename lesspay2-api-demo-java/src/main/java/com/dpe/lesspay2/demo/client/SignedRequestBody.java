@@ -0,0 +1,37 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.sign.SignedBody;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+
+/**
+ * OkHttp request body writing a {@link SignedBody} straight from its pooled buffer
+ */
+final class SignedRequestBody extends RequestBody {
+
+    private final SignedBody body;
+    private final MediaType contentType;
+
+    SignedRequestBody(SignedBody body, MediaType contentType) {
+        this.body = body;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return body.length();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        sink.write(body.array(), 0, body.length());
+    }
+}
@@ -3,6 +3,13 @@ package com.dpe.lesspay2.demo.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Lesspay2 API Configuration Class
@@ -11,6 +18,20 @@ import org.springframework.context.annotation.Configuration;
  * - base-url: API gateway URL
  * - app-id: Merchant AppId
  * - app-secret: Merchant AppSecret (used for signature)
+ * - http: HTTP client settings (connection pool, dispatcher, protocols, timeouts)
+ * - execution: how submitted blocking calls are run (virtual threads, concurrency limit)
+ * - logging: request/response logging (sampling, body size cap, masked fields)
+ * - metrics: Micrometer timers of API calls
+ * - batch: splitting of large batch payouts
+ * - query: paginated order queries (page size, prefetch, window span, adaptive slicing)
+ * - cache: order status cache of single order queries
+ * - banks: background refresh of the supported bank lists
+ * - balance: local payout balance ledger
+ * - merchants: further merchant AppIds served by LesspayClientRegistry
+ * - rate-limit: client-side rate and adaptive concurrency limits per endpoint
+ * - retry: idempotent retries of create-order calls
+ * - circuit-breaker: circuit breakers per endpoint and way_code
+ * - outbox: durable journal of payout submissions
  */
 @Data
 @Configuration
@@ -32,4 +53,550 @@ public class ApiConfig {
      * Merchant AppSecret (used for signature)
      */
     private String appSecret;
+
+    /**
+     * HTTP client settings
+     */
+    private Http http = new Http();
+
+    /**
+     * Execution settings of LesspayApiExecutor
+     */
+    private Execution execution = new Execution();
+
+    /**
+     * Request/response logging settings
+     */
+    private Logging logging = new Logging();
+
+    /**
+     * API call metrics settings
+     */
+    private Metrics metrics = new Metrics();
+
+    /**
+     * Batch payout splitting settings
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * Paginated query settings
+     */
+    private Query query = new Query();
+
+    /**
+     * Order status cache settings
+     */
+    private Cache cache = new Cache();
+
+    /**
+     * Bank directory settings
+     */
+    private Banks banks = new Banks();
+
+    /**
+     * Balance ledger settings
+     */
+    private Balance balance = new Balance();
+
+    /**
+     * Further merchants by AppId
+     */
+    private Map<String, Merchant> merchants = new LinkedHashMap<>();
+
+    /**
+     * Client-side rate limit settings
+     */
+    private RateLimit rateLimit = new RateLimit();
+
+    /**
+     * Create-order retry settings
+     */
+    private Retry retry = new Retry();
+
+    /**
+     * Circuit breaker settings
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Payout outbox settings
+     */
+    private Outbox outbox = new Outbox();
+
+    /**
+     * Settings of the shared OkHttpClient
+     */
+    @Data
+    public static class Http {
+
+        /**
+         * Idle connections kept in the connection pool
+         */
+        private int maxIdleConnections = 32;
+
+        /**
+         * How long an idle connection stays in the pool
+         */
+        private Duration keepAlive = Duration.ofMinutes(5);
+
+        /**
+         * Maximum concurrent requests on the dispatcher
+         */
+        private int maxRequests = 256;
+
+        /**
+         * Maximum concurrent requests per host
+         * All calls go to the single gateway host, so OkHttp's default of 5 caps the throughput.
+         */
+        private int maxRequestsPerHost = 128;
+
+        /**
+         * Prefer HTTP/2 (negotiated through ALPN, falling back to HTTP/1.1)
+         */
+        private boolean http2 = true;
+
+        /**
+         * Connections opened to base-url when the application starts; 0 disables the warm-up
+         */
+        private int warmupConnections = 4;
+
+        /**
+         * Default timeouts
+         */
+        private Timeouts timeouts = Timeouts.defaults();
+
+        /**
+         * Timeouts per endpoint path, overriding the defaults that are set
+         * Example: "[/api/global/payout/batch/create-order]": { read: 60s }
+         */
+        private Map<String, Timeouts> endpoints = new LinkedHashMap<>();
+    }
+
+    /**
+     * Settings of the executor running submitted blocking calls
+     */
+    @Data
+    public static class Execution {
+
+        /**
+         * Run each call on its own virtual thread (Java 21+); platform threads are used otherwise
+         */
+        private boolean virtualThreads = false;
+
+        /**
+         * Maximum calls running at the same time, further calls wait for a permit
+         */
+        private int maxConcurrentCalls = 256;
+    }
+
+    /**
+     * Settings of the request/response log lines
+     */
+    @Data
+    public static class Logging {
+
+        /**
+         * Share of successful calls that are logged (0.0 - 1.0); failed calls are always logged
+         */
+        private double sampleRate = 1.0;
+
+        /**
+         * Bytes of a request or response body written to a DEBUG line before it is truncated
+         */
+        private int maxBodyBytes = 2048;
+
+        /**
+         * Fields whose values are masked in logged bodies, at any depth
+         */
+        private List<String> maskedFields = new ArrayList<>(List.of("number", "cvv", "bank_account_no", "account_number"));
+    }
+
+    /**
+     * Settings of the lesspay.api.* Micrometer timers
+     */
+    @Data
+    public static class Metrics {
+
+        /**
+         * Publish fixed-bucket histograms, from which p99 etc. are computed by the monitoring system
+         */
+        private boolean percentileHistogram = true;
+    }
+
+    /**
+     * Settings of BatchPayoutSubmitter
+     */
+    @Data
+    public static class Batch {
+
+        /**
+         * Maximum payout_order_details per batch request
+         */
+        private int chunkSize = 500;
+
+        /**
+         * Batch requests in flight at the same time
+         */
+        private int maxConcurrentChunks = 4;
+    }
+
+    /**
+     * Settings of PayinQueryPager
+     */
+    @Data
+    public static class Query {
+
+        /**
+         * Orders per page, at most 1000
+         */
+        private int pageSize = 1000;
+
+        /**
+         * Pages requested ahead of the consumer
+         */
+        private int prefetchPages = 4;
+
+        /**
+         * Maximum span of start_time..end_time in one request
+         */
+        private Duration maxWindow = Duration.ofDays(7);
+
+        /**
+         * scan: windows holding more orders are bisected
+         */
+        private long maxSliceOrders = 20000;
+
+        /**
+         * scan: windows this short are not bisected further
+         */
+        private Duration minSlice = Duration.ofMinutes(1);
+
+        /**
+         * scan: pages requested at the same time across slices
+         */
+        private int scanParallelism = 8;
+    }
+
+    /**
+     * Settings of OrderStatusCache
+     */
+    @Data
+    public static class Cache {
+
+        /**
+         * Orders kept, least recently used evicted first
+         */
+        private int maxEntries = 10000;
+
+        /**
+         * Time to live of orders in a terminal status
+         */
+        private Duration terminalTtl = Duration.ofMinutes(10);
+
+        /**
+         * Time to live of orders in any other status
+         */
+        private Duration pendingTtl = Duration.ofSeconds(5);
+
+        /**
+         * order_status values that no longer change
+         */
+        private List<String> terminalStatuses = new ArrayList<>(
+                List.of("SUCCEED", "FAILED", "CANCELED", "REFUND", "CLOSED", "PARTIAL_SUCCESS"));
+    }
+
+    /**
+     * Settings of BankDirectory
+     */
+    @Data
+    public static class Banks {
+
+        /**
+         * Age of a bank list after which the next read refreshes it in the background
+         */
+        private Duration refreshAfter = Duration.ofHours(1);
+
+        /**
+         * Delay before retrying a failed load or refresh
+         */
+        private Duration retryAfter = Duration.ofMinutes(1);
+    }
+
+    /**
+     * Settings of BalanceLedger
+     */
+    @Data
+    public static class Balance {
+
+        /**
+         * Interval of the resync of every seeded balance with the gateway, 0 disables it
+         */
+        private Duration resyncInterval = Duration.ofMinutes(5);
+    }
+
+    /**
+     * Settings of CreateOrderRetrier
+     */
+    @Data
+    public static class Retry {
+
+        /**
+         * Calls per order, the first one and queries included
+         */
+        private int maxAttempts = 4;
+
+        /**
+         * Backoff before the first retry, doubled for each further one; the actual delay is random below it
+         */
+        private Duration initialBackoff = Duration.ofMillis(200);
+
+        /**
+         * Upper bound of the backoff
+         */
+        private Duration maxBackoff = Duration.ofSeconds(5);
+
+        /**
+         * Retry tokens earned per submitted order; a retry spends one
+         */
+        private double budgetRatio = 0.1;
+
+        /**
+         * Most retry tokens saved up, and the tokens available at startup
+         */
+        private int budgetMaxTokens = 20;
+
+        /**
+         * Most orders retrying at once, across threads
+         */
+        private int maxRetriesInFlight = 32;
+
+        /**
+         * Business codes of a query by request_id meaning the order does not exist; any other
+         * failed query leaves the outcome unknown. Also read by PayoutOutbox recovery.
+         */
+        private List<String> orderNotFoundCodes = new ArrayList<>(List.of("40004"));
+    }
+
+    /**
+     * Settings of the circuit breakers of LesspayApiClient, one per endpoint and way_code
+     */
+    @Data
+    public static class CircuitBreaker {
+
+        /**
+         * Whether calls go through the circuit breakers; off unless configured
+         */
+        private boolean enabled;
+
+        /**
+         * Span of the sliding window of recent calls
+         */
+        private Duration window = Duration.ofSeconds(30);
+
+        /**
+         * Calls in the window before the rates are evaluated
+         */
+        private int minCalls = 20;
+
+        /**
+         * Share of failed calls in the window that opens the circuit
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * Calls slower than this count as slow
+         */
+        private Duration slowCallThreshold = Duration.ofSeconds(10);
+
+        /**
+         * Slow-call thresholds per endpoint path, for endpoints whose calls are slower by design
+         * Example: "[/api/global/payout/batch/create-order]": 45s
+         */
+        private Map<String, Duration> slowCallThresholds = new LinkedHashMap<>();
+
+        /**
+         * Share of slow calls in the window that opens the circuit
+         */
+        private double slowCallRateThreshold = 0.8;
+
+        /**
+         * Time an open circuit fails calls before letting probes through
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * Probe calls let through when half-open; all must succeed to close the circuit
+         */
+        private int halfOpenProbes = 3;
+
+        /**
+         * Business codes counted as failures besides network errors and HTTP 5xx, e.g. channel unavailable
+         */
+        private List<String> failureCodes = new ArrayList<>();
+    }
+
+    /**
+     * Settings of PayoutOutbox
+     */
+    @Data
+    public static class Outbox {
+
+        /**
+         * Directory of the journal segment files
+         */
+        private String directory = "outbox";
+
+        /**
+         * Size of each memory-mapped segment file; a record must fit in one
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Wait before each fsync so concurrent submissions share it, 0 to force at once
+         */
+        private Duration commitDelay = Duration.ofMillis(1);
+    }
+
+    /**
+     * One merchant of LesspayClientRegistry; its calls are queued and limited separately
+     */
+    @Data
+    public static class Merchant {
+
+        /**
+         * Merchant AppSecret (used for signature)
+         */
+        private String appSecret;
+
+        /**
+         * API gateway URL, base-url if unset
+         */
+        private String baseUrl;
+
+        /**
+         * Calls of this merchant executing at the same time; further calls wait in its own queue
+         */
+        private int maxRequests = 64;
+
+        /**
+         * Calls of this merchant executing at the same time per host
+         */
+        private int maxRequestsPerHost = 32;
+    }
+
+    /**
+     * Settings of the per-endpoint limiters of LesspayApiClient
+     */
+    @Data
+    public static class RateLimit {
+
+        /**
+         * Whether calls go through the limiters; off unless configured
+         */
+        private boolean enabled;
+
+        /**
+         * What a call does when its endpoint is at its limit
+         */
+        private Policy policy = Policy.QUEUE;
+
+        /**
+         * QUEUE: longest wait for a permit before the call fails
+         */
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        /**
+         * Limits of every endpoint
+         */
+        private Limit defaults = Limit.defaults();
+
+        /**
+         * Per-endpoint overrides, keyed by path; unset values inherit the defaults
+         */
+        private Map<String, Limit> endpoints = new LinkedHashMap<>();
+    }
+
+    /**
+     * Behaviour of a call whose endpoint is at its limit
+     */
+    public enum Policy {
+        /**
+         * Wait up to max-wait for a permit
+         */
+        QUEUE,
+        /**
+         * Fail at once
+         */
+        FAIL_FAST
+    }
+
+    /**
+     * Limits of one endpoint; unset values inherit the defaults
+     */
+    @Data
+    public static class Limit {
+
+        /**
+         * Calls started per second, 0 for no rate limit
+         */
+        private Double rate;
+
+        /**
+         * Calls that may start at once above the rate after an idle period
+         */
+        private Integer burst;
+
+        /**
+         * Concurrent calls allowed at first; raised by one per window of successful calls
+         */
+        private Integer initialConcurrency;
+
+        /**
+         * Upper bound of the concurrency limit
+         */
+        private Integer maxConcurrency;
+
+        /**
+         * Calls slower than this lower the concurrency limit like a 429 does, but less
+         */
+        private Duration latencyThreshold;
+
+        static Limit defaults() {
+            Limit limit = new Limit();
+            limit.setRate(0.0);
+            limit.setBurst(10);
+            limit.setInitialConcurrency(64);
+            limit.setMaxConcurrency(256);
+            limit.setLatencyThreshold(Duration.ofSeconds(10));
+            return limit;
+        }
+    }
+
+    /**
+     * HTTP timeouts; unset values inherit the defaults, a zero duration means no timeout
+     */
+    @Data
+    public static class Timeouts {
+
+        private Duration connect;
+
+        private Duration read;
+
+        private Duration write;
+
+        /**
+         * Whole call, including DNS, connecting, writing the body and reading the response
+         */
+        private Duration call;
+
+        static Timeouts defaults() {
+            Timeouts timeouts = new Timeouts();
+            timeouts.setConnect(Duration.ofSeconds(10));
+            timeouts.setRead(Duration.ofSeconds(30));
+            timeouts.setWrite(Duration.ofSeconds(30));
+            timeouts.setCall(Duration.ZERO);
+            return timeouts;
+        }
+    }
 }
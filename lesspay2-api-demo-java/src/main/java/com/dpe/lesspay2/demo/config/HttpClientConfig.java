@@ -0,0 +1,21 @@
+package com.dpe.lesspay2.demo.config;
+
+import com.dpe.lesspay2.demo.client.HttpClients;
+import okhttp3.OkHttpClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * HTTP Client Configuration Class
+ *
+ * Provides the single OkHttpClient shared by all Lesspay2 calls, built from lesspay2.api.http.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Bean(destroyMethod = "")
+    public OkHttpClient lesspayHttpClient(ApiConfig apiConfig) {
+        // Released by HttpClientWarmer once the context closes
+        return HttpClients.create(apiConfig.getHttp());
+    }
+}
@@ -0,0 +1,41 @@
+package com.dpe.lesspay2.demo.dto;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import lombok.Data;
+
+/**
+ * API Response Envelope DTO
+ * 
+ * Every endpoint answers with {"code": 0, "msg": "...", "data": {...}}
+ *
+ * @param <T> Type of the data field
+ */
+@Data
+public class ApiResponseDTO<T> {
+
+    /**
+     * Business code, 0 means success
+     */
+    @JSONField(name = "code")
+    private Integer code;
+
+    /**
+     * Message describing the result
+     */
+    @JSONField(name = "msg")
+    private String msg;
+
+    /**
+     * Response data
+     */
+    @JSONField(name = "data")
+    private T data;
+
+    /**
+     * @return true if the business code is 0
+     */
+    @JSONField(serialize = false)
+    public boolean isSuccess() {
+        return code != null && code == 0;
+    }
+}
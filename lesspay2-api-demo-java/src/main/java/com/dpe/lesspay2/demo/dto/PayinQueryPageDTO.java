@@ -0,0 +1,28 @@
+package com.dpe.lesspay2.demo.dto;
+
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.annotation.JSONField;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Payin Query Page DTO
+ * 
+ * Data of a /api/global/v1/pay/query-order response for a time range query
+ */
+@Data
+public class PayinQueryPageDTO {
+
+    /**
+     * Number of orders matching the query over all pages (optional)
+     */
+    @JSONField(name = "total")
+    private Long total;
+
+    /**
+     * Orders of this page
+     */
+    @JSONField(name = "list", alternateNames = {"records", "rows"})
+    private List<JSONObject> list;
+}
@@ -0,0 +1,31 @@
+package com.dpe.lesspay2.demo.dto;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import lombok.Data;
+
+/**
+ * Payout Supported Bank DTO
+ * 
+ * One bank of the /api/global/payout/bank response
+ */
+@Data
+public class PayoutBankInfoDTO {
+
+    /**
+     * Bank code, as sent in bank_codes.bank_code
+     */
+    @JSONField(name = "bank_code", alternateNames = {"code"})
+    private String bankCode;
+
+    /**
+     * Bank name
+     */
+    @JSONField(name = "bank_name", alternateNames = {"name"})
+    private String bankName;
+
+    /**
+     * Bank SWIFT code (8 or 11 characters, optional)
+     */
+    @JSONField(name = "swift_code", alternateNames = {"bank_swift_code", "swift"})
+    private String swiftCode;
+}
@@ -0,0 +1,445 @@
+package com.dpe.lesspay2.demo.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal in memory-mapped segment files
+ *
+ * Record layout: int length of type + payload, int CRC32C of type + payload, byte type, then the
+ * fields, each an int byte count and UTF-8 bytes. A zero length ends a segment; a record with a bad
+ * checksum (torn by a crash) ends the journal and is overwritten by the next append.
+ *
+ * Appends only copy into the mapping. {@link #sync} waits for the syncer thread, which forces every
+ * record appended since its last pass at once (group commit), commit-delay after the first waiter,
+ * so concurrent appenders share one fsync. An append that fills a segment only swaps in the next one;
+ * the syncer forces the retired segment and deletes the segments no longer needed, outside the lock.
+ */
+final class OutboxJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxJournal.class);
+
+    private static final int HEADER = 8;
+    private static final String PREFIX = "outbox-";
+    private static final String SUFFIX = ".log";
+
+    /**
+     * Pause of the syncer after a failed fsync
+     */
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long commitDelayNanos;
+    private final LongSupplier retainFrom;
+    private final Object lock = new Object();
+
+    /**
+     * Segment files by index, oldest first
+     */
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    /**
+     * Full segments not forced yet, oldest first
+     */
+    private final Deque<Retired> retiring = new ArrayDeque<>();
+    private final Thread syncer;
+
+    private long segment;
+    private MappedByteBuffer buffer;
+    private int position;
+
+    /**
+     * Offset of the current segment up to which it has been forced
+     */
+    private int forcedOffset;
+
+    /**
+     * Global position (segment * segment-size + offset) up to which records are durable
+     */
+    private long forced;
+    private boolean closed;
+
+    /**
+     * Open the journal, replaying every record it holds
+     *
+     * @param retainFrom Oldest segment index still needed; older segments are deleted when a new one is started
+     * @param replay     Receives the records in append order
+     */
+    OutboxJournal(Path directory, int segmentSize, long commitDelayNanos, LongSupplier retainFrom,
+                  Consumer<Record> replay) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.commitDelayNanos = commitDelayNanos;
+        this.retainFrom = retainFrom;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, segmentPath(0));
+        }
+        for (Map.Entry<Long, Path> entry : segments.entrySet()) {
+            MappedByteBuffer mapped = map(entry.getValue());
+            int end = replay(entry.getKey(), mapped, replay);
+            segment = entry.getKey();
+            buffer = mapped;
+            position = end;
+        }
+        forcedOffset = position;
+        forced = global(segment, position);
+        syncer = new Thread(this::syncLoop, "lesspay-outbox-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    /**
+     * A journal record
+     *
+     * @param segment Index of the segment holding it
+     */
+    record Record(byte type, long segment, String[] fields) {
+    }
+
+    /**
+     * Append a record; it is durable once {@link #sync} of the returned position completes
+     *
+     * @return Global position after the record
+     * @throws IllegalArgumentException if the record does not fit in a segment
+     */
+    long append(byte type, String... fields) {
+        byte[] record = encode(type, fields);
+        if (record.length > segmentSize) {
+            throw new IllegalArgumentException("Record of " + record.length + " bytes exceeds the segment size " + segmentSize);
+        }
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Outbox journal is closed");
+            }
+            if (position + record.length > segmentSize) {
+                roll();
+            }
+            buffer.put(position, record);
+            position += record.length;
+            return global(segment, position);
+        }
+    }
+
+    /**
+     * @return Future completed once every record up to the position has been forced to disk
+     */
+    CompletableFuture<Void> sync(long position) {
+        synchronized (lock) {
+            if (forced >= position) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            waiters.add(new Waiter(position, future));
+            lock.notifyAll();
+            return future;
+        }
+    }
+
+    /**
+     * @return Segment index of a global position
+     */
+    long segmentOf(long position) {
+        return position / segmentSize;
+    }
+
+    /**
+     * @return Index of the segment records are appended to
+     */
+    long currentSegment() {
+        synchronized (lock) {
+            return segment;
+        }
+    }
+
+    /**
+     * Force the journal and stop the syncer
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        syncer.interrupt();
+        try {
+            // Its pass in progress completes first
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Retired> retired;
+        MappedByteBuffer target;
+        int from;
+        int to;
+        long upTo;
+        synchronized (lock) {
+            retired = new ArrayList<>(retiring);
+            retiring.clear();
+            target = buffer;
+            from = forcedOffset;
+            to = position;
+            upTo = global(segment, position);
+        }
+        force(retired, target, from, to, upTo);
+    }
+
+    private void syncLoop() {
+        while (true) {
+            synchronized (lock) {
+                while (!closed && waiters.isEmpty() && retiring.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // Woken by close()
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            if (commitDelayNanos > 0) {
+                // Let concurrent appenders join this fsync
+                LockSupport.parkNanos(commitDelayNanos);
+            }
+            List<Retired> retired;
+            MappedByteBuffer target;
+            int from;
+            int to;
+            long upTo;
+            synchronized (lock) {
+                if (closed) {
+                    // close() forces what is left
+                    return;
+                }
+                retired = new ArrayList<>(retiring);
+                retiring.clear();
+                target = buffer;
+                from = forcedOffset;
+                to = position;
+                upTo = global(segment, position);
+            }
+            if (!force(retired, target, from, to, upTo)) {
+                LockSupport.parkNanos(RETRY_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Force the retired segments, then [from, to) of the current one, and complete the waiters up to upTo
+     *
+     * @return false if an fsync failed; its waiters are failed
+     */
+    private boolean force(List<Retired> retired, MappedByteBuffer target, int from, int to, long upTo) {
+        for (int i = 0; i < retired.size(); i++) {
+            Retired full = retired.get(i);
+            try {
+                full.buffer.force(full.from, full.to - full.from);
+            } catch (UncheckedIOException e) {
+                logger.error("Outbox journal fsync failed: {}", e.toString());
+                synchronized (lock) {
+                    // Retried first on the next pass; nothing after it is durable until then
+                    for (int j = retired.size() - 1; j >= i; j--) {
+                        retiring.addFirst(retired.get(j));
+                    }
+                }
+                failWaiters(e);
+                return false;
+            }
+            for (Path file : full.obsolete) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete outbox segment {}: {}", file, e.toString());
+                }
+            }
+        }
+        try {
+            target.force(from, to - from);
+        } catch (UncheckedIOException e) {
+            logger.error("Outbox journal fsync failed: {}", e.toString());
+            failWaiters(e);
+            return false;
+        }
+        List<Waiter> done;
+        synchronized (lock) {
+            if (target == buffer) {
+                forcedOffset = Math.max(forcedOffset, to);
+            }
+            forced = Math.max(forced, upTo);
+            done = completed();
+        }
+        done.forEach(waiter -> waiter.future.complete(null));
+        return true;
+    }
+
+    private void failWaiters(Exception error) {
+        List<Waiter> failed;
+        synchronized (lock) {
+            failed = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        failed.forEach(waiter -> waiter.future.completeExceptionally(error));
+    }
+
+    /**
+     * Remove and return the waiters whose position has been forced; called holding the lock
+     */
+    private List<Waiter> completed() {
+        List<Waiter> done = new ArrayList<>();
+        waiters.removeIf(waiter -> {
+            if (waiter.position <= forced) {
+                done.add(waiter);
+                return true;
+            }
+            return false;
+        });
+        return done;
+    }
+
+    /**
+     * Continue in a new segment and hand the full one to the syncer; called holding the lock
+     */
+    private void roll() {
+        Path file = segmentPath(segment + 1);
+        MappedByteBuffer next;
+        try {
+            next = map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start outbox segment " + (segment + 1), e);
+        }
+        Retired retired = new Retired(buffer, forcedOffset, position, new ArrayList<>());
+        segment++;
+        segments.put(segment, file);
+        buffer = next;
+        position = 0;
+        forcedOffset = 0;
+        // forced stays behind the retired segment until the syncer has forced it
+        long oldest = Math.min(retainFrom.getAsLong(), segment);
+        while (segments.firstKey() < oldest) {
+            retired.obsolete.add(segments.pollFirstEntry().getValue());
+        }
+        retiring.add(retired);
+        lock.notifyAll();
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        boolean created = !Files.exists(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            if (created) {
+                // The new file's length must survive a crash too
+                channel.force(true);
+            }
+            return mapped;
+        }
+    }
+
+    /**
+     * @return Offset after the last valid record of the segment
+     */
+    private static int replay(long segment, ByteBuffer mapped, Consumer<Record> replay) {
+        int offset = 0;
+        CRC32C crc = new CRC32C();
+        while (offset + HEADER < mapped.capacity()) {
+            int length = mapped.getInt(offset);
+            if (length <= 0 || offset + HEADER + length > mapped.capacity()) {
+                break;
+            }
+            crc.reset();
+            crc.update(mapped.slice(offset + HEADER, length));
+            if ((int) crc.getValue() != mapped.getInt(offset + 4)) {
+                logger.warn("Outbox segment {} ends with a torn record at offset {}", segment, offset);
+                // Clear it so the next append does not leave a valid-looking record behind
+                for (int i = offset; i < offset + HEADER + length; i++) {
+                    mapped.put(i, (byte) 0);
+                }
+                break;
+            }
+            replay.accept(decode(segment, mapped.slice(offset + HEADER, length)));
+            offset += HEADER + length;
+        }
+        return offset;
+    }
+
+    private static byte[] encode(byte type, String[] fields) {
+        byte[][] values = new byte[fields.length][];
+        int length = 1;
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = (fields[i] != null ? fields[i] : "").getBytes(StandardCharsets.UTF_8);
+            length += 4 + values[i].length;
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER + length);
+        record.putInt(length).putInt(0).put(type);
+        for (byte[] value : values) {
+            record.putInt(value.length).put(value);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), HEADER, length);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    private static Record decode(long segment, ByteBuffer record) {
+        byte type = record.get();
+        List<String> fields = new ArrayList<>();
+        while (record.remaining() >= 4) {
+            byte[] value = new byte[record.getInt()];
+            record.get(value);
+            fields.add(new String(value, StandardCharsets.UTF_8));
+        }
+        return new Record(type, segment, fields.toArray(new String[0]));
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%s%06d%s", PREFIX, index, SUFFIX));
+    }
+
+    private long global(long segmentIndex, int offset) {
+        return segmentIndex * segmentSize + offset;
+    }
+
+    private record Waiter(long position, CompletableFuture<Void> future) {
+    }
+
+    /**
+     * A full segment whose records in [from, to) are not forced yet, and the older segment files to delete once they are
+     */
+    private record Retired(MappedByteBuffer buffer, int from, int to, List<Path> obsolete) {
+    }
+}
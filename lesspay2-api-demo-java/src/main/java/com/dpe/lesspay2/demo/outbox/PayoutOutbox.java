@@ -0,0 +1,350 @@
+package com.dpe.lesspay2.demo.outbox;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.LesspayApiClient;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.payout.BatchPayoutSubmitter;
+import com.dpe.lesspay2.demo.query.OrderStatusCache;
+import com.dpe.lesspay2.demo.retry.OrderLookup;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Payout Outbox
+ *
+ * Journals payout submissions so a crash never leaves a payout whose fate is unknown:
+ * - {@link #submit} appends the request (request_id, path, JSON body) to an {@link OutboxJournal}
+ *   and sends it only once the record is on disk; the outcome is appended when the response arrives
+ * - fsyncs are batched across concurrent submissions (group commit), so a payout waits for at most
+ *   one fsync and commit-delay
+ * - entries without an outcome (process died, or the call failed after it may have been sent) are
+ *   reconciled by {@link #recover} through /api/global/payout/query by request_id; recovery runs on
+ *   startup when the journal directory exists
+ *
+ * A payout the gateway answers as not found (lesspay2.api.retry.order-not-found-codes) is reported
+ * NOT_FOUND and not resent; resubmit it with the same request_id if it is still wanted. Any other
+ * failed query reports UNKNOWN and leaves the payout pending.
+ */
+@Component
+public class PayoutOutbox implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayoutOutbox.class);
+
+    public static final String PAYOUT_CREATE_PATH = "/api/global/payout/create-order";
+
+    private static final Set<String> PATHS = Set.of(PAYOUT_CREATE_PATH, BatchPayoutSubmitter.BATCH_PAYOUT_PATH);
+
+    static final byte SUBMIT = 1;
+    static final byte OUTCOME = 2;
+
+    private final LesspayApiClient apiClient;
+    private final ApiConfig.Outbox settings;
+    private final OrderLookup lookup;
+
+    /**
+     * Submissions without an outcome, by request_id
+     */
+    private final ConcurrentMap<String, Entry> pending = new ConcurrentHashMap<>();
+
+    private volatile OutboxJournal journal;
+
+    public PayoutOutbox(ApiConfig apiConfig, LesspayApiClient apiClient) {
+        this.apiClient = apiClient;
+        this.settings = apiConfig.getOutbox();
+        this.lookup = new OrderLookup(apiConfig.getRetry());
+    }
+
+    /**
+     * Outcome of a submission, as journaled or found by recovery
+     */
+    public enum Status {
+        /**
+         * The gateway accepted the payout (code 0), or recovery found it
+         */
+        CREATED,
+        /**
+         * The gateway answered with a non-zero code
+         */
+        REJECTED,
+        /**
+         * The request was never sent (not journaled in time, refused by a limiter or circuit, connection refused)
+         */
+        NOT_SENT,
+        /**
+         * The gateway answered the recovery query with an order-not-found code; it was not created
+         */
+        NOT_FOUND,
+        /**
+         * The recovery query failed or was answered with another error; the payout stays pending
+         */
+        UNKNOWN
+    }
+
+    @Override
+    public void onApplicationEvent(@NotNull ApplicationReadyEvent event) {
+        if (!Files.isDirectory(Paths.get(settings.getDirectory()))) {
+            return;
+        }
+        recover().thenAccept(recoveries -> {
+            if (!recoveries.isEmpty()) {
+                logger.info("Outbox recovery reconciled {} payouts", recoveries.size());
+            }
+        }).exceptionally(e -> {
+            logger.error("Outbox recovery failed: {}", e.toString());
+            return null;
+        });
+    }
+
+    /**
+     * Journal a payout, then submit it
+     *
+     * @param path  /api/global/payout/create-order or /api/global/payout/batch/create-order
+     * @param order Payout with a request_id
+     * @return Future of the gateway response, failing like {@link LesspayApiClient#postAsync}
+     * @throws IllegalArgumentException if the path is not a payout endpoint, the order has no request_id,
+     *                                  or a submission with the same request_id is pending
+     */
+    public CompletableFuture<ApiResponseDTO<JSONObject>> submit(String path, Object order) {
+        if (!PATHS.contains(path)) {
+            throw new IllegalArgumentException("Not a payout create-order endpoint: " + path);
+        }
+        String body = JSON.toJSONString(order);
+        String requestId = JSON.parseObject(body).getString("request_id");
+        if (requestId == null || requestId.isEmpty()) {
+            throw new IllegalArgumentException("Payout needs a request_id to be recovered");
+        }
+        OutboxJournal journal = journal();
+        Entry entry = new Entry(path, body, journal.currentSegment(), true);
+        if (pending.putIfAbsent(requestId, entry) != null) {
+            throw new IllegalArgumentException("Payout " + requestId + " is already pending in the outbox");
+        }
+        long position;
+        try {
+            position = journal.append(SUBMIT, requestId, path, body);
+        } catch (RuntimeException e) {
+            pending.remove(requestId, entry);
+            throw e;
+        }
+        return journal.sync(position)
+                .thenCompose(ignored -> {
+                    entry.sent = true;
+                    return apiClient.postAsync(path, order, JSONObject.class);
+                })
+                .whenComplete((response, error) -> settle(requestId, entry, response, error));
+    }
+
+    /**
+     * Reconcile every entry without an outcome that is not in flight
+     *
+     * @return Future of one recovery per reconciled entry
+     */
+    public CompletableFuture<List<Recovery>> recover() {
+        journal();
+        List<CompletableFuture<Recovery>> recoveries = pending.entrySet().stream()
+                .filter(e -> !e.getValue().inFlight)
+                .map(e -> reconcile(e.getKey(), e.getValue()))
+                .toList();
+        return CompletableFuture.allOf(recoveries.toArray(CompletableFuture<?>[]::new))
+                .thenApply(ignored -> recoveries.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * @return Submissions without an outcome, in flight included
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void destroy() {
+        OutboxJournal current = journal;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void settle(String requestId, Entry entry, ApiResponseDTO<JSONObject> response, Throwable error) {
+        if (response != null) {
+            String detail = response.isSuccess()
+                    ? (response.getData() != null ? response.getData().getString("pay_order_id") : null)
+                    : response.getCode() + " " + response.getMsg();
+            resolve(requestId, entry, response.isSuccess() ? Status.CREATED : Status.REJECTED, detail);
+            return;
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (!entry.sent || OrderLookup.notSent(cause)) {
+            resolve(requestId, entry, Status.NOT_SENT, cause.toString());
+        } else {
+            // The payout may have gone out; recover() will find out
+            entry.inFlight = false;
+        }
+    }
+
+    private CompletableFuture<Recovery> reconcile(String requestId, Entry entry) {
+        return apiClient.postAsync(OrderStatusCache.PAYOUT_QUERY_PATH, Map.of("request_id", requestId), JSONObject.class)
+                .handle((response, error) -> {
+                    if (error != null) {
+                        logger.warn("Outbox recovery query failed: request_id={} error={}", requestId, error.toString());
+                        return new Recovery(requestId, entry.path, entry.body, Status.UNKNOWN, null);
+                    }
+                    OrderLookup.Result result = lookup.classify(response);
+                    if (result == OrderLookup.Result.FOUND) {
+                        JSONObject order = response.getData();
+                        resolve(requestId, entry, Status.CREATED, order.getString("order_status"));
+                        return new Recovery(requestId, entry.path, entry.body, Status.CREATED, order);
+                    }
+                    if (result == OrderLookup.Result.UNKNOWN) {
+                        logger.warn("Outbox recovery query failed: request_id={} code={} msg={}", requestId,
+                                response.getCode(), response.getMsg());
+                        return new Recovery(requestId, entry.path, entry.body, Status.UNKNOWN, null);
+                    }
+                    resolve(requestId, entry, Status.NOT_FOUND, response.getCode() + " " + response.getMsg());
+                    return new Recovery(requestId, entry.path, entry.body, Status.NOT_FOUND, null);
+                });
+    }
+
+    private void resolve(String requestId, Entry entry, Status status, String detail) {
+        if (pending.remove(requestId, entry)) {
+            // Not synced: a lost outcome only costs a query on recovery
+            journal.append(OUTCOME, requestId, status.name(), detail);
+        }
+    }
+
+    private OutboxJournal journal() {
+        OutboxJournal current = journal;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (journal == null) {
+                Path directory = Paths.get(settings.getDirectory());
+                try {
+                    journal = new OutboxJournal(directory, (int) settings.getSegmentSize().toBytes(),
+                            settings.getCommitDelay().toNanos(), this::oldestPendingSegment, this::replay);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to open the outbox journal in " + directory, e);
+                }
+                if (!pending.isEmpty()) {
+                    logger.info("Outbox journal has {} payouts without an outcome", pending.size());
+                }
+            }
+            return journal;
+        }
+    }
+
+    private void replay(OutboxJournal.Record record) {
+        String requestId = record.fields()[0];
+        if (record.type() == SUBMIT) {
+            pending.put(requestId, new Entry(record.fields()[1], record.fields()[2], record.segment(), false));
+        } else if (record.type() == OUTCOME) {
+            pending.remove(requestId);
+        }
+    }
+
+    private long oldestPendingSegment() {
+        return pending.values().stream().mapToLong(entry -> entry.segment).min().orElse(Long.MAX_VALUE);
+    }
+
+    /**
+     * A payout submission without an outcome
+     */
+    private static final class Entry {
+
+        private final String path;
+        private final String body;
+
+        /**
+         * Segment holding the submission record, or an earlier one
+         */
+        private final long segment;
+
+        /**
+         * Whether a live submit() still waits for the response
+         */
+        private volatile boolean inFlight;
+
+        /**
+         * Whether the request was handed to the client after the record was durable
+         */
+        private volatile boolean sent;
+
+        private Entry(String path, String body, long segment, boolean inFlight) {
+            this.path = path;
+            this.body = body;
+            this.segment = segment;
+            this.inFlight = inFlight;
+        }
+    }
+
+    /**
+     * Result of reconciling one journaled payout
+     */
+    public static final class Recovery {
+
+        private final String requestId;
+        private final String path;
+        private final String body;
+        private final Status status;
+        private final JSONObject order;
+
+        Recovery(String requestId, String path, String body, Status status, JSONObject order) {
+            this.requestId = requestId;
+            this.path = path;
+            this.body = body;
+            this.status = status;
+            this.order = order;
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        /**
+         * @return Create-order endpoint the payout was submitted to
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return Journaled JSON body, to resubmit a payout that was not found
+         */
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * @return CREATED, NOT_FOUND or UNKNOWN
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return Order returned by the payout query when CREATED, null otherwise
+         */
+        public JSONObject getOrder() {
+            return order;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.dpe.lesspay2.demo.payout;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.LesspayApiClient;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Balance Ledger
+ *
+ * Local payout balance per currency and way_code, so payouts are not preceded by a
+ * /api/global/payout/balance call each:
+ * - {@link #seed} loads the balance once from the gateway
+ * - {@link #reserve} debits a payout before it is submitted, with a compare-and-set on the
+ *   account counters, and refuses it when the balance is short
+ * - failed, canceled and closed orders (and the failed details of a partially successful one)
+ *   are credited back from the verified payout webhook, once per request_id
+ * - every seeded account is resynced every resync-interval; reservations made while the balance
+ *   request was in flight are reapplied on top of the returned balance, credits are not: a failure
+ *   webhook follows the refund, so the returned balance may hold it already. Such a credit is left
+ *   out until the next resync; one whose webhook arrives just after the response may still be
+ *   counted twice until then
+ * - reservations whose order the gateway has not acknowledged yet ({@link #acknowledge}, or a webhook)
+ *   are not in the returned balance either, and stay deducted across every resync
+ *
+ * The ledger assumes the gateway deducts a payout from the balance when the order is created.
+ * Amounts are kept in units of 10^-4.
+ */
+@Component
+public class BalanceLedger implements DisposableBean {
+
+    public static final String PAYOUT_BALANCE_PATH = "/api/global/payout/balance";
+
+    private static final Logger logger = LoggerFactory.getLogger(BalanceLedger.class);
+
+    private static final int SCALE = 4;
+
+    /**
+     * Order statuses whose whole amount is credited back
+     */
+    private static final Set<String> FAILED_ORDER_STATUSES = Set.of("FAILED", "CANCELED", "CLOSED", "REFUND");
+
+    /**
+     * Detail statuses credited back for a PARTIAL_SUCCESS order, compared case-insensitively
+     */
+    private static final Set<String> FAILED_DETAIL_STATUSES = Set.of("FAILED", "CANCELED", "CLOSED", "REFUNDED");
+
+    private static final Set<String> SETTLED_ORDER_STATUSES = Set.of("SUCCEED", "PARTIAL_SUCCESS");
+
+    private final LesspayApiClient apiClient;
+    private final ApiConfig.Balance settings;
+    private final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * Open reservations by request_id
+     */
+    private final ConcurrentMap<String, Reservation> reservations = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService resync;
+
+    public BalanceLedger(ApiConfig apiConfig, LesspayApiClient apiClient) {
+        this.apiClient = apiClient;
+        this.settings = apiConfig.getBalance();
+    }
+
+    /**
+     * Outcome of {@link #reserve}
+     */
+    public enum ReserveResult {
+        /**
+         * The amount has been debited
+         */
+        RESERVED,
+        /**
+         * The balance is lower than the amount; nothing was debited
+         */
+        INSUFFICIENT_FUNDS,
+        /**
+         * The account has not been seeded yet; nothing was debited
+         */
+        NOT_SEEDED
+    }
+
+    /**
+     * Load the balance of an account from the gateway, and resync it every resync-interval from then on
+     *
+     * @return Future of the available balance
+     */
+    public CompletableFuture<BigDecimal> seed(String currency, String wayCode) {
+        Account account = accounts.computeIfAbsent(key(currency, wayCode), key -> new Account(currency, wayCode));
+        startResync();
+        return sync(account).thenApply(ignored -> account.available());
+    }
+
+    /**
+     * Debit a payout before submitting it
+     *
+     * @param requestId request_id of the payout order, to credit it back from its webhook
+     * @param amount    Payout amount (total_amount of a batch)
+     * @throws IllegalArgumentException if the amount is not a positive decimal with at most 4 decimal places,
+     *                                  or the request_id already holds a reservation
+     */
+    public ReserveResult reserve(String requestId, String currency, String wayCode, String amount) {
+        long units = units(amount);
+        if (units <= 0) {
+            throw new IllegalArgumentException("Payout amount must be positive: " + amount);
+        }
+        Account account = accounts.get(key(currency, wayCode));
+        if (account == null || !account.seeded) {
+            return ReserveResult.NOT_SEEDED;
+        }
+        // Counted as unacknowledged before it is reserved, so a resync never sees it reserved but acknowledged
+        account.unacknowledged.addAndGet(units);
+        if (!account.tryReserve(units)) {
+            account.unacknowledged.addAndGet(-units);
+            return ReserveResult.INSUFFICIENT_FUNDS;
+        }
+        if (reservations.putIfAbsent(requestId, new Reservation(account, units)) != null) {
+            account.credit(units);
+            account.unacknowledged.addAndGet(-units);
+            throw new IllegalArgumentException("request_id " + requestId + " already has a reservation");
+        }
+        return ReserveResult.RESERVED;
+    }
+
+    /**
+     * Record that the gateway has created the payout of a reservation (successful create-order response),
+     * so its amount is in the balance the gateway returns from now on
+     *
+     * @return true if the request_id holds a reservation
+     */
+    public boolean acknowledge(String requestId) {
+        Reservation reservation = reservations.get(requestId);
+        if (reservation == null) {
+            return false;
+        }
+        reservation.acknowledge();
+        return true;
+    }
+
+    /**
+     * Credit back a reservation whose payout was not created (rejected or not sent)
+     *
+     * @return true if the request_id held a reservation
+     */
+    public boolean release(String requestId) {
+        Reservation reservation = reservations.remove(requestId);
+        if (reservation == null) {
+            return false;
+        }
+        // Never created: the gateway balance never had it
+        reservation.acknowledge();
+        reservation.account.credit(reservation.units);
+        return true;
+    }
+
+    /**
+     * Apply a payout callback returned by {@link com.dpe.lesspay2.demo.webhook.WebhookVerifier#verifyPayout}
+     *
+     * Failed amounts are credited back; a successful order only closes its reservation.
+     * Webhooks of pending orders, of unknown request_ids and repeated webhooks change nothing.
+     *
+     * @param notification Verified notification; null (failed verification) is ignored
+     */
+    public void onPayoutWebhook(JSONObject notification) {
+        if (notification == null) {
+            return;
+        }
+        String requestId = notification.getString("request_id");
+        String status = notification.getString("order_status");
+        if (requestId == null || status == null
+                || (!FAILED_ORDER_STATUSES.contains(status) && !SETTLED_ORDER_STATUSES.contains(status))) {
+            return;
+        }
+        Reservation reservation = reservations.remove(requestId);
+        if (reservation == null) {
+            return;
+        }
+        // A webhook means the order was created
+        reservation.acknowledge();
+        long credit = 0;
+        if (FAILED_ORDER_STATUSES.contains(status)) {
+            credit = reservation.units;
+        } else if ("PARTIAL_SUCCESS".equals(status)) {
+            credit = Math.min(failedDetailUnits(notification.getJSONArray("details")), reservation.units);
+        }
+        if (credit > 0) {
+            reservation.account.credit(credit);
+        }
+    }
+
+    /**
+     * @return Available balance of an account, or null if it has not been seeded
+     */
+    public BigDecimal getAvailable(String currency, String wayCode) {
+        Account account = accounts.get(key(currency, wayCode));
+        return account != null && account.seeded ? account.available() : null;
+    }
+
+    /**
+     * Resync every seeded account now
+     *
+     * @return Future completed once every account has been resynced or has failed to
+     */
+    public CompletableFuture<Void> resync() {
+        return CompletableFuture.allOf(accounts.values().stream()
+                .map(account -> sync(account).exceptionally(e -> {
+                    logger.warn("Balance resync failed: currency={} way_code={} error={}",
+                            account.currency, account.wayCode, e.toString());
+                    return null;
+                }))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    @Override
+    public void destroy() {
+        ScheduledExecutorService executor = resync;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<Void> sync(Account account) {
+        long reserved = account.reserved.get();
+        // Read last: every reservation in reserved is either counted here or already acknowledged
+        long unacknowledged = account.unacknowledged.get();
+        Map<String, Object> request = new HashMap<>();
+        request.put("currency", account.currency);
+        request.put("way_code", account.wayCode);
+        return apiClient.postAsync(PAYOUT_BALANCE_PATH, request, Object.class).thenAccept(response -> {
+            long balance = units(balance(response));
+            // Reservations made while the request was in flight are not in the returned balance, nor are
+            // reservations the gateway had not acknowledged; one acknowledged in flight stays deducted until
+            // the next resync. Credits made in flight may be in it, so they are read now and not reapplied
+            long credited = account.credited.get();
+            account.base = balance + reserved - credited - unacknowledged;
+            account.seeded = true;
+        });
+    }
+
+    private void startResync() {
+        long interval = settings.getResyncInterval().toMillis();
+        if (interval <= 0 || resync != null) {
+            return;
+        }
+        synchronized (this) {
+            if (resync == null) {
+                ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "lesspay-balance-resync");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                executor.scheduleWithFixedDelay(this::resync, interval, interval, TimeUnit.MILLISECONDS);
+                resync = executor;
+            }
+        }
+    }
+
+    /**
+     * Read the balance of a response whose data is the amount itself or an object holding it
+     */
+    static String balance(ApiResponseDTO<Object> response) {
+        if (!response.isSuccess()) {
+            throw new IllegalStateException("Balance query failed: code=" + response.getCode() + ", msg=" + response.getMsg());
+        }
+        Object data = response.getData();
+        if (data instanceof JSONObject object) {
+            for (String name : new String[]{"available_balance", "available_amount", "balance", "amount"}) {
+                if (object.get(name) != null) {
+                    return object.getString(name);
+                }
+            }
+        } else if (data instanceof Number || data instanceof String) {
+            return data.toString();
+        }
+        throw new IllegalStateException("Balance response has no balance: " + data);
+    }
+
+    private static long failedDetailUnits(JSONArray details) {
+        long units = 0;
+        if (details == null) {
+            return 0;
+        }
+        for (JSONObject detail : details.toJavaList(JSONObject.class)) {
+            String status = detail.getString("status");
+            if (status != null && FAILED_DETAIL_STATUSES.contains(status.toUpperCase(Locale.ROOT)) && detail.getString("amount") != null) {
+                units += units(detail.getString("amount"));
+            }
+        }
+        return units;
+    }
+
+    static long units(String amount) {
+        try {
+            return new BigDecimal(amount.trim()).movePointRight(SCALE).longValueExact();
+        } catch (ArithmeticException | NumberFormatException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid amount: " + amount, e);
+        }
+    }
+
+    private static String key(String currency, String wayCode) {
+        return currency + "|" + wayCode;
+    }
+
+    /**
+     * Balance of one currency and way_code: base - reserved + credited
+     *
+     * reserved and credited only grow; a resync moves base. A reservation is a compare-and-set on
+     * reserved against the balance it read, so concurrent reservations never overdraw.
+     */
+    private static final class Account {
+
+        private final String currency;
+        private final String wayCode;
+        private final AtomicLong reserved = new AtomicLong();
+        private final AtomicLong credited = new AtomicLong();
+
+        /**
+         * Reserved units whose order the gateway has not acknowledged, so not in its balance
+         */
+        private final AtomicLong unacknowledged = new AtomicLong();
+        private volatile long base;
+        private volatile boolean seeded;
+
+        private Account(String currency, String wayCode) {
+            this.currency = currency;
+            this.wayCode = wayCode;
+        }
+
+        private boolean tryReserve(long units) {
+            while (true) {
+                long current = reserved.get();
+                if (base - current + credited.get() < units) {
+                    return false;
+                }
+                if (reserved.compareAndSet(current, current + units)) {
+                    return true;
+                }
+            }
+        }
+
+        private void credit(long units) {
+            credited.addAndGet(units);
+        }
+
+        private BigDecimal available() {
+            return BigDecimal.valueOf(base - reserved.get() + credited.get(), SCALE);
+        }
+    }
+
+    private static final class Reservation {
+
+        private final Account account;
+        private final long units;
+        private final AtomicBoolean acknowledged = new AtomicBoolean();
+
+        private Reservation(Account account, long units) {
+            this.account = account;
+            this.units = units;
+        }
+
+        private void acknowledge() {
+            if (acknowledged.compareAndSet(false, true)) {
+                account.unacknowledged.addAndGet(-units);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.dpe.lesspay2.demo.payout;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.LesspayApiClient;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.dto.PayoutBankDTO;
+import com.dpe.lesspay2.demo.dto.PayoutBankInfoDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Bank Directory
+ *
+ * Keeps the /api/global/payout/bank list of every way_code, bank_country_code and currency
+ * asked for, as an indexed {@link BankList}:
+ * - reads never wait for the network: they return the current list, even when it is older than
+ *   refresh-after, and start a background refresh if one is due (stale-while-revalidate)
+ * - a failed load or refresh keeps the previous list and is retried after retry-after
+ * - before the first load completes, reads return a list that is not loaded;
+ *   call {@link #load} at startup for the banks payouts will be validated against
+ */
+@Component
+public class BankDirectory {
+
+    public static final String PAYOUT_BANK_PATH = "/api/global/payout/bank";
+
+    private static final Logger logger = LoggerFactory.getLogger(BankDirectory.class);
+
+    private final LesspayApiClient apiClient;
+    private final ApiConfig.Banks settings;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Monotonic time in nanoseconds
+     */
+    private final LongSupplier nanoTime;
+
+    public BankDirectory(ApiConfig apiConfig, LesspayApiClient apiClient) {
+        this(apiConfig, apiClient, System::nanoTime);
+    }
+
+    BankDirectory(ApiConfig apiConfig, LesspayApiClient apiClient, LongSupplier nanoTime) {
+        this.apiClient = apiClient;
+        this.settings = apiConfig.getBanks();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Outcome of {@link #validate}
+     */
+    public enum Validation {
+        /**
+         * The bank code is in the list
+         */
+        VALID,
+        /**
+         * The list is loaded and has no such bank code
+         */
+        UNKNOWN_BANK,
+        /**
+         * No list has been loaded yet for this way_code and country
+         */
+        NOT_LOADED
+    }
+
+    /**
+     * Current bank list, without waiting; starts a background refresh when one is due
+     *
+     * @param query way_code, bank_country_code and currency
+     * @return Possibly stale list; {@link BankList#isLoaded()} is false until the first load completes
+     */
+    public BankList get(PayoutBankDTO query) {
+        Entry entry = entry(query);
+        if (nanoTime.getAsLong() - entry.refreshAt >= 0) {
+            refresh(entry);
+        }
+        return entry.banks;
+    }
+
+    /**
+     * Check a bank code without waiting for the network
+     *
+     * @param query    way_code, bank_country_code and currency of the payout
+     * @param bankCode bank_codes.bank_code of the payout
+     */
+    public Validation validate(PayoutBankDTO query, String bankCode) {
+        BankList banks = get(query);
+        if (!banks.isLoaded()) {
+            return Validation.NOT_LOADED;
+        }
+        return banks.byCode(bankCode) != null ? Validation.VALID : Validation.UNKNOWN_BANK;
+    }
+
+    /**
+     * Load (or reload) a bank list now
+     *
+     * @param query way_code, bank_country_code and currency
+     * @return Future of the list once loaded (joining a refresh already running); on failure, of the previous list
+     */
+    public CompletableFuture<BankList> load(PayoutBankDTO query) {
+        return refresh(entry(query));
+    }
+
+    private Entry entry(PayoutBankDTO query) {
+        String key = query.getWayCode() + "|" + query.getBankCountryCode() + "|" + query.getCurrency();
+        return entries.computeIfAbsent(key, k -> {
+            PayoutBankDTO request = new PayoutBankDTO();
+            request.setWayCode(query.getWayCode());
+            request.setBankCountryCode(query.getBankCountryCode());
+            request.setCurrency(query.getCurrency());
+            return new Entry(request, nanoTime.getAsLong());
+        });
+    }
+
+    /**
+     * Start a refresh, or join the one running
+     *
+     * The future is published before the request is sent, so a concurrent caller always joins it.
+     *
+     * @return Future of the refresh
+     */
+    private CompletableFuture<BankList> refresh(Entry entry) {
+        CompletableFuture<BankList> refresh = new CompletableFuture<>();
+        while (!entry.refreshing.compareAndSet(null, refresh)) {
+            CompletableFuture<BankList> running = entry.refreshing.get();
+            if (running != null) {
+                return running;
+            }
+        }
+        CompletableFuture<List<PayoutBankInfoDTO>> request;
+        try {
+            request = apiClient.postAsync(PAYOUT_BANK_PATH, entry.request, Object.class).thenApply(BankDirectory::parse);
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((banks, error) -> {
+            if (error != null) {
+                logger.warn("Bank list refresh failed: way_code={} country={} error={}",
+                        entry.request.getWayCode(), entry.request.getBankCountryCode(), error.toString());
+                entry.refreshAt = nanoTime.getAsLong() + settings.getRetryAfter().toNanos();
+            } else {
+                entry.banks = new BankList(banks, System.currentTimeMillis());
+                entry.refreshAt = nanoTime.getAsLong() + settings.getRefreshAfter().toNanos();
+            }
+            // The list is published before the slot is freed, so a caller that misses the slot reads it
+            entry.refreshing.set(null);
+            refresh.complete(entry.banks);
+        });
+        return refresh;
+    }
+
+    /**
+     * Read the banks of a response whose data is the list itself or an object holding it
+     */
+    static List<PayoutBankInfoDTO> parse(ApiResponseDTO<Object> response) {
+        if (!response.isSuccess()) {
+            throw new IllegalStateException("Bank list query failed: code=" + response.getCode() + ", msg=" + response.getMsg());
+        }
+        Object data = response.getData();
+        if (data instanceof JSONObject object) {
+            for (String name : new String[]{"list", "banks", "records", "rows"}) {
+                if (object.get(name) instanceof JSONArray array) {
+                    data = array;
+                    break;
+                }
+            }
+        }
+        if (!(data instanceof JSONArray array)) {
+            throw new IllegalStateException("Bank list response has no list: " + data);
+        }
+        return array.toJavaList(PayoutBankInfoDTO.class);
+    }
+
+    private static final class Entry {
+
+        private final PayoutBankDTO request;
+
+        /**
+         * Refresh running, null when none is
+         */
+        private final AtomicReference<CompletableFuture<BankList>> refreshing = new AtomicReference<>();
+        private volatile BankList banks = BankList.NOT_LOADED;
+
+        /**
+         * nanoTime from which a read starts a refresh
+         */
+        private volatile long refreshAt;
+
+        private Entry(PayoutBankDTO request, long refreshAt) {
+            this.request = request;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
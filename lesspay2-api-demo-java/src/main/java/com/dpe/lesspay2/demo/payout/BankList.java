@@ -0,0 +1,120 @@
+package com.dpe.lesspay2.demo.payout;
+
+import com.dpe.lesspay2.demo.dto.PayoutBankInfoDTO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the supported banks of one way_code and country
+ *
+ * Indexed on load so that every lookup is a hash lookup:
+ * - bank code, case-insensitive
+ * - SWIFT code, 11 characters or the 8-character bank part
+ * - lowercase name prefixes up to {@link #INDEXED_PREFIX_LENGTH} characters; longer prefixes
+ *   filter the banks of their first {@link #INDEXED_PREFIX_LENGTH} characters
+ */
+public final class BankList {
+
+    static final int INDEXED_PREFIX_LENGTH = 8;
+
+    static final BankList NOT_LOADED = new BankList(Collections.emptyList(), 0);
+
+    private final List<PayoutBankInfoDTO> banks;
+    private final long loadedAt;
+    private final Map<String, PayoutBankInfoDTO> byCode = new HashMap<>();
+    private final Map<String, PayoutBankInfoDTO> bySwift = new HashMap<>();
+    private final Map<String, List<PayoutBankInfoDTO>> byNamePrefix = new HashMap<>();
+
+    BankList(List<PayoutBankInfoDTO> banks, long loadedAt) {
+        List<PayoutBankInfoDTO> sorted = new ArrayList<>(banks);
+        sorted.sort(Comparator.comparing(bank -> normalize(bank.getBankName())));
+        this.banks = Collections.unmodifiableList(sorted);
+        this.loadedAt = loadedAt;
+        for (PayoutBankInfoDTO bank : sorted) {
+            if (bank.getBankCode() != null) {
+                byCode.putIfAbsent(bank.getBankCode().toUpperCase(Locale.ROOT), bank);
+            }
+            String swift = bank.getSwiftCode() != null ? bank.getSwiftCode().toUpperCase(Locale.ROOT) : "";
+            if (swift.length() >= 8) {
+                bySwift.putIfAbsent(swift, bank);
+                bySwift.putIfAbsent(swift.substring(0, 8), bank);
+            }
+            String name = normalize(bank.getBankName());
+            for (int i = 1; i <= Math.min(name.length(), INDEXED_PREFIX_LENGTH); i++) {
+                byNamePrefix.computeIfAbsent(name.substring(0, i), prefix -> new ArrayList<>()).add(bank);
+            }
+        }
+    }
+
+    /**
+     * @return false until the first successful load
+     */
+    public boolean isLoaded() {
+        return loadedAt != 0;
+    }
+
+    /**
+     * @return Time of the load (milliseconds timestamp), 0 if not loaded
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * @return Banks sorted by name
+     */
+    public List<PayoutBankInfoDTO> getBanks() {
+        return banks;
+    }
+
+    /**
+     * @return Bank with this bank_code (case-insensitive), or null
+     */
+    public PayoutBankInfoDTO byCode(String bankCode) {
+        return bankCode != null ? byCode.get(bankCode.toUpperCase(Locale.ROOT)) : null;
+    }
+
+    /**
+     * @return Bank with this SWIFT code; an 11-character branch code also matches its 8-character bank code
+     */
+    public PayoutBankInfoDTO bySwift(String swiftCode) {
+        if (swiftCode == null) {
+            return null;
+        }
+        String swift = swiftCode.toUpperCase(Locale.ROOT);
+        PayoutBankInfoDTO bank = bySwift.get(swift);
+        return bank != null || swift.length() <= 8 ? bank : bySwift.get(swift.substring(0, 8));
+    }
+
+    /**
+     * @return Banks whose name starts with the prefix (case-insensitive), sorted by name
+     */
+    public List<PayoutBankInfoDTO> byNamePrefix(String prefix) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty()) {
+            return banks;
+        }
+        List<PayoutBankInfoDTO> candidates = byNamePrefix.getOrDefault(
+                normalized.substring(0, Math.min(normalized.length(), INDEXED_PREFIX_LENGTH)), Collections.emptyList());
+        if (normalized.length() <= INDEXED_PREFIX_LENGTH) {
+            return Collections.unmodifiableList(candidates);
+        }
+        List<PayoutBankInfoDTO> matches = new ArrayList<>();
+        for (PayoutBankInfoDTO bank : candidates) {
+            if (normalize(bank.getBankName()).startsWith(normalized)) {
+                matches.add(bank);
+            }
+        }
+        return matches;
+    }
+
+    private static String normalize(String name) {
+        return name != null ? name.trim().toLowerCase(Locale.ROOT) : "";
+    }
+}
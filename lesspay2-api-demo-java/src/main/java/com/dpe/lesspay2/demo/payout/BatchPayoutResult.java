@@ -0,0 +1,132 @@
+package com.dpe.lesspay2.demo.payout;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a batch payout submitted in chunks
+ *
+ * Each chunk either got a response envelope (which may still carry a non-zero code)
+ * or failed with an exception; every mch_order_id maps to the chunk that carried it.
+ */
+public class BatchPayoutResult {
+
+    private final List<Chunk> chunks;
+    private final Map<String, Chunk> chunksByMchOrderId;
+
+    BatchPayoutResult(List<Chunk> chunks) {
+        this.chunks = Collections.unmodifiableList(chunks);
+        Map<String, Chunk> byMchOrderId = new LinkedHashMap<>();
+        for (Chunk chunk : chunks) {
+            for (String mchOrderId : chunk.getMchOrderIds()) {
+                byMchOrderId.put(mchOrderId, chunk);
+            }
+        }
+        this.chunksByMchOrderId = Collections.unmodifiableMap(byMchOrderId);
+    }
+
+    /**
+     * @return Chunks in submission order
+     */
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return Chunk of every mch_order_id, in detail order
+     */
+    public Map<String, Chunk> getChunksByMchOrderId() {
+        return chunksByMchOrderId;
+    }
+
+    /**
+     * @return Chunk that carried a detail, or null if the id is unknown
+     */
+    public Chunk getChunk(String mchOrderId) {
+        return chunksByMchOrderId.get(mchOrderId);
+    }
+
+    /**
+     * @return true if every chunk was accepted with code 0
+     */
+    public boolean isSuccess() {
+        return chunks.stream().allMatch(Chunk::isSuccess);
+    }
+
+    /**
+     * One child batch request
+     */
+    public static class Chunk {
+
+        private final int index;
+        private final String requestId;
+        private final String totalAmount;
+        private final List<String> mchOrderIds;
+        private final ApiResponseDTO<JSONObject> response;
+        private final Throwable error;
+
+        Chunk(int index, String requestId, String totalAmount, List<String> mchOrderIds,
+              ApiResponseDTO<JSONObject> response, Throwable error) {
+            this.index = index;
+            this.requestId = requestId;
+            this.totalAmount = totalAmount;
+            this.mchOrderIds = mchOrderIds;
+            this.response = response;
+            this.error = error;
+        }
+
+        /**
+         * @return Position of the chunk, starting at 0
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return request_id the chunk was submitted with
+         */
+        public String getRequestId() {
+            return requestId;
+        }
+
+        /**
+         * @return total_amount of the chunk
+         */
+        public String getTotalAmount() {
+            return totalAmount;
+        }
+
+        /**
+         * @return mch_order_id of the details in the chunk
+         */
+        public List<String> getMchOrderIds() {
+            return mchOrderIds;
+        }
+
+        /**
+         * @return Response envelope, null if the request failed
+         */
+        public ApiResponseDTO<JSONObject> getResponse() {
+            return response;
+        }
+
+        /**
+         * @return Exception the request failed with, null if a response was received
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return true if the chunk was accepted with code 0
+         */
+        public boolean isSuccess() {
+            return response != null && response.isSuccess();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.dpe.lesspay2.demo.payout;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.LesspayApiClient;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO.PayoutOrderDetailDTO;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch Payout Submitter
+ *
+ * Splits a large batch payout into child batches of lesspay2.api.batch.chunk-size details
+ * and submits them in parallel, at most max-concurrent-chunks at a time:
+ * - total_amount of each chunk is the exact decimal sum of its detail amounts
+ * - child request_id is {request_id}-{n} (n from 1), so resubmitting the same batch
+ *   produces the same ids; a batch that fits in one chunk keeps its request_id
+ * - a failed chunk does not stop the others, the result reports every chunk
+ */
+@Component
+public class BatchPayoutSubmitter {
+
+    public static final String BATCH_PAYOUT_PATH = "/api/global/payout/batch/create-order";
+
+    private final LesspayApiClient apiClient;
+    private final ApiConfig.Batch settings;
+
+    public BatchPayoutSubmitter(ApiConfig apiConfig, LesspayApiClient apiClient) {
+        this.apiClient = apiClient;
+        this.settings = apiConfig.getBatch();
+    }
+
+    /**
+     * Split and submit a batch payout
+     *
+     * @param batch Batch with any number of payout_order_details
+     * @return Future completed once every chunk has a response or has failed
+     * @throws IllegalArgumentException if the batch has no details, a detail has no valid amount,
+     *                                  or total_amount is set and differs from the sum of the amounts
+     */
+    public CompletableFuture<BatchPayoutResult> submit(CreatePayoutOrderDTO batch) {
+        List<CreatePayoutOrderDTO> chunks = split(batch, settings.getChunkSize());
+        BatchPayoutResult.Chunk[] results = new BatchPayoutResult.Chunk[chunks.size()];
+        AtomicInteger next = new AtomicInteger();
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(settings.getMaxConcurrentChunks(), chunks.size())];
+        for (int i = 0; i < workers.length; i++) {
+            CompletableFuture<Void> worker = new CompletableFuture<>();
+            workers[i] = worker;
+            submitNext(chunks, results, next, worker);
+        }
+        return CompletableFuture.allOf(workers).thenApply(ignored -> new BatchPayoutResult(Arrays.asList(results)));
+    }
+
+    /**
+     * Submit chunks one after another until none is left; each worker keeps one chunk in flight
+     *
+     * Chunks answered at once (rejected by a limiter or an open circuit) are taken in a loop rather
+     * than through nested callbacks, so the stack does not grow with the number of chunks.
+     */
+    private void submitNext(List<CreatePayoutOrderDTO> chunks, BatchPayoutResult.Chunk[] results,
+                            AtomicInteger next, CompletableFuture<Void> worker) {
+        while (true) {
+            int index = next.getAndIncrement();
+            if (index >= chunks.size()) {
+                worker.complete(null);
+                return;
+            }
+            CompletableFuture<BatchPayoutResult.Chunk> pending = submitChunk(index, chunks.get(index));
+            if (!pending.isDone()) {
+                pending.thenAccept(chunkResult -> {
+                    results[index] = chunkResult;
+                    submitNext(chunks, results, next, worker);
+                });
+                return;
+            }
+            results[index] = pending.join();
+        }
+    }
+
+    /**
+     * Submit one child batch
+     *
+     * @return Future of the chunk result, which holds the error instead of completing exceptionally
+     */
+    CompletableFuture<BatchPayoutResult.Chunk> submitChunk(int index, CreatePayoutOrderDTO chunk) {
+        try {
+            return apiClient.postAsync(BATCH_PAYOUT_PATH, chunk, JSONObject.class)
+                    .handle((response, error) -> chunkResult(index, chunk, response, unwrap(error)));
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(chunkResult(index, chunk, null, e));
+        }
+    }
+
+    private static BatchPayoutResult.Chunk chunkResult(int index, CreatePayoutOrderDTO chunk,
+                                                       ApiResponseDTO<JSONObject> response,
+                                                       Throwable error) {
+        List<String> mchOrderIds = new ArrayList<>(chunk.getPayoutOrderDetails().size());
+        for (PayoutOrderDetailDTO detail : chunk.getPayoutOrderDetails()) {
+            mchOrderIds.add(detail.getMchOrderId());
+        }
+        return new BatchPayoutResult.Chunk(index, chunk.getRequestId(), chunk.getTotalAmount(), mchOrderIds, response, error);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Split a batch into child batches with their own request_id and total_amount
+     *
+     * @param batch     Batch payout
+     * @param chunkSize Maximum details per child batch
+     * @return Child batches, or the batch itself (with total_amount filled in) if it fits in one
+     */
+    public static List<CreatePayoutOrderDTO> split(CreatePayoutOrderDTO batch, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        List<PayoutOrderDetailDTO> details = batch.getPayoutOrderDetails();
+        if (details == null || details.isEmpty()) {
+            throw new IllegalArgumentException("Batch payout has no payout_order_details");
+        }
+        BigDecimal[] amounts = new BigDecimal[details.size()];
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = amount(details.get(i));
+            total = total.add(amounts[i]);
+        }
+        if (batch.getTotalAmount() != null && new BigDecimal(batch.getTotalAmount()).compareTo(total) != 0) {
+            throw new IllegalArgumentException("total_amount " + batch.getTotalAmount()
+                    + " does not equal the sum of the detail amounts " + total.toPlainString());
+        }
+
+        int count = (details.size() + chunkSize - 1) / chunkSize;
+        List<CreatePayoutOrderDTO> chunks = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            int from = c * chunkSize;
+            int to = Math.min(from + chunkSize, details.size());
+            BigDecimal chunkTotal = BigDecimal.ZERO;
+            for (int i = from; i < to; i++) {
+                chunkTotal = chunkTotal.add(amounts[i]);
+            }
+            chunks.add(newChunk(batch, count == 1 ? batch.getRequestId() : childRequestId(batch, c),
+                    count == 1 ? details : new ArrayList<>(details.subList(from, to)), chunkTotal));
+        }
+        return chunks;
+    }
+
+    /**
+     * @return request_id of the child batch at {@code index} (from 0)
+     */
+    static String childRequestId(CreatePayoutOrderDTO batch, int index) {
+        return batch.getRequestId() + "-" + (index + 1);
+    }
+
+    /**
+     * Build a child batch with the header fields of {@code batch}
+     */
+    static CreatePayoutOrderDTO newChunk(CreatePayoutOrderDTO batch, String requestId,
+                                         List<PayoutOrderDetailDTO> details, BigDecimal total) {
+        CreatePayoutOrderDTO chunk = copyHeader(batch);
+        chunk.setRequestId(requestId);
+        chunk.setTotalAmount(total.toPlainString());
+        chunk.setPayoutOrderDetails(details);
+        return chunk;
+    }
+
+    static BigDecimal amount(PayoutOrderDetailDTO detail) {
+        if (detail.getAmount() == null) {
+            throw new IllegalArgumentException("Payout detail " + detail.getMchOrderId() + " has no amount");
+        }
+        try {
+            return new BigDecimal(detail.getAmount());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Payout detail " + detail.getMchOrderId()
+                    + " has an invalid amount: " + detail.getAmount(), e);
+        }
+    }
+
+    private static CreatePayoutOrderDTO copyHeader(CreatePayoutOrderDTO batch) {
+        CreatePayoutOrderDTO chunk = new CreatePayoutOrderDTO();
+        chunk.setProductName(batch.getProductName());
+        chunk.setDescription(batch.getDescription());
+        chunk.setCurrency(batch.getCurrency());
+        chunk.setWayCode(batch.getWayCode());
+        chunk.setWayType(batch.getWayType());
+        chunk.setExpiredTime(batch.getExpiredTime());
+        chunk.setTransactionNetwork(batch.getTransactionNetwork());
+        chunk.setNotifyUrl(batch.getNotifyUrl());
+        chunk.setDestinationType(batch.getDestinationType());
+        return chunk;
+    }
+}
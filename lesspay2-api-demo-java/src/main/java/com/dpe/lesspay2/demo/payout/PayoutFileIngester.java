@@ -0,0 +1,348 @@
+package com.dpe.lesspay2.demo.payout;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO.PayoutOrderDetailDTO;
+import com.dpe.lesspay2.demo.dto.PayoutEWalletDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Payout File Ingester
+ *
+ * Streams a payroll export into batch create-order requests:
+ * - CSV (first line names the columns) or JSONL (one detail object per line) is read line by line
+ * - Each row is mapped to a PayoutOrderDetailDTO and validated; rejected rows go to a JSONL
+ *   reject file as {"line": n, "reason": "...", "content": "raw line"}
+ * - Valid rows are grouped into child batches of lesspay2.api.batch.chunk-size, submitted as soon
+ *   as they are full, with at most max-concurrent-chunks in flight; reading waits for a free slot
+ *
+ * Memory is bounded by chunk-size x max-concurrent-chunks details, whatever the file size, plus the
+ * mch_order_ids of the file, kept to the end so a duplicate in a later chunk is rejected too.
+ * Child request_ids are {request_id}-{n} like {@link BatchPayoutSubmitter}, also for a single chunk.
+ *
+ * CSV columns are the JSON field names of PayoutOrderDetailDTO (mch_order_id, amount,
+ * bank_account_no, ...), e-wallet fields are prefixed with "e_wallet." (e_wallet.account_number, ...).
+ * Quoted cells may contain commas and doubled quotes, but not line breaks.
+ */
+@Component
+public class PayoutFileIngester {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayoutFileIngester.class);
+
+    private static final String DESTINATION_BANK = "bank";
+    private static final String DESTINATION_EWALLET = "ewallet";
+
+    /**
+     * Input file formats
+     */
+    public enum Format {
+        CSV,
+        JSONL;
+
+        /**
+         * Guess the format from the file extension: .jsonl / .ndjson, anything else is CSV
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") ? JSONL : CSV;
+        }
+    }
+
+    private static final Map<String, BiConsumer<PayoutOrderDetailDTO, String>> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put("mch_order_id", PayoutOrderDetailDTO::setMchOrderId);
+        COLUMNS.put("amount", PayoutOrderDetailDTO::setAmount);
+        COLUMNS.put("bank_account_no", PayoutOrderDetailDTO::setBankAccountNo);
+        COLUMNS.put("bank_account_name", PayoutOrderDetailDTO::setBankAccountName);
+        COLUMNS.put("bank_account_type", PayoutOrderDetailDTO::setBankAccountType);
+        COLUMNS.put("bank_name", PayoutOrderDetailDTO::setBankName);
+        COLUMNS.put("bank_country_code", PayoutOrderDetailDTO::setBankCountryCode);
+        COLUMNS.put("bank_swift_code", PayoutOrderDetailDTO::setBankSwiftCode);
+        COLUMNS.put("e_wallet.account_name", (detail, value) -> eWallet(detail).setAccountName(value));
+        COLUMNS.put("e_wallet.account_type", (detail, value) -> eWallet(detail).setAccountType(value));
+        COLUMNS.put("e_wallet.account_number", (detail, value) -> eWallet(detail).setAccountNumber(value));
+        COLUMNS.put("e_wallet.provider", (detail, value) -> eWallet(detail).setProvider(value));
+        COLUMNS.put("e_wallet.deposit_key_type", (detail, value) -> eWallet(detail).setDepositKeyType(value));
+        COLUMNS.put("e_wallet.deposit_key", (detail, value) -> eWallet(detail).setDepositKey(value));
+    }
+
+    private final BatchPayoutSubmitter submitter;
+    private final ApiConfig.Batch settings;
+
+    public PayoutFileIngester(ApiConfig apiConfig, BatchPayoutSubmitter submitter) {
+        this.submitter = submitter;
+        this.settings = apiConfig.getBatch();
+    }
+
+    /**
+     * Ingest a file whose format is guessed from its extension
+     *
+     * @see #ingest(Path, Format, CreatePayoutOrderDTO, Path, Consumer)
+     */
+    public PayoutIngestionResult ingest(Path file, CreatePayoutOrderDTO header, Path rejectFile,
+                                        Consumer<BatchPayoutResult.Chunk> listener) throws IOException, InterruptedException {
+        return ingest(file, Format.of(file), header, rejectFile, listener);
+    }
+
+    /**
+     * Read a payout file and submit its rows as child batches; returns once every batch has completed
+     *
+     * @param file       CSV or JSONL file, UTF-8
+     * @param format     File format
+     * @param header     Batch fields shared by all child batches (request_id, currency, way_code, ...);
+     *                   its payout_order_details are ignored
+     * @param rejectFile File (re)written with the rejected rows
+     * @param listener   Called with each child batch result as it completes, on an HTTP client thread
+     * @return Counters of the ingestion
+     * @throws IllegalArgumentException if the CSV header names an unknown column
+     */
+    public PayoutIngestionResult ingest(Path file, Format format, CreatePayoutOrderDTO header, Path rejectFile,
+                                        Consumer<BatchPayoutResult.Chunk> listener) throws IOException, InterruptedException {
+        if (header.getRequestId() == null || header.getRequestId().isBlank()) {
+            throw new IllegalArgumentException("Batch header has no request_id");
+        }
+        Ingestion ingestion = new Ingestion(header, listener);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8)) {
+            List<BiConsumer<PayoutOrderDetailDTO, String>> columns = null;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                    line = line.substring(1);
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && columns == null) {
+                    columns = columns(parseCsvLine(line));
+                    continue;
+                }
+                ingestion.rowsRead++;
+                try {
+                    PayoutOrderDetailDTO detail = format == Format.CSV ? csvDetail(columns, line) : jsonDetail(line);
+                    ingestion.add(detail);
+                } catch (IllegalArgumentException e) {
+                    ingestion.rowsRejected++;
+                    reject(rejects, lineNumber, e.getMessage(), line);
+                }
+            }
+            ingestion.flush();
+        } finally {
+            ingestion.awaitAll();
+        }
+        return new PayoutIngestionResult(ingestion.rowsRead, ingestion.rowsRejected,
+                ingestion.chunks, ingestion.succeeded.get());
+    }
+
+    /**
+     * State of one ingestion: the chunk being filled and the chunks in flight
+     */
+    private final class Ingestion {
+
+        private final CreatePayoutOrderDTO header;
+        private final Consumer<BatchPayoutResult.Chunk> listener;
+        private final boolean bankDestination;
+        private final boolean eWalletDestination;
+        private final Semaphore slots = new Semaphore(settings.getMaxConcurrentChunks());
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final Set<String> mchOrderIds = new HashSet<>();
+        private List<PayoutOrderDetailDTO> details = new ArrayList<>(settings.getChunkSize());
+        private BigDecimal total = BigDecimal.ZERO;
+        private long rowsRead;
+        private long rowsRejected;
+        private int chunks;
+
+        private Ingestion(CreatePayoutOrderDTO header, Consumer<BatchPayoutResult.Chunk> listener) {
+            this.header = header;
+            this.listener = listener;
+            String destination = header.getDestinationType() == null ? DESTINATION_BANK : header.getDestinationType();
+            this.bankDestination = DESTINATION_BANK.equalsIgnoreCase(destination);
+            this.eWalletDestination = DESTINATION_EWALLET.equalsIgnoreCase(destination);
+        }
+
+        /**
+         * Validate a detail and add it to the current chunk
+         *
+         * @throws IllegalArgumentException with the reason the row is rejected
+         */
+        private void add(PayoutOrderDetailDTO detail) throws InterruptedException {
+            if (isBlank(detail.getMchOrderId())) {
+                throw new IllegalArgumentException("mch_order_id is required");
+            }
+            BigDecimal amount = BatchPayoutSubmitter.amount(detail);
+            if (amount.signum() <= 0) {
+                throw new IllegalArgumentException("amount must be positive: " + detail.getAmount());
+            }
+            if (bankDestination && (isBlank(detail.getBankAccountNo()) || isBlank(detail.getBankAccountName()))) {
+                throw new IllegalArgumentException("bank_account_no and bank_account_name are required");
+            }
+            if (eWalletDestination && (detail.getPayoutEWallet() == null || isBlank(detail.getPayoutEWallet().getAccountNumber()))) {
+                throw new IllegalArgumentException("e_wallet.account_number is required");
+            }
+            if (!mchOrderIds.add(detail.getMchOrderId())) {
+                throw new IllegalArgumentException("Duplicate mch_order_id in the same file: " + detail.getMchOrderId());
+            }
+            details.add(detail);
+            total = total.add(amount);
+            if (details.size() >= settings.getChunkSize()) {
+                flush();
+            }
+        }
+
+        /**
+         * Submit the current chunk once a slot is free
+         */
+        private void flush() throws InterruptedException {
+            if (details.isEmpty()) {
+                return;
+            }
+            slots.acquire();
+            int index = chunks++;
+            CreatePayoutOrderDTO chunk = BatchPayoutSubmitter.newChunk(header,
+                    BatchPayoutSubmitter.childRequestId(header, index), details, total);
+            details = new ArrayList<>(settings.getChunkSize());
+            total = BigDecimal.ZERO;
+            submitter.submitChunk(index, chunk).whenComplete((result, error) -> {
+                try {
+                    if (result.isSuccess()) {
+                        succeeded.incrementAndGet();
+                    }
+                    listener.accept(result);
+                } catch (RuntimeException e) {
+                    logger.warn("Payout chunk listener failed for {}", chunk.getRequestId(), e);
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+
+        private void awaitAll() throws InterruptedException {
+            int permits = settings.getMaxConcurrentChunks();
+            slots.acquire(permits);
+            slots.release(permits);
+        }
+    }
+
+    private static List<BiConsumer<PayoutOrderDetailDTO, String>> columns(List<String> names) {
+        List<BiConsumer<PayoutOrderDetailDTO, String>> columns = new ArrayList<>(names.size());
+        for (String name : names) {
+            BiConsumer<PayoutOrderDetailDTO, String> setter = COLUMNS.get(name.trim());
+            if (setter == null) {
+                throw new IllegalArgumentException("Unknown payout column: " + name + ", expected one of " + COLUMNS.keySet());
+            }
+            columns.add(setter);
+        }
+        return columns;
+    }
+
+    private static PayoutOrderDetailDTO csvDetail(List<BiConsumer<PayoutOrderDetailDTO, String>> columns, String line) {
+        List<String> cells = parseCsvLine(line);
+        if (cells.size() != columns.size()) {
+            throw new IllegalArgumentException("Expected " + columns.size() + " columns, found " + cells.size());
+        }
+        PayoutOrderDetailDTO detail = new PayoutOrderDetailDTO();
+        for (int i = 0; i < cells.size(); i++) {
+            String cell = cells.get(i).trim();
+            if (!cell.isEmpty()) {
+                columns.get(i).accept(detail, cell);
+            }
+        }
+        return detail;
+    }
+
+    private static PayoutOrderDetailDTO jsonDetail(String line) {
+        PayoutOrderDetailDTO detail;
+        try {
+            detail = JSON.parseObject(line, PayoutOrderDetailDTO.class);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getMessage());
+        }
+        if (detail == null) {
+            throw new IllegalArgumentException("Line is not a JSON object");
+        }
+        return detail;
+    }
+
+    /**
+     * Split one CSV line into cells
+     *
+     * @throws IllegalArgumentException if a quoted cell is not closed
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    cell.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted cell");
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+
+    private static void reject(BufferedWriter rejects, long lineNumber, String reason, String line) throws IOException {
+        JSONObject entry = new JSONObject(true);
+        entry.put("line", lineNumber);
+        entry.put("reason", reason);
+        entry.put("content", line);
+        rejects.write(entry.toJSONString());
+        rejects.newLine();
+    }
+
+    private static PayoutEWalletDTO eWallet(PayoutOrderDetailDTO detail) {
+        if (detail.getPayoutEWallet() == null) {
+            detail.setPayoutEWallet(new PayoutEWalletDTO());
+        }
+        return detail.getPayoutEWallet();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,64 @@
+package com.dpe.lesspay2.demo.payout;
+
+/**
+ * Counters of a payout file ingestion
+ *
+ * Per-detail outcomes are not kept, so the result stays small whatever the file size;
+ * they are handed to the chunk listener as each child batch completes.
+ */
+public class PayoutIngestionResult {
+
+    private final long rowsRead;
+    private final long rowsRejected;
+    private final int chunksSubmitted;
+    private final int chunksSucceeded;
+
+    PayoutIngestionResult(long rowsRead, long rowsRejected, int chunksSubmitted, int chunksSucceeded) {
+        this.rowsRead = rowsRead;
+        this.rowsRejected = rowsRejected;
+        this.chunksSubmitted = chunksSubmitted;
+        this.chunksSucceeded = chunksSucceeded;
+    }
+
+    /**
+     * @return Data rows read, excluding the CSV header and blank lines
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * @return Rows written to the reject file
+     */
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    /**
+     * @return Rows submitted in child batches
+     */
+    public long getRowsSubmitted() {
+        return rowsRead - rowsRejected;
+    }
+
+    /**
+     * @return Child batches submitted
+     */
+    public int getChunksSubmitted() {
+        return chunksSubmitted;
+    }
+
+    /**
+     * @return Child batches accepted with code 0
+     */
+    public int getChunksSucceeded() {
+        return chunksSucceeded;
+    }
+
+    /**
+     * @return true if no row was rejected and every child batch was accepted
+     */
+    public boolean isSuccess() {
+        return rowsRejected == 0 && chunksSucceeded == chunksSubmitted;
+    }
+}
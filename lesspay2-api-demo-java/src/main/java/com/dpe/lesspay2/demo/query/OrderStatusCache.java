@@ -0,0 +1,321 @@
+package com.dpe.lesspay2.demo.query;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.LesspayApiClient;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.dto.PayinQueryDTO;
+import com.dpe.lesspay2.demo.dto.PayoutQueryDTO;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Order Status Cache
+ *
+ * Caches single order queries (/api/global/v1/pay/query-order, /api/global/payout/query)
+ * by pay_order_id and request_id:
+ * - orders in a terminal order_status are kept for terminal-ttl, others for pending-ttl
+ * - at most max-entries orders are kept, least recently used evicted first
+ * - verified webhooks update the cached order, so a status change is served without waiting for
+ *   the TTL; a webhook for an order that is not cached only keeps queries of that order in flight
+ *   from caching their older answer, since a notification does not have the shape of a query response
+ * - an order never moves from a terminal status back to a non-terminal one, whatever order
+ *   webhooks and query responses arrive in
+ *
+ * Cached data objects are shared between callers and must not be modified.
+ */
+@Component
+public class OrderStatusCache {
+
+    public static final String PAYOUT_QUERY_PATH = "/api/global/payout/query";
+
+    private static final String PAYIN = "payin:";
+    private static final String PAYOUT = "payout:";
+
+    /**
+     * Notification fields that query responses do not have
+     */
+    private static final Set<String> NOTIFICATION_ONLY_FIELDS = Set.of("event", "event_data");
+
+    private final LesspayApiClient apiClient;
+    private final ApiConfig.Cache settings;
+    private final Set<String> terminalStatuses;
+
+    /**
+     * Orders by type + pay_order_id (or type + request_id when the order has no pay_order_id), in access order
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Entry keys by type + request_id
+     */
+    private final Map<String, String> requestIds = new HashMap<>();
+
+    /**
+     * Incremented on every write, to tell webhook updates from queries sent before them
+     */
+    private long sequence;
+
+    /**
+     * Sequence of the last webhook by type + pay_order_id and type + request_id, for orders that were
+     * not cached; queries of the order sent before it are not cached. At most max-entries, eldest first out
+     */
+    private final LinkedHashMap<String, Long> invalidated = new LinkedHashMap<>();
+
+    /**
+     * Latest sequence dropped from {@link #invalidated}; no query sent before it is cached
+     */
+    private long invalidatedBefore;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public OrderStatusCache(ApiConfig apiConfig, LesspayApiClient apiClient) {
+        this.apiClient = apiClient;
+        this.settings = apiConfig.getCache();
+        this.terminalStatuses = new HashSet<>(settings.getTerminalStatuses());
+    }
+
+    /**
+     * Query a payin order, from the cache if present
+     *
+     * @param query Query with pay_order_id or request_id
+     * @return Cached order as a successful response, or the gateway response
+     */
+    public ApiResponseDTO<JSONObject> queryPayin(PayinQueryDTO query) throws IOException {
+        return query(PAYIN, PayinQueryPager.PAYIN_QUERY_PATH, query, query.getPayOrderId(), query.getRequestId());
+    }
+
+    /**
+     * Query a payout order, from the cache if present
+     *
+     * @param query Query with pay_order_id or request_id
+     * @return Cached order as a successful response, or the gateway response
+     */
+    public ApiResponseDTO<JSONObject> queryPayout(PayoutQueryDTO query) throws IOException {
+        return query(PAYOUT, PAYOUT_QUERY_PATH, query, query.getPayOrderId(), query.getRequestId());
+    }
+
+    /**
+     * Apply a payin callback returned by {@link com.dpe.lesspay2.demo.webhook.WebhookVerifier#verifyPayin}
+     *
+     * @param notification Verified notification; null (failed verification) is ignored
+     */
+    public void onPayinWebhook(JSONObject notification) {
+        if (notification != null) {
+            put(PAYIN, notification, Long.MAX_VALUE, true);
+        }
+    }
+
+    /**
+     * Apply a payout callback returned by {@link com.dpe.lesspay2.demo.webhook.WebhookVerifier#verifyPayout}
+     *
+     * @param notification Verified notification; null (failed verification) is ignored
+     */
+    public void onPayoutWebhook(JSONObject notification) {
+        if (notification != null) {
+            put(PAYOUT, notification, Long.MAX_VALUE, true);
+        }
+    }
+
+    /**
+     * Drop every cached order
+     */
+    public synchronized void clear() {
+        entries.clear();
+        requestIds.clear();
+    }
+
+    /**
+     * @return Number of cached orders, expired ones included until they are read or evicted
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Queries answered from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Queries sent to the gateway
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private ApiResponseDTO<JSONObject> query(String type, String path, Object query, String payOrderId,
+                                             String requestId) throws IOException {
+        if (isBlank(payOrderId) && isBlank(requestId)) {
+            throw new IllegalArgumentException("Query needs pay_order_id or request_id");
+        }
+        long since;
+        synchronized (this) {
+            JSONObject cached = get(type, payOrderId, requestId);
+            if (cached != null) {
+                hits.increment();
+                ApiResponseDTO<JSONObject> response = new ApiResponseDTO<>();
+                response.setCode(0);
+                response.setMsg("success");
+                response.setData(cached);
+                return response;
+            }
+            since = sequence;
+        }
+        misses.increment();
+        ApiResponseDTO<JSONObject> response = apiClient.post(path, query, JSONObject.class);
+        if (response.isSuccess() && response.getData() != null) {
+            put(type, response.getData(), since, false);
+        }
+        return response;
+    }
+
+    private JSONObject get(String type, String payOrderId, String requestId) {
+        String key = !isBlank(payOrderId) ? type + payOrderId : requestIds.get(type + requestId);
+        if (key == null && !isBlank(requestId)) {
+            key = type + requestId;
+        }
+        Entry entry = key != null ? entries.get(key) : null;
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt >= 0) {
+            remove(key);
+            return null;
+        }
+        // With both ids given, the cached order must match both
+        if (!isBlank(requestId) && !isBlank(payOrderId) && !requestId.equals(entry.data.getString("request_id"))) {
+            return null;
+        }
+        return entry.data;
+    }
+
+    /**
+     * @param since Sequence when the query was sent; cached data written after it is kept
+     */
+    private synchronized void put(String type, JSONObject data, long since, boolean webhook) {
+        String payOrderId = data.getString("pay_order_id");
+        String requestId = data.getString("request_id");
+        if (isBlank(payOrderId) && isBlank(requestId)) {
+            return;
+        }
+        String key = !isBlank(payOrderId) ? type + payOrderId : type + requestId;
+        String existingKey = entries.containsKey(key) ? key : null;
+        if (existingKey == null && !isBlank(requestId)) {
+            // Cached under its request_id before the pay_order_id was known
+            existingKey = requestIds.get(type + requestId);
+        }
+        Entry existing = existingKey != null ? entries.get(existingKey) : null;
+        if (existing == null) {
+            if (webhook) {
+                // A notification is not a query response; queries in flight get the old status, so do not cache them
+                long invalidation = ++sequence;
+                invalidate(type, payOrderId, invalidation);
+                invalidate(type, requestId, invalidation);
+                return;
+            }
+            if (isInvalidated(type, payOrderId, since) || isInvalidated(type, requestId, since)) {
+                return;
+            }
+        } else {
+            if (existing.sequence > since) {
+                return;
+            }
+            if (!terminalStatuses.contains(data.getString("order_status"))
+                    && terminalStatuses.contains(existing.data.getString("order_status"))) {
+                // A late delivery or a stale read
+                return;
+            }
+            if (!existingKey.equals(key)) {
+                remove(existingKey);
+            }
+        }
+        JSONObject value = data;
+        if (webhook) {
+            // Notifications may carry fewer fields than query responses
+            value = new JSONObject(new LinkedHashMap<>(existing.data));
+            for (Map.Entry<String, Object> field : data.entrySet()) {
+                if (!NOTIFICATION_ONLY_FIELDS.contains(field.getKey())) {
+                    value.put(field.getKey(), field.getValue());
+                }
+            }
+        }
+        boolean terminal = terminalStatuses.contains(value.getString("order_status"));
+        long ttl = (terminal ? settings.getTerminalTtl() : settings.getPendingTtl()).toNanos();
+        entries.put(key, new Entry(value, ++sequence, System.nanoTime() + ttl));
+        if (!isBlank(requestId)) {
+            requestIds.put(type + requestId, key);
+        }
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > settings.getMaxEntries() && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            removeRequestId(evicted.getKey(), evicted.getValue());
+        }
+    }
+
+    private void invalidate(String type, String id, long invalidation) {
+        if (isBlank(id)) {
+            return;
+        }
+        invalidated.remove(type + id);
+        invalidated.put(type + id, invalidation);
+        Iterator<Map.Entry<String, Long>> eldest = invalidated.entrySet().iterator();
+        while (invalidated.size() > settings.getMaxEntries() && eldest.hasNext()) {
+            invalidatedBefore = Math.max(invalidatedBefore, eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private boolean isInvalidated(String type, String id, long since) {
+        if (invalidatedBefore > since) {
+            return true;
+        }
+        Long invalidation = isBlank(id) ? null : invalidated.get(type + id);
+        return invalidation != null && invalidation > since;
+    }
+
+    private Entry remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            removeRequestId(key, entry);
+        }
+        return entry;
+    }
+
+    private void removeRequestId(String key, Entry entry) {
+        String requestId = entry.data.getString("request_id");
+        if (!isBlank(requestId)) {
+            String type = key.startsWith(PAYIN) ? PAYIN : PAYOUT;
+            requestIds.remove(type + requestId, key);
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static final class Entry {
+
+        private final JSONObject data;
+        private final long sequence;
+        private final long expiresAt;
+
+        private Entry(JSONObject data, long sequence, long expiresAt) {
+            this.data = data;
+            this.sequence = sequence;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
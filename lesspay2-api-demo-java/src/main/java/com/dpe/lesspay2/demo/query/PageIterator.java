@@ -0,0 +1,207 @@
+package com.dpe.lesspay2.demo.query;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.dto.PayinQueryPageDTO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiFunction;
+
+/**
+ * Iterator over the orders of consecutive time windows, page by page
+ *
+ * Up to {@code prefetch} pages are requested ahead of the consumer. Pages are consumed in the
+ * order they arrive; new pages are only requested as the consumer takes pages, so at most
+ * {@code prefetch} pages are buffered. The page count of a window comes from its known total,
+ * the total of its first page, or its first short page; pages requested beyond it are cancelled or dropped.
+ */
+public final class PageIterator implements Iterator<JSONObject>, AutoCloseable {
+
+    private static final int UNKNOWN = -1;
+
+    private final List<long[]> windows;
+    private final int pageSize;
+    private final int prefetch;
+    private final BiFunction<long[], Integer, CompletableFuture<ApiResponseDTO<PayinQueryPageDTO>>> fetcher;
+
+    /**
+     * Pages requested and not yet consumed
+     */
+    private final Deque<Page> inFlight = new ArrayDeque<>();
+    private final BlockingQueue<Page> arrived = new LinkedBlockingQueue<>();
+
+    /**
+     * Number of pages of each window, UNKNOWN until a page of it has arrived
+     */
+    private final int[] pageCounts;
+    private int nextWindow;
+    private int nextPage = 1;
+    private Iterator<JSONObject> current = Collections.emptyIterator();
+    private boolean closed;
+
+    /**
+     * @param windows Time windows, {start, end}
+     * @param totals  Known order count of each window, negative if unknown; null if none is known
+     */
+    PageIterator(List<long[]> windows, long[] totals, int pageSize, int prefetch,
+                 BiFunction<long[], Integer, CompletableFuture<ApiResponseDTO<PayinQueryPageDTO>>> fetcher) {
+        this.windows = windows;
+        this.pageSize = pageSize;
+        this.prefetch = prefetch;
+        this.fetcher = fetcher;
+        this.pageCounts = new int[windows.size()];
+        Arrays.fill(pageCounts, UNKNOWN);
+        for (int i = 0; totals != null && i < totals.length; i++) {
+            if (totals[i] >= 0) {
+                pageCounts[i] = pageCount(totals[i]);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (closed) {
+                return false;
+            }
+            request();
+            if (inFlight.isEmpty()) {
+                return false;
+            }
+            current = take().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public JSONObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Cancel the pages still in flight
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Page page : inFlight) {
+            page.future.cancel(true);
+        }
+        inFlight.clear();
+        current = Collections.emptyIterator();
+    }
+
+    /**
+     * Request pages until {@code prefetch} are in flight or every page has been requested
+     */
+    private void request() {
+        while (inFlight.size() < prefetch && nextWindow < windows.size()) {
+            int count = pageCounts[nextWindow];
+            if (count != UNKNOWN && nextPage > count) {
+                nextWindow++;
+                nextPage = 1;
+                continue;
+            }
+            Page page = new Page(nextWindow, nextPage++);
+            page.future = fetcher.apply(windows.get(page.window), page.number);
+            page.future.whenComplete((response, error) -> arrived.add(page));
+            inFlight.add(page);
+        }
+    }
+
+    /**
+     * Wait for the next page to arrive and return its orders
+     */
+    private List<JSONObject> take() {
+        Page page;
+        try {
+            page = arrived.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("Interrupted while waiting for a payin query page", e);
+        }
+        if (!inFlight.remove(page)) {
+            // Cancelled beyond the page count of its window
+            return Collections.emptyList();
+        }
+        PayinQueryPageDTO data = data(page);
+        List<JSONObject> orders = data.getList() != null ? data.getList() : Collections.emptyList();
+        if (pageCounts[page.window] == UNKNOWN) {
+            if (data.getTotal() != null) {
+                pageCounts[page.window] = pageCount(data.getTotal());
+            } else if (orders.size() < pageSize) {
+                pageCounts[page.window] = page.number;
+            }
+            if (pageCounts[page.window] != UNKNOWN) {
+                cancelBeyond(page.window, pageCounts[page.window]);
+            }
+        }
+        return page.number <= pageCounts[page.window] || pageCounts[page.window] == UNKNOWN ? orders : Collections.emptyList();
+    }
+
+    private int pageCount(long total) {
+        return (int) ((total + pageSize - 1) / pageSize);
+    }
+
+    private void cancelBeyond(int window, int count) {
+        List<Page> beyond = new ArrayList<>();
+        for (Page page : inFlight) {
+            if (page.window == window && page.number > count) {
+                beyond.add(page);
+            }
+        }
+        for (Page page : beyond) {
+            inFlight.remove(page);
+            page.future.cancel(true);
+        }
+    }
+
+    private PayinQueryPageDTO data(Page page) {
+        ApiResponseDTO<PayinQueryPageDTO> response;
+        try {
+            response = page.future.join();
+        } catch (CompletionException e) {
+            close();
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            throw e;
+        }
+        if (!response.isSuccess()) {
+            close();
+            long[] window = windows.get(page.window);
+            throw new IllegalStateException("Payin query of [" + window[0] + ", " + window[1] + "] page " + page.number
+                    + " failed: code=" + response.getCode() + ", msg=" + response.getMsg());
+        }
+        return response.getData() != null ? response.getData() : new PayinQueryPageDTO();
+    }
+
+    private static final class Page {
+
+        private final int window;
+        private final int number;
+        private CompletableFuture<ApiResponseDTO<PayinQueryPageDTO>> future;
+
+        private Page(int window, int number) {
+            this.window = window;
+            this.number = number;
+        }
+    }
+}
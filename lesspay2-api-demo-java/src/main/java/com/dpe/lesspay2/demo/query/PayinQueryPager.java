@@ -0,0 +1,327 @@
+package com.dpe.lesspay2.demo.query;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.LesspayApiClient;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.dto.PayinQueryDTO;
+import com.dpe.lesspay2.demo.dto.PayinQueryPageDTO;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Payin Query Pager
+ *
+ * Streams every payin order of a time range through /api/global/v1/pay/query-order:
+ * - the range is split into consecutive windows of at most lesspay2.api.query.max-window (7 days)
+ * - each window is read page by page with page_size = page-size
+ * - up to prefetch-pages pages are requested ahead, and only as the consumer keeps up,
+ *   so memory stays bounded at prefetch-pages pages whatever the range
+ *
+ * The data of a page is read as {total, list} (see {@link PayinQueryPageDTO}); a window ends at
+ * its total, or at the first page with fewer than page_size orders when total is absent.
+ * Orders are returned in the order their pages arrive.
+ *
+ * For dense ranges, {@link #scan(long, long)} first sizes the windows with page_size=1 probes and
+ * bisects every window holding more than max-slice-orders, so no slice is read past a shallow page,
+ * then reads the slices scan-parallelism pages at a time. Probes are also sent scan-parallelism at a time.
+ */
+@Component
+public class PayinQueryPager {
+
+    public static final String PAYIN_QUERY_PATH = "/api/global/v1/pay/query-order";
+
+    /**
+     * Distance to a shared slice edge under which orders are deduplicated, for created_at in whole seconds
+     */
+    private static final long EDGE_MARGIN = 1000;
+
+    private final LesspayApiClient apiClient;
+    private final ApiConfig.Query settings;
+
+    public PayinQueryPager(ApiConfig apiConfig, LesspayApiClient apiClient) {
+        this.apiClient = apiClient;
+        this.settings = apiConfig.getQuery();
+    }
+
+    /**
+     * Stream the payin orders created in [startTime, endTime]
+     *
+     * Close the stream (try-with-resources) to cancel the pages still in flight when it is not
+     * consumed to the end. A failed page ends the stream with UncheckedIOException (network)
+     * or IllegalStateException (non-zero code).
+     *
+     * @param startTime Query start time (milliseconds timestamp)
+     * @param endTime   Query end time (milliseconds timestamp), inclusive
+     * @return Orders as JSONObject
+     */
+    public Stream<JSONObject> stream(long startTime, long endTime) {
+        PageIterator iterator = iterator(startTime, endTime);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Iterate over the payin orders created in [startTime, endTime]
+     *
+     * @see #stream(long, long)
+     */
+    public PageIterator iterator(long startTime, long endTime) {
+        if (settings.getPageSize() <= 0 || settings.getPrefetchPages() <= 0) {
+            throw new IllegalStateException("lesspay2.api.query.page-size and prefetch-pages must be positive");
+        }
+        return new PageIterator(windows(startTime, endTime, settings.getMaxWindow().toMillis()), null,
+                settings.getPageSize(), settings.getPrefetchPages(),
+                (window, page) -> fetch(window, page, settings.getPageSize()));
+    }
+
+    /**
+     * Stream the payin orders created in [startTime, endTime], slicing dense windows by their totals
+     *
+     * Blocks until the slices are planned. Bisected slices share their edge millisecond, so the orders
+     * created within a second of a shared edge (created_at as milliseconds or ISO 8601, which may lack
+     * milliseconds) are deduplicated by pay_order_id; only their ids are kept until the stream is closed.
+     * When the probed orders have no readable created_at, windows are bisected without a shared edge
+     * (the right half starts a millisecond after the left one ends) and nothing is deduplicated.
+     *
+     * @param startTime Query start time (milliseconds timestamp)
+     * @param endTime   Query end time (milliseconds timestamp), inclusive
+     * @return Orders as JSONObject, each pay_order_id once
+     */
+    public Stream<JSONObject> scan(long startTime, long endTime) {
+        if (settings.getPageSize() <= 0 || settings.getScanParallelism() <= 0) {
+            throw new IllegalStateException("lesspay2.api.query.page-size and scan-parallelism must be positive");
+        }
+        List<long[]> slices = plan(startTime, endTime);
+        long[] totals = new long[slices.size()];
+        List<long[]> windows = new ArrayList<>(slices.size());
+        for (int i = 0; i < slices.size(); i++) {
+            windows.add(new long[]{slices.get(i)[0], slices.get(i)[1]});
+            totals[i] = slices.get(i)[2];
+        }
+        PageIterator iterator = new PageIterator(windows, totals, settings.getPageSize(), settings.getScanParallelism(),
+                (window, page) -> fetch(window, page, settings.getPageSize()));
+        NavigableSet<Long> edges = new TreeSet<>();
+        for (int i = 1; i < slices.size(); i++) {
+            if (slices.get(i)[0] == slices.get(i - 1)[1]) {
+                edges.add(slices.get(i)[0]);
+            }
+        }
+        Set<String> seen = new HashSet<>();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                .filter(order -> {
+                    String payOrderId = order.getString("pay_order_id");
+                    return payOrderId == null || !nearEdge(edges, order) || seen.add(payOrderId);
+                })
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Split [startTime, endTime] into slices of at most max-slice-orders orders
+     *
+     * @return {start, end, total} of each slice in time order, total -1 if the gateway returned none
+     */
+    List<long[]> plan(long startTime, long endTime) {
+        long minSlice = Math.max(1, settings.getMinSlice().toMillis());
+        Probes probes = new Probes(Math.max(1, settings.getScanParallelism()));
+        List<CompletableFuture<List<long[]>>> plans = new ArrayList<>();
+        for (long[] window : windows(startTime, endTime, settings.getMaxWindow().toMillis())) {
+            plans.add(plan(probes, window[0], window[1], minSlice));
+        }
+        List<long[]> slices = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<long[]>> plan : plans) {
+                slices.addAll(plan.join());
+            }
+        } catch (CompletionException e) {
+            probes.cancel();
+            plans.forEach(plan -> plan.cancel(true));
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        return slices;
+    }
+
+    private CompletableFuture<List<long[]>> plan(Probes probes, long start, long end, long minSlice) {
+        return probes.probe(start, end).thenCompose(response -> {
+            if (!response.isSuccess()) {
+                throw new IllegalStateException("Payin query of [" + start + ", " + end + "] failed: code="
+                        + response.getCode() + ", msg=" + response.getMsg());
+            }
+            Long total = response.getData() != null ? response.getData().getTotal() : null;
+            if (total == null || total <= settings.getMaxSliceOrders() || end - start < 2 * minSlice) {
+                List<long[]> slice = new ArrayList<>(1);
+                slice.add(new long[]{start, end, total != null ? total : -1});
+                return CompletableFuture.completedFuture(slice);
+            }
+            // Both halves include mid, in case the gateway treats end_time as exclusive, unless the orders
+            // cannot be deduplicated by created_at
+            long mid = start + (end - start) / 2;
+            long rightStart = hasCreatedAt(response.getData()) ? mid : mid + 1;
+            return plan(probes, start, mid, minSlice).thenCombine(plan(probes, rightStart, end, minSlice), (left, right) -> {
+                left.addAll(right);
+                return left;
+            });
+        });
+    }
+
+    private CompletableFuture<ApiResponseDTO<PayinQueryPageDTO>> fetch(long[] window, int page, int pageSize) {
+        PayinQueryDTO request = new PayinQueryDTO();
+        request.setStartTime(window[0]);
+        request.setEndTime(window[1]);
+        request.setPage(page);
+        request.setPageSize(pageSize);
+        return apiClient.postAsync(PAYIN_QUERY_PATH, request, PayinQueryPageDTO.class);
+    }
+
+    /**
+     * Whether an order was created within a second of a shared slice edge; false without a readable created_at
+     */
+    static boolean nearEdge(NavigableSet<Long> edges, JSONObject order) {
+        if (edges.isEmpty()) {
+            return false;
+        }
+        Long createdAt = createdAt(order.get("created_at"));
+        if (createdAt == null) {
+            return false;
+        }
+        Long below = edges.floor(createdAt);
+        Long above = edges.ceiling(createdAt);
+        return (below != null && createdAt - below < EDGE_MARGIN) || (above != null && above - createdAt < EDGE_MARGIN);
+    }
+
+    /**
+     * Whether the probed order, if any, has a readable created_at
+     */
+    private static boolean hasCreatedAt(PayinQueryPageDTO page) {
+        List<JSONObject> list = page.getList();
+        return list == null || list.isEmpty() || createdAt(list.get(0).get("created_at")) != null;
+    }
+
+    private static Long createdAt(Object value) {
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value instanceof Date date) {
+            return date.getTime();
+        }
+        if (value instanceof String text) {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                try {
+                    return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+                } catch (DateTimeParseException ignored) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Planning probes in flight, at most scan-parallelism; the others wait their turn
+     */
+    private final class Probes {
+
+        private final int limit;
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+        private boolean cancelled;
+
+        private Probes(int limit) {
+            this.limit = limit;
+        }
+
+        private CompletableFuture<ApiResponseDTO<PayinQueryPageDTO>> probe(long start, long end) {
+            CompletableFuture<ApiResponseDTO<PayinQueryPageDTO>> result = new CompletableFuture<>();
+            Runnable send = () -> fetch(new long[]{start, end}, 1, 1).whenComplete((response, error) -> {
+                next();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(response);
+                }
+            });
+            synchronized (this) {
+                if (cancelled) {
+                    result.cancel(false);
+                    return result;
+                }
+                if (running >= limit) {
+                    waiting.add(send);
+                    return result;
+                }
+                running++;
+            }
+            send.run();
+            return result;
+        }
+
+        /**
+         * Hand the slot of a completed probe to the next waiting one
+         */
+        private void next() {
+            Runnable send;
+            synchronized (this) {
+                send = cancelled ? null : waiting.poll();
+                if (send == null) {
+                    running--;
+                }
+            }
+            if (send != null) {
+                send.run();
+            }
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            waiting.clear();
+        }
+    }
+
+    /**
+     * Split [startTime, endTime] into consecutive windows whose end_time - start_time is below maxWindowMillis
+     *
+     * @return {start, end} pairs, both inclusive
+     */
+    static List<long[]> windows(long startTime, long endTime, long maxWindowMillis) {
+        if (endTime < startTime) {
+            throw new IllegalArgumentException("end_time " + endTime + " is before start_time " + startTime);
+        }
+        if (maxWindowMillis <= 0) {
+            throw new IllegalArgumentException("Query window must be positive: " + maxWindowMillis);
+        }
+        List<long[]> windows = new ArrayList<>();
+        long start = startTime;
+        while (true) {
+            long end = endTime - start < maxWindowMillis ? endTime : start + maxWindowMillis - 1;
+            windows.add(new long[]{start, end});
+            if (end == endTime) {
+                return windows;
+            }
+            start = end + 1;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.dpe.lesspay2.demo.retry;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.CircuitOpenException;
+import com.dpe.lesspay2.demo.client.LesspayApiClient;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.payout.BatchPayoutSubmitter;
+import com.dpe.lesspay2.demo.query.OrderStatusCache;
+import com.dpe.lesspay2.demo.query.PayinQueryPager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Create Order Retrier
+ *
+ * Submits create-order calls and retries network failures with the same request_id:
+ * - a failure after the request may have reached the gateway (timeout, reset, 502 page) leaves
+ *   the outcome unknown: the order is queried by request_id first, and only resent if the gateway answers
+ *   with an order-not-found code; a failed query is retried like the call
+ * - a failure before anything was sent (connection refused, client-side rate limit) is resent at once
+ * - business errors (non-zero code) are returned as is, never retried; neither are calls refused by an open circuit
+ * - retries wait a random backoff below initial-backoff * 2^n, capped at max-backoff
+ * - retries spend tokens of a budget shared by every thread, earned at budget-ratio per submitted order,
+ *   and at most max-retries-in-flight orders retry at once, so an outage does not turn into a retry storm
+ *
+ * When the query finds the order, its query response is returned in place of the create-order response.
+ */
+@Component
+public class CreateOrderRetrier {
+
+    private static final Logger logger = LoggerFactory.getLogger(CreateOrderRetrier.class);
+
+    public static final String PAYIN_CREATE_PATH = "/api/global/v1/pay/create-order";
+    public static final String PAYOUT_CREATE_PATH = "/api/global/payout/create-order";
+
+    /**
+     * Query endpoint of each create-order endpoint; batches are looked up by their request_id as payouts
+     */
+    private static final Map<String, String> QUERY_PATHS = Map.of(
+            PAYIN_CREATE_PATH, PayinQueryPager.PAYIN_QUERY_PATH,
+            PAYOUT_CREATE_PATH, OrderStatusCache.PAYOUT_QUERY_PATH,
+            BatchPayoutSubmitter.BATCH_PAYOUT_PATH, OrderStatusCache.PAYOUT_QUERY_PATH);
+
+    /**
+     * Margin around the submission time of the start_time/end_time of a payin query
+     */
+    private static final long QUERY_WINDOW_MARGIN = Duration.ofMinutes(10).toMillis();
+
+    private static final long TOKEN = 1000;
+
+    private static final Executor DIRECT = Runnable::run;
+
+    private final LesspayApiClient apiClient;
+    private final ApiConfig.Retry settings;
+    private final OrderLookup lookup;
+
+    /**
+     * Retry budget in thousandths of a token
+     */
+    private final AtomicLong budget;
+    private final AtomicInteger retriesInFlight = new AtomicInteger();
+
+    public CreateOrderRetrier(ApiConfig apiConfig, LesspayApiClient apiClient) {
+        this.apiClient = apiClient;
+        this.settings = apiConfig.getRetry();
+        this.lookup = new OrderLookup(settings);
+        this.budget = new AtomicLong(settings.getBudgetMaxTokens() * TOKEN);
+    }
+
+    /**
+     * Submit a create-order call, retrying it with the same request_id
+     *
+     * @param path Create-order endpoint (payin, payout or batch payout)
+     * @param body Order with a request_id
+     * @return Future of the create-order response (or of the query response of an order found by request_id);
+     * fails with {@link RetryExhaustedException} once no retry is left
+     * @throws IllegalArgumentException if the path is not a create-order endpoint or the body has no request_id
+     */
+    public CompletableFuture<ApiResponseDTO<JSONObject>> submit(String path, Object body) {
+        String queryPath = QUERY_PATHS.get(path);
+        if (queryPath == null) {
+            throw new IllegalArgumentException("Not a create-order endpoint: " + path);
+        }
+        Object order = JSON.toJSON(body);
+        String requestId = order instanceof JSONObject object ? object.getString("request_id") : null;
+        if (requestId == null || requestId.isEmpty()) {
+            throw new IllegalArgumentException("Order needs a request_id to be retried safely");
+        }
+        earn();
+        return new Order(path, queryPath, body, requestId).send();
+    }
+
+    /**
+     * @return Retry tokens available
+     */
+    public double getBudget() {
+        return budget.get() / (double) TOKEN;
+    }
+
+    /**
+     * @return Orders currently retrying
+     */
+    public int getRetriesInFlight() {
+        return retriesInFlight.get();
+    }
+
+    private void earn() {
+        long cap = settings.getBudgetMaxTokens() * TOKEN;
+        long earned = (long) (settings.getBudgetRatio() * TOKEN);
+        budget.updateAndGet(current -> Math.min(cap, current + earned));
+    }
+
+    private boolean spend() {
+        while (true) {
+            long current = budget.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean enterRetry() {
+        while (true) {
+            int current = retriesInFlight.get();
+            if (current >= settings.getMaxRetriesInFlight()) {
+                return false;
+            }
+            if (retriesInFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Retry state of one order
+     */
+    private final class Order {
+
+        private final String path;
+        private final String queryPath;
+        private final Object body;
+        private final String requestId;
+        private final long submittedAt = System.currentTimeMillis();
+        private int attempts;
+        private int retries;
+        private boolean retrying;
+
+        private Order(String path, String queryPath, Object body, String requestId) {
+            this.path = path;
+            this.queryPath = queryPath;
+            this.body = body;
+            this.requestId = requestId;
+        }
+
+        private CompletableFuture<ApiResponseDTO<JSONObject>> send() {
+            attempts++;
+            return apiClient.postAsync(path, body, JSONObject.class)
+                    .handle((response, error) -> {
+                        if (error == null) {
+                            return done(response);
+                        }
+                        Throwable cause = unwrap(error);
+                        if (!(cause instanceof IOException)) {
+                            return failed(cause);
+                        }
+                        if (cause instanceof CircuitOpenException) {
+                            // Only sent first or after the order was not found; resending into an open circuit only spends the budget
+                            return failed(new RetryExhaustedException(requestId, false, "Circuit open", cause));
+                        }
+                        boolean unknown = !OrderLookup.notSent(cause);
+                        return retry(cause, unknown, unknown ? this::query : this::send);
+                    })
+                    .thenCompose(Function.identity());
+        }
+
+        /**
+         * Look the order up by request_id; resend it if the gateway does not know it
+         */
+        private CompletableFuture<ApiResponseDTO<JSONObject>> query() {
+            attempts++;
+            return apiClient.postAsync(queryPath, queryBody(), JSONObject.class)
+                    .handle((response, error) -> {
+                        if (error != null) {
+                            Throwable cause = unwrap(error);
+                            return cause instanceof IOException ? retry(cause, true, this::query) : failed(cause);
+                        }
+                        OrderLookup.Result result = lookup.classify(response);
+                        if (result == OrderLookup.Result.FOUND) {
+                            logger.info("Order found by request_id after a failed create-order: request_id={}", requestId);
+                            return done(response);
+                        }
+                        if (result == OrderLookup.Result.UNKNOWN) {
+                            // Throttled, or any other error: the order may still exist
+                            return retry(new IOException("Order query failed: code=" + response.getCode()
+                                    + ", msg=" + response.getMsg()), true, this::query);
+                        }
+                        if (attempts >= settings.getMaxAttempts()) {
+                            return failed(new RetryExhaustedException(requestId, false, "Order not found and no attempt left", null));
+                        }
+                        return send();
+                    })
+                    .thenCompose(Function.identity());
+        }
+
+        private Map<String, Object> queryBody() {
+            Map<String, Object> query = new HashMap<>();
+            query.put("request_id", requestId);
+            if (PayinQueryPager.PAYIN_QUERY_PATH.equals(queryPath)) {
+                query.put("start_time", submittedAt - QUERY_WINDOW_MARGIN);
+                query.put("end_time", System.currentTimeMillis() + QUERY_WINDOW_MARGIN);
+            }
+            return query;
+        }
+
+        /**
+         * @param unknown Whether the order may exist
+         * @param next    Call to make after the backoff
+         */
+        private CompletableFuture<ApiResponseDTO<JSONObject>> retry(Throwable cause, boolean unknown,
+                                                                    Supplier<CompletableFuture<ApiResponseDTO<JSONObject>>> next) {
+            if (attempts >= settings.getMaxAttempts()) {
+                return failed(new RetryExhaustedException(requestId, unknown, "No attempt left", cause));
+            }
+            if (!retrying) {
+                if (!enterRetry()) {
+                    return failed(new RetryExhaustedException(requestId, unknown, "Too many orders retrying", cause));
+                }
+                retrying = true;
+            }
+            if (!spend()) {
+                return failed(new RetryExhaustedException(requestId, unknown, "Retry budget exhausted", cause));
+            }
+            long cap = Math.min(settings.getMaxBackoff().toMillis(),
+                    settings.getInitialBackoff().toMillis() << Math.min(retries++, 20));
+            long delay = ThreadLocalRandom.current().nextLong(cap + 1);
+            logger.warn("Retrying create-order: path={} request_id={} attempt={} delay={}ms query={} error={}",
+                    path, requestId, attempts, delay, unknown, cause.toString());
+            return CompletableFuture.runAsync(() -> {
+            }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, DIRECT)).thenCompose(ignored -> next.get());
+        }
+
+        private CompletableFuture<ApiResponseDTO<JSONObject>> done(ApiResponseDTO<JSONObject> response) {
+            leave();
+            return CompletableFuture.completedFuture(response);
+        }
+
+        private CompletableFuture<ApiResponseDTO<JSONObject>> failed(Throwable error) {
+            leave();
+            return CompletableFuture.failedFuture(error);
+        }
+
+        private void leave() {
+            if (retrying) {
+                retrying = false;
+                retriesInFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.dpe.lesspay2.demo.retry;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.CircuitOpenException;
+import com.dpe.lesspay2.demo.client.RateLimitedException;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reading the outcome of a create-order call whose response was lost
+ *
+ * Shared by {@link CreateOrderRetrier} and {@link com.dpe.lesspay2.demo.outbox.PayoutOutbox}:
+ * - {@link #notSent} tells failures that cannot have reached the gateway
+ * - {@link #classify} reads the answer to a query by request_id; only a code of
+ *   lesspay2.api.retry.order-not-found-codes means the order does not exist, any other
+ *   failure (throttling, signature error, transient business error) leaves it unknown
+ */
+public final class OrderLookup {
+
+    /**
+     * What a query by request_id says about the order
+     */
+    public enum Result {
+        FOUND, NOT_FOUND, UNKNOWN
+    }
+
+    private final Set<String> notFoundCodes;
+
+    public OrderLookup(ApiConfig.Retry settings) {
+        this.notFoundCodes = new HashSet<>(settings.getOrderNotFoundCodes());
+    }
+
+    /**
+     * @param response Response of the query by request_id
+     */
+    public Result classify(ApiResponseDTO<JSONObject> response) {
+        JSONObject order = response.getData();
+        if (response.isSuccess() && order != null && (order.containsKey("pay_order_id") || order.containsKey("order_status"))) {
+            return Result.FOUND;
+        }
+        if (response.getCode() != null && notFoundCodes.contains(String.valueOf(response.getCode()))) {
+            return Result.NOT_FOUND;
+        }
+        return Result.UNKNOWN;
+    }
+
+    /**
+     * Whether the failed call cannot have reached the gateway
+     *
+     * @param error Unwrapped cause of the failure
+     */
+    public static boolean notSent(Throwable error) {
+        return error instanceof RateLimitedException || error instanceof CircuitOpenException
+                || error instanceof ConnectException || error instanceof UnknownHostException;
+    }
+}
@@ -0,0 +1,35 @@
+package com.dpe.lesspay2.demo.retry;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a create-order call failed and may not be retried any further
+ */
+public class RetryExhaustedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String requestId;
+    private final boolean outcomeUnknown;
+
+    public RetryExhaustedException(String requestId, boolean outcomeUnknown, String message, Throwable cause) {
+        super(message + ": request_id=" + requestId, cause);
+        this.requestId = requestId;
+        this.outcomeUnknown = outcomeUnknown;
+    }
+
+    /**
+     * @return request_id of the order
+     */
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return true if a request may have reached the gateway, so the order may exist;
+     * query it by request_id before submitting it again
+     */
+    public boolean isOutcomeUnknown() {
+        return outcomeUnknown;
+    }
+}
@@ -0,0 +1,99 @@
+package com.dpe.lesspay2.demo.sign;
+
+import com.alibaba.fastjson.serializer.JavaBeanSerializer;
+import com.alibaba.fastjson.serializer.ObjectSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.util.FieldInfo;
+import com.alibaba.fastjson.util.TypeUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Cached accessor plan of a DTO class, sorted by wire name
+ *
+ * Built once per class from the same {@code @JSONField(name = "...")} getter metadata fastjson
+ * serializes with, so DTOs can be signed straight from the object graph.
+ */
+final class BeanPlan {
+
+    private static final BeanPlan NOT_A_BEAN = new BeanPlan(new Property[0]);
+
+    private static final ClassValue<BeanPlan> PLANS = new ClassValue<>() {
+        @Override
+        protected BeanPlan computeValue(Class<?> type) {
+            return build(type);
+        }
+    };
+
+    final Property[] properties;
+
+    private BeanPlan(Property[] properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return the plan of a fastjson JavaBean type, or null for types fastjson serializes otherwise
+     */
+    static BeanPlan of(Class<?> type) {
+        BeanPlan plan = PLANS.get(type);
+        return plan == NOT_A_BEAN ? null : plan;
+    }
+
+    private static BeanPlan build(Class<?> type) {
+        if (type.isArray() || type.isEnum() || type.isPrimitive()) {
+            return NOT_A_BEAN;
+        }
+        ObjectSerializer writer = SerializeConfig.getGlobalInstance().getObjectWriter(type);
+        if (!(writer instanceof JavaBeanSerializer)) {
+            return NOT_A_BEAN;
+        }
+        List<FieldInfo> getters = TypeUtils.computeGetters(type, null);
+        Property[] properties = new Property[getters.size()];
+        for (int i = 0; i < properties.length; i++) {
+            properties[i] = new Property(getters.get(i));
+        }
+        Arrays.sort(properties, Comparator.comparing(p -> p.name));
+        return new BeanPlan(properties);
+    }
+
+    /**
+     * One serialized property: its wire name and a getter handle typed (Object)Object
+     */
+    static final class Property {
+
+        private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+        final String name;
+        private final MethodHandle getter;
+
+        private Property(FieldInfo info) {
+            this.name = info.name;
+            AccessibleObject member = info.method != null ? info.method : info.field;
+            try {
+                member.setAccessible(true);
+                MethodHandle handle = info.method != null
+                        ? MethodHandles.lookup().unreflect(info.method)
+                        : MethodHandles.lookup().unreflectGetter(info.field);
+                this.getter = handle.asType(ACCESSOR_TYPE);
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new IllegalStateException("Cannot access property " + info.name + " of " + info.declaringClass, e);
+            }
+        }
+
+        Object get(Object bean) {
+            try {
+                return getter.invokeExact(bean);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Failed to read property " + name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.dpe.lesspay2.demo.sign;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Growable, pooled byte buffer holding a serialized request body
+ *
+ * Buffers are recycled across requests so large batch bodies do not allocate
+ * a fresh byte[] (and a String) every time; oversized buffers are left to the GC.
+ */
+final class BodyBuffer extends ByteSink {
+
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int MAX_POOLED_CAPACITY = 1 << 20;
+    private static final int POOL_SIZE = 64;
+
+    private static final BlockingQueue<BodyBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private BodyBuffer() {
+        super(INITIAL_CAPACITY);
+    }
+
+    static BodyBuffer acquire() {
+        BodyBuffer buffer = POOL.poll();
+        return buffer != null ? buffer : new BodyBuffer();
+    }
+
+    void release() {
+        pos = 0;
+        if (buf.length <= MAX_POOLED_CAPACITY) {
+            POOL.offer(this);
+        }
+    }
+
+    byte[] array() {
+        return buf;
+    }
+
+    int length() {
+        return pos;
+    }
+
+    @Override
+    protected void makeRoom(int n) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+    }
+}
@@ -0,0 +1,168 @@
+package com.dpe.lesspay2.demo.sign;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte buffer with the UTF-8 and fastjson string encoders shared by the signing and body buffers
+ *
+ * Subclasses decide what happens when the buffer is full: the digest buffer flushes
+ * into its MessageDigest, the body buffer grows.
+ */
+abstract class ByteSink {
+
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+
+    protected byte[] buf;
+    protected int pos;
+
+    /**
+     * Set once an unpaired surrogate has been written as '?'
+     */
+    boolean replaced;
+
+    protected ByteSink(int capacity) {
+        this.buf = new byte[capacity];
+    }
+
+    /**
+     * Make room for at least {@code n} more bytes (or empty the buffer entirely)
+     */
+    protected abstract void makeRoom(int n);
+
+    final void put(byte b) {
+        if (pos == buf.length) {
+            makeRoom(1);
+        }
+        buf[pos++] = b;
+    }
+
+    final void put(byte[] bytes) {
+        put(bytes, 0, bytes.length);
+    }
+
+    final void put(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (pos == buf.length) {
+                makeRoom(length);
+            }
+            int n = Math.min(length, buf.length - pos);
+            System.arraycopy(bytes, offset, buf, pos, n);
+            pos += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Append a string as UTF-8, matching {@link String#getBytes} for unpaired surrogates ('?')
+     */
+    final void putUtf8(String s) {
+        putUtf8(s, 0, s.length());
+    }
+
+    private void putUtf8(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                put((byte) c);
+                continue;
+            }
+            ensure(4);
+            if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    buf[pos++] = '?';
+                    replaced = true;
+                }
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Append a string as a fastjson-quoted JSON string literal
+     *
+     * @return whether any character had to be escaped
+     */
+    final boolean putJsonString(String s) {
+        put((byte) '"');
+        int start = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && (c < 0x7F || c > 0x9F) && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            putUtf8(s, start, i);
+            start = i + 1;
+            put((byte) '\\');
+            switch (c) {
+                case '"' -> put((byte) '"');
+                case '\\' -> put((byte) '\\');
+                case '\b' -> put((byte) 'b');
+                case '\t' -> put((byte) 't');
+                case '\n' -> put((byte) 'n');
+                case '\f' -> put((byte) 'f');
+                case '\r' -> put((byte) 'r');
+                default -> {
+                    ensure(5);
+                    buf[pos++] = 'u';
+                    buf[pos++] = (byte) HEX_UPPER[(c >> 12) & 0xF];
+                    buf[pos++] = (byte) HEX_UPPER[(c >> 8) & 0xF];
+                    buf[pos++] = (byte) HEX_UPPER[(c >> 4) & 0xF];
+                    buf[pos++] = (byte) HEX_UPPER[c & 0xF];
+                }
+            }
+        }
+        putUtf8(s, start, s.length());
+        put((byte) '"');
+        return start > 0;
+    }
+
+    /**
+     * Append the decimal digits of a long without creating a String
+     */
+    final void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            put(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int end = pos + digitCount(value);
+        int p = end;
+        do {
+            buf[--p] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        pos = end;
+    }
+
+    protected final void ensure(int n) {
+        if (pos + n > buf.length) {
+            makeRoom(n);
+        }
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+}
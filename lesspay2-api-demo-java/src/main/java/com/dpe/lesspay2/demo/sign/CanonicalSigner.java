@@ -0,0 +1,427 @@
+package com.dpe.lesspay2.demo.sign;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming Lesspay2 signer
+ *
+ * Produces byte-identical signatures to {@link com.dpe.lesspay2.demo.util.SignUtil#createSign}
+ * without the JSON string round-trips: the parameter tree is walked once in sorted key order
+ * and the canonical {@code k=v&...&key=SECRET} bytes are written straight into a per-thread
+ * buffer that feeds the SHA-256 digest.
+ *
+ * Canonical form reproduced from SignUtil:
+ * - null values are skipped, and empty strings are skipped inside nested JSONObjects
+ * - nested objects are rendered as {@code key={k=v&...}} with keys in ASCII order
+ * - arrays are rendered as fastjson JSON text, objects inside arrays keep HashMap order
+ * - numbers are rendered in the form fastjson parses them back to (e.g. doubles as BigDecimal)
+ */
+public final class CanonicalSigner {
+
+    private static final byte[] KEY_PREFIX = "key=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_SUFFIX_PREFIX = "&key=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Initial capacity of a fastjson-parsed JSONObject (HashMap)
+     */
+    private static final int PARSED_MAP_CAPACITY = 16;
+
+    /**
+     * Bucket size at which HashMap starts treeifying/resizing; beyond it the iteration order is delegated to fastjson
+     */
+    private static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private CanonicalSigner() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * Create signature for request parameters
+     *
+     * @param parameters Request parameters (JSONObject or any String-keyed map)
+     * @param key        Merchant AppSecret
+     * @return Signature string (uppercase hexadecimal)
+     */
+    public static String sign(Map<String, ?> parameters, String key) {
+        return sign(parameters, Collections.emptySet(), key);
+    }
+
+    /**
+     * Create signature for parameters with some top-level fields left out of the string to sign
+     *
+     * Equivalent to removing {@code excludedKeys} from a copy of the parameters before signing,
+     * without making the copy.
+     *
+     * @param parameters   Request parameters (JSONObject or any String-keyed map)
+     * @param excludedKeys Top-level keys that are not signed
+     * @param key          Merchant AppSecret
+     * @return Signature string (uppercase hexadecimal)
+     */
+    public static String sign(Map<String, ?> parameters, Set<String> excludedKeys, String key) {
+        SignBuffer out = SignBuffer.get();
+        try {
+            if (parameters == null || remainingSize(parameters, excludedKeys) == 0) {
+                out.put(KEY_PREFIX);
+            } else {
+                writeQueryString(out, parameters, excludedKeys, true, false, 0);
+                out.put(KEY_SUFFIX_PREFIX);
+            }
+            out.putUtf8(key);
+            return out.finishHex();
+        } finally {
+            out.clearFrames();
+            out.release();
+        }
+    }
+
+    private static int remainingSize(Map<String, ?> parameters, Set<String> excludedKeys) {
+        int size = parameters.size();
+        for (String excluded : excludedKeys) {
+            if (parameters.containsKey(excluded)) {
+                size--;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Create signature for a request body object (DTO, JSONObject or Map)
+     *
+     * Equivalent to {@code SignUtil.createSign(JSON.parseObject(JSON.toJSONString(body)), key)}:
+     * every nested object is treated as the JSONObject it would be parsed into.
+     *
+     * @param body Request body object
+     * @param key  Merchant AppSecret
+     * @return Signature string (uppercase hexadecimal)
+     */
+    public static String signObject(Object body, String key) {
+        SignBuffer out = SignBuffer.get();
+        try {
+            boolean present;
+            if (body instanceof Map<?, ?> map) {
+                present = writeQueryString(out, map, Collections.emptySet(), true, true, 0);
+            } else {
+                BeanPlan plan = BeanPlan.of(body.getClass());
+                if (plan == null) {
+                    throw new IllegalArgumentException("Request body must serialize to a JSON object: " + body.getClass());
+                }
+                present = writeQueryString(out, body, plan, true, 0);
+            }
+            return finish(out, present, key);
+        } finally {
+            out.clearFrames();
+            out.release();
+        }
+    }
+
+    /**
+     * Append the merchant key and finish the digest
+     *
+     * @param present whether the body has any non-null value; one without parses to an empty JSONObject
+     */
+    static String finish(SignBuffer out, boolean present, String key) {
+        out.put(present ? KEY_SUFFIX_PREFIX : KEY_PREFIX);
+        out.putUtf8(key);
+        return out.finishHex();
+    }
+
+    /**
+     * Append a precomputed merchant key and finish the digest
+     */
+    static String finish(SignBuffer out, boolean present, SigningKey key) {
+        out.put(key.suffix(present));
+        return out.finishHex();
+    }
+
+    /**
+     * Write {@code k=v&k=v} for the entries of a map in ASCII key order
+     *
+     * @param stripEmpty  whether empty strings are dropped (SignUtil only strips them along JSONObject chains)
+     * @param stripNested whether every nested object counts as a JSONObject, as after a parse of the body
+     * @return whether the map has any non-null value
+     */
+    private static boolean writeQueryString(SignBuffer out, Map<?, ?> map, Set<String> excludedKeys,
+                                            boolean stripEmpty, boolean stripNested, int depth) {
+        if (!hasStringKeys(map)) {
+            return writeQueryString(out, (Map<?, ?>) normalize(map), excludedKeys, stripEmpty, stripNested, depth);
+        }
+        String[] keys = out.keys(depth, map.size());
+        int n = 0;
+        boolean present = false;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null || excludedKeys.contains(entry.getKey())) {
+                continue;
+            }
+            present = true;
+            if (!stripEmpty || !"".equals(value)) {
+                keys[n++] = (String) entry.getKey();
+            }
+        }
+        Arrays.sort(keys, 0, n);
+        boolean first = true;
+        for (int i = 0; i < n; i++) {
+            first = writeQueryEntry(out, keys[i], map.get(keys[i]), first, stripEmpty, stripNested, depth);
+        }
+        return present;
+    }
+
+    /**
+     * Write {@code k=v&k=v} for the properties of a DTO, whose plan is already in wire-name order
+     *
+     * @return whether the DTO has any non-null property
+     */
+    private static boolean writeQueryString(SignBuffer out, Object bean, BeanPlan plan, boolean stripNested, int depth) {
+        boolean present = false;
+        boolean first = true;
+        for (BeanPlan.Property property : plan.properties) {
+            Object value = property.get(bean);
+            if (value == null) {
+                continue;
+            }
+            present = true;
+            if (!stripNested || !"".equals(value)) {
+                first = writeQueryEntry(out, property.name, value, first, stripNested, stripNested, depth);
+            }
+        }
+        return present;
+    }
+
+    /**
+     * @return whether no entry has been written yet at this level
+     */
+    static boolean writeQueryEntry(SignBuffer out, String key, Object value, boolean first,
+                                   boolean stripEmpty, boolean stripNested, int depth) {
+        boolean nestedStrip = stripEmpty && (stripNested || value instanceof JSONObject);
+        BeanPlan plan = null;
+        if (!isPlain(value)) {
+            plan = BeanPlan.of(value.getClass());
+            if (plan == null) {
+                value = normalize(value);
+                if (value == null) {
+                    return first;
+                }
+            }
+        }
+        if (!first) {
+            out.put((byte) '&');
+        }
+        out.putUtf8(key);
+        out.put((byte) '=');
+        if (plan != null) {
+            out.put((byte) '{');
+            // Beans are only stripped once they have been through a parse, never inside a caller's JSONObject
+            writeQueryString(out, value, plan, stripNested, depth + 1);
+            out.put((byte) '}');
+        } else if (value instanceof Map<?, ?> nested) {
+            out.put((byte) '{');
+            writeQueryString(out, nested, Collections.emptySet(), nestedStrip, stripNested, depth + 1);
+            out.put((byte) '}');
+        } else if (value instanceof Collection<?> || value instanceof Object[]) {
+            writeJson(out, value, depth + 1);
+        } else {
+            writeScalar(out, value);
+        }
+        return false;
+    }
+
+    /**
+     * Write a value as the JSON text fastjson produces after re-parsing it
+     */
+    static void writeJson(SignBuffer out, Object value, int depth) {
+        if (value == null) {
+            out.put(NULL);
+        } else if (value instanceof String s) {
+            out.putJsonString(s);
+        } else if (value instanceof Map<?, ?> map) {
+            writeJsonObject(out, map, depth);
+        } else if (value instanceof Collection<?> list) {
+            out.put((byte) '[');
+            boolean first = true;
+            for (Object item : list) {
+                if (!first) {
+                    out.put((byte) ',');
+                }
+                first = false;
+                writeJson(out, item, depth);
+            }
+            out.put((byte) ']');
+        } else if (value instanceof Object[] array) {
+            writeJson(out, Arrays.asList(array), depth);
+        } else if (isPlain(value)) {
+            writeScalar(out, value);
+        } else {
+            BeanPlan plan = BeanPlan.of(value.getClass());
+            if (plan != null) {
+                writeJsonObject(out, value, plan, depth);
+            } else {
+                writeJson(out, normalize(value), depth);
+            }
+        }
+    }
+
+    /**
+     * Write a JSON object with keys in the iteration order of the HashMap fastjson parses it into
+     */
+    private static void writeJsonObject(SignBuffer out, Map<?, ?> map, int depth) {
+        if (!hasStringKeys(map)) {
+            writeJson(out, normalize(map), depth);
+            return;
+        }
+        String[] keys = out.keys(depth, map.size());
+        Object[] values = out.values(depth, map.size());
+        int n = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getValue() != null) {
+                keys[n] = (String) entry.getKey();
+                values[n++] = entry.getValue();
+            }
+        }
+        writeJsonObject(out, map, keys, values, n, depth);
+    }
+
+    /**
+     * Write a DTO as a JSON object; fastjson serializes its properties in wire-name order
+     */
+    private static void writeJsonObject(SignBuffer out, Object bean, BeanPlan plan, int depth) {
+        BeanPlan.Property[] properties = plan.properties;
+        String[] keys = out.keys(depth, properties.length);
+        Object[] values = out.values(depth, properties.length);
+        int n = 0;
+        for (BeanPlan.Property property : properties) {
+            Object value = property.get(bean);
+            if (value != null) {
+                keys[n] = property.name;
+                values[n++] = value;
+            }
+        }
+        writeJsonObject(out, bean, keys, values, n, depth);
+    }
+
+    /**
+     * @param keys   non-null entries in serialization (insertion) order
+     * @param values values matching {@code keys}
+     */
+    private static void writeJsonObject(SignBuffer out, Object source, String[] keys, Object[] values, int n, int depth) {
+        int[] order = out.order(depth, n + PARSED_MAP_CAPACITY);
+        if (!hashMapOrder(keys, n, order)) {
+            out.putUtf8(JSON.toJSONString(normalize(source)));
+            return;
+        }
+        out.put((byte) '{');
+        boolean first = true;
+        for (int i = 0; i < n; i++) {
+            Object value = values[order[i]];
+            if (!isPlain(value) && BeanPlan.of(value.getClass()) == null) {
+                value = normalize(value);
+                if (value == null) {
+                    continue;
+                }
+            }
+            if (!first) {
+                out.put((byte) ',');
+            }
+            first = false;
+            out.putJsonString(keys[order[i]]);
+            out.put((byte) ':');
+            writeJson(out, value, depth + 1);
+        }
+        out.put((byte) '}');
+    }
+
+    /**
+     * Compute the iteration order of a fresh fastjson JSONObject (HashMap, capacity 16)
+     * after inserting the given keys in sequence.
+     *
+     * @return false if a bucket could treeify, in which case the order is not reproduced
+     */
+    static boolean hashMapOrder(String[] keys, int n, int[] order) {
+        int capacity = PARSED_MAP_CAPACITY;
+        while (n > capacity * 3 / 4) {
+            capacity <<= 1;
+        }
+        // Bucket counts at the initial capacity bound every intermediate table, so they decide treeification
+        Arrays.fill(order, n, n + PARSED_MAP_CAPACITY, 0);
+        int mask = capacity - 1;
+        for (int i = 0; i < n; i++) {
+            int hash = spread(keys[i]);
+            if (++order[n + (hash & (PARSED_MAP_CAPACITY - 1))] >= TREEIFY_THRESHOLD) {
+                return false;
+            }
+            // Stable insertion sort by bucket index keeps insertion order within a bucket, as HashMap does
+            int bucket = hash & mask;
+            int j = i;
+            while (j > 0 && (spread(keys[order[j - 1]]) & mask) > bucket) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return true;
+    }
+
+    static int spread(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static void writeScalar(SignBuffer out, Object value) {
+        if (value instanceof String s) {
+            out.putUtf8(s);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.putLong(((Number) value).longValue());
+        } else if (value instanceof Boolean b) {
+            out.put(b ? TRUE : FALSE);
+        } else {
+            out.putUtf8(value.toString());
+        }
+    }
+
+    /**
+     * Values whose canonical text is already their own rendering, without a fastjson round-trip
+     */
+    static boolean isPlain(Object value) {
+        return value instanceof String
+                || value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte
+                || value instanceof Boolean
+                || value instanceof BigDecimal || value instanceof BigInteger
+                || value instanceof Map || value instanceof Collection || value instanceof Object[];
+    }
+
+    static boolean hasStringKeys(Map<?, ?> map) {
+        if (map instanceof JSONObject) {
+            return true;
+        }
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fallback for uncommon types (dates, doubles, enums, beans, primitive arrays):
+     * convert to the value fastjson parses back from its own serialization.
+     */
+    private static Object normalize(Object value) {
+        return JSON.parse(JSON.toJSONString(value));
+    }
+}
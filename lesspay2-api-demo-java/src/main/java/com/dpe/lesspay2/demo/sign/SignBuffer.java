@@ -0,0 +1,222 @@
+package com.dpe.lesspay2.demo.sign;
+
+import com.dpe.lesspay2.demo.util.DigestUtil;
+import com.dpe.lesspay2.demo.util.ThreadLocalPool;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Per-thread byte buffer that feeds a SHA-256 digest
+ *
+ * Canonical signing bytes are encoded into a fixed-size buffer and handed
+ * to the digest in chunks, so no intermediate String or byte[] is built
+ * for the string to sign.
+ */
+final class SignBuffer extends ByteSink {
+
+    private static final int CAPACITY = 8192;
+
+    private static final ThreadLocalPool<SignBuffer> POOL = new ThreadLocalPool<>(SignBuffer::new, 256);
+
+    private final byte[] hash = new byte[32];
+    private final char[] hex = new char[64];
+    private final MessageDigest digest;
+
+    /**
+     * Depth-indexed scratch arrays for sorting map keys while walking nested objects
+     */
+    private String[][] keyFrames = new String[4][];
+    private Object[][] valueFrames = new Object[4][];
+    private int[][] orderFrames = new int[4][];
+    private int[][] entryFrames = new int[4][];
+
+    /**
+     * Offset tape recorded while an array is written into a request body, see {@link SignedBodyWriter}
+     */
+    private int[] tape = new int[256];
+    private int tapeSize;
+    private Object[] refs = new Object[64];
+    private int refCount;
+
+    private SignBuffer() {
+        super(CAPACITY);
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA256 algorithm not available", e);
+        }
+    }
+
+    /**
+     * Get the reset buffer of the current thread; pair with {@link #release()}
+     */
+    static SignBuffer get() {
+        SignBuffer buffer = POOL.acquire();
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Give the buffer back once the signature is done (a no-op on platform threads)
+     */
+    void release() {
+        POOL.release(this);
+    }
+
+    void reset() {
+        pos = 0;
+        digest.reset();
+    }
+
+    /**
+     * Finish the digest and return it as uppercase hexadecimal
+     */
+    String finishHex() {
+        flush();
+        try {
+            digest.digest(hash, 0, hash.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException("SHA256 digest failed", e);
+        }
+        return new String(DigestUtil.hex(hash, hex));
+    }
+
+    String[] keys(int depth, int size) {
+        ensureDepth(depth);
+        String[] keys = keyFrames[depth];
+        if (keys == null || keys.length < size) {
+            keys = new String[Math.max(16, size)];
+            keyFrames[depth] = keys;
+        }
+        return keys;
+    }
+
+    Object[] values(int depth, int size) {
+        ensureDepth(depth);
+        Object[] values = valueFrames[depth];
+        if (values == null || values.length < size) {
+            values = new Object[Math.max(16, size)];
+            valueFrames[depth] = values;
+        }
+        return values;
+    }
+
+    int[] order(int depth, int size) {
+        ensureDepth(depth);
+        int[] order = orderFrames[depth];
+        if (order == null || order.length < size) {
+            order = new int[Math.max(16, size)];
+            orderFrames[depth] = order;
+        }
+        return order;
+    }
+
+    /**
+     * Int frame for the entries of an object or array being recorded onto the tape, grown keeping its content
+     */
+    int[] entries(int depth, int size) {
+        ensureDepth(depth);
+        int[] entries = entryFrames[depth];
+        if (entries == null) {
+            entries = new int[Math.max(64, size)];
+            entryFrames[depth] = entries;
+        } else if (entries.length < size) {
+            entries = Arrays.copyOf(entries, Math.max(size, entries.length * 2));
+            entryFrames[depth] = entries;
+        }
+        return entries;
+    }
+
+    int[] tape() {
+        return tape;
+    }
+
+    /**
+     * Drop the tape and the objects it references
+     */
+    void clearTape() {
+        tapeSize = 0;
+        Arrays.fill(refs, 0, refCount, null);
+        refCount = 0;
+    }
+
+    /**
+     * Append a record {@code [type, start, end, extra, entries...]} to the tape
+     *
+     * @return index of the record
+     */
+    int record(int type, int start, int end, int extra, int[] entries, int length) {
+        int index = tapeSize;
+        int required = index + 4 + length;
+        if (required > tape.length) {
+            tape = Arrays.copyOf(tape, Math.max(required, tape.length * 2));
+        }
+        tape[index] = type;
+        tape[index + 1] = start;
+        tape[index + 2] = end;
+        tape[index + 3] = extra;
+        if (length > 0) {
+            System.arraycopy(entries, 0, tape, index + 4, length);
+        }
+        tapeSize = required;
+        return index;
+    }
+
+    /**
+     * Keep an object (map key, escaped string, normalized value) referenced from the tape
+     *
+     * @return index for {@link #ref(int)}
+     */
+    int ref(Object value) {
+        if (refCount == refs.length) {
+            refs = Arrays.copyOf(refs, refCount * 2);
+        }
+        refs[refCount] = value;
+        return refCount++;
+    }
+
+    Object ref(int index) {
+        return refs[index];
+    }
+
+    /**
+     * Drop references kept in the scratch frames so signed payloads are not retained by the thread
+     */
+    void clearFrames() {
+        for (String[] keys : keyFrames) {
+            if (keys != null) {
+                Arrays.fill(keys, null);
+            }
+        }
+        for (Object[] values : valueFrames) {
+            if (values != null) {
+                Arrays.fill(values, null);
+            }
+        }
+    }
+
+    private void ensureDepth(int depth) {
+        if (depth >= keyFrames.length) {
+            int length = Math.max(depth + 1, keyFrames.length * 2);
+            keyFrames = Arrays.copyOf(keyFrames, length);
+            valueFrames = Arrays.copyOf(valueFrames, length);
+            orderFrames = Arrays.copyOf(orderFrames, length);
+            entryFrames = Arrays.copyOf(entryFrames, length);
+        }
+    }
+
+    @Override
+    protected void makeRoom(int n) {
+        flush();
+    }
+
+    private void flush() {
+        if (pos > 0) {
+            digest.update(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
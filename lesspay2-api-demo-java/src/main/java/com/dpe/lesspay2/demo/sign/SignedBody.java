@@ -0,0 +1,125 @@
+package com.dpe.lesspay2.demo.sign;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serialized request body together with its signature
+ *
+ * Produced by a single traversal of the request object into a pooled buffer.
+ * The bytes stay valid until {@link #close()}, which hands the buffer back to the pool.
+ */
+public final class SignedBody implements AutoCloseable {
+
+    private BodyBuffer buffer;
+    private final int length;
+    private final String signature;
+    private final long serializationNanos;
+    private final long signingNanos;
+
+    private SignedBody(BodyBuffer buffer, String signature, long serializationNanos, long signingNanos) {
+        this.buffer = buffer;
+        this.length = buffer.length();
+        this.signature = signature;
+        this.serializationNanos = serializationNanos;
+        this.signingNanos = signingNanos;
+    }
+
+    /**
+     * Serialize and sign a request body object
+     *
+     * @param body Request body object (DTO, JSONObject or Map)
+     * @param key  Merchant AppSecret
+     * @return Signed body, to be closed once the request has been sent
+     */
+    public static SignedBody of(Object body, String key) {
+        return of(body, key, null);
+    }
+
+    /**
+     * Serialize and sign a request body object with a precomputed merchant key
+     *
+     * @param body Request body object (DTO, JSONObject or Map)
+     * @param key  Merchant signing key
+     * @return Signed body, to be closed once the request has been sent
+     */
+    public static SignedBody of(Object body, SigningKey key) {
+        return of(body, null, key);
+    }
+
+    private static SignedBody of(Object body, String key, SigningKey signingKey) {
+        SignBuffer sign = SignBuffer.get();
+        BodyBuffer buffer = BodyBuffer.acquire();
+        try {
+            long start = System.nanoTime();
+            SignedBodyWriter writer = SignedBodyWriter.serialize(buffer, sign, body);
+            long serialized = System.nanoTime();
+            String signature = signingKey != null ? writer.sign(signingKey) : writer.sign(key);
+            return new SignedBody(buffer, signature, serialized - start, System.nanoTime() - serialized);
+        } catch (RuntimeException | Error e) {
+            buffer.release();
+            throw e;
+        } finally {
+            sign.clearFrames();
+            sign.clearTape();
+            sign.release();
+        }
+    }
+
+    /**
+     * @return Signature string (uppercase hexadecimal)
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return Time spent writing the JSON body, in nanoseconds
+     */
+    public long getSerializationNanos() {
+        return serializationNanos;
+    }
+
+    /**
+     * @return Time spent computing the signature from the written body, in nanoseconds
+     */
+    public long getSigningNanos() {
+        return signingNanos;
+    }
+
+    /**
+     * Backing array of the body; only the first {@link #length()} bytes belong to it
+     */
+    public byte[] array() {
+        return buffer().array();
+    }
+
+    /**
+     * @return Body length in bytes
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Decode the body as a String; only meant for logging
+     */
+    @Override
+    public String toString() {
+        return new String(buffer().array(), 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+    }
+
+    private BodyBuffer buffer() {
+        if (buffer == null) {
+            throw new IllegalStateException("Signed body has already been released");
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,349 @@
+package com.dpe.lesspay2.demo.sign;
+
+import com.alibaba.fastjson.JSON;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Serializes a request body and computes its signature from a single traversal
+ *
+ * The object graph is walked once, writing the fastjson JSON text into the body buffer
+ * and recording a tape of body offsets for every value. The canonical string is then
+ * produced from the tape and the body bytes alone: strings and numbers are copied out
+ * of the body, and no property is read or encoded twice.
+ *
+ * The signature is the one the gateway computes after parsing the body, i.e.
+ * {@code SignUtil.createSign(JSON.parseObject(body), key)}.
+ */
+final class SignedBodyWriter {
+
+    /**
+     * String whose body text between the quotes is its raw UTF-8; [start, end) includes the quotes
+     */
+    private static final int STRING = 0;
+
+    /**
+     * String that needed escaping; extra is the ref of the String
+     */
+    private static final int ESCAPED = 1;
+
+    /**
+     * Number, boolean or null whose body text is also its canonical text
+     */
+    private static final int LITERAL = 2;
+
+    /**
+     * JSON object; extra is the entry count, followed by (key ref, child) pairs in body order
+     */
+    private static final int OBJECT = 3;
+
+    /**
+     * JSON array; extra is the element count, followed by the children
+     */
+    private static final int ARRAY = 4;
+
+    /**
+     * Value serialized by fastjson itself (dates, doubles, enums, ...); extra is the ref of the value it parses back to
+     */
+    private static final int OTHER = 5;
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int PARSED_MAP_CAPACITY = 16;
+
+    private final BodyBuffer body;
+    private final SignBuffer sign;
+    private int[] tape;
+    private int root = -1;
+
+    /**
+     * Body object serialized by fastjson, signed without the tape
+     */
+    private Object fallback;
+
+    private SignedBodyWriter(BodyBuffer body, SignBuffer sign) {
+        this.body = body;
+        this.sign = sign;
+    }
+
+    /**
+     * Write the JSON body of a request object into {@code body}, recording the tape to sign it from
+     *
+     * @param body   Empty buffer receiving the UTF-8 JSON body
+     * @param sign   Reset signing buffer, whose frames and tape the caller clears after {@link #sign}
+     * @param object Request body object (DTO, JSONObject or Map)
+     * @return Writer to complete with {@link #sign}
+     */
+    static SignedBodyWriter serialize(BodyBuffer body, SignBuffer sign, Object object) {
+        SignedBodyWriter writer = new SignedBodyWriter(body, sign);
+        if (object instanceof Map<?, ?> map && !CanonicalSigner.hasStringKeys(map)) {
+            body.putUtf8(JSON.toJSONString(object));
+            writer.fallback = object;
+        } else if (object instanceof Map<?, ?> map) {
+            writer.root = writer.writeObject(map, 0);
+        } else {
+            BeanPlan plan = BeanPlan.of(object.getClass());
+            if (plan == null) {
+                throw new IllegalArgumentException("Request body must serialize to a JSON object: " + object.getClass());
+            }
+            writer.root = writer.writeObject(object, plan, 0);
+        }
+        return writer;
+    }
+
+    /**
+     * Sign the serialized body
+     *
+     * @param key Merchant AppSecret
+     * @return Signature string (uppercase hexadecimal)
+     */
+    String sign(String key) {
+        if (fallback != null) {
+            return CanonicalSigner.signObject(fallback, key);
+        }
+        tape = sign.tape();
+        writeQueryString(root, 0);
+        return CanonicalSigner.finish(sign, tape[root + 3] > 0, key);
+    }
+
+    /**
+     * Sign the serialized body with a precomputed key
+     */
+    String sign(SigningKey key) {
+        if (fallback != null) {
+            return CanonicalSigner.signObject(fallback, key.secret());
+        }
+        tape = sign.tape();
+        writeQueryString(root, 0);
+        return CanonicalSigner.finish(sign, tape[root + 3] > 0, key);
+    }
+
+    // ---- body pass ----
+
+    private int writeValue(Object value, int depth) {
+        int start = body.pos;
+        if (value == null) {
+            body.put(NULL);
+        } else if (value instanceof String s) {
+            if (body.putJsonString(s)) {
+                return sign.record(ESCAPED, start, body.pos, sign.ref(s), null, 0);
+            }
+            return sign.record(STRING, start, body.pos, 0, null, 0);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            body.putLong(((Number) value).longValue());
+        } else if (value instanceof Boolean b) {
+            body.put(b ? TRUE : FALSE);
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            body.putUtf8(value.toString());
+        } else if (value instanceof Map<?, ?> map && CanonicalSigner.hasStringKeys(map)) {
+            return writeObject(map, depth);
+        } else if (value instanceof Collection<?> list) {
+            return writeArray(list, depth);
+        } else if (value instanceof Object[] array) {
+            return writeArray(Arrays.asList(array), depth);
+        } else {
+            BeanPlan plan = value instanceof Map ? null : BeanPlan.of(value.getClass());
+            if (plan != null) {
+                return writeObject(value, plan, depth);
+            }
+            String text = JSON.toJSONString(value);
+            body.putUtf8(text);
+            return sign.record(OTHER, start, body.pos, sign.ref(JSON.parse(text)), null, 0);
+        }
+        return sign.record(LITERAL, start, body.pos, 0, null, 0);
+    }
+
+    private int writeObject(Map<?, ?> map, int depth) {
+        int start = body.pos;
+        body.put((byte) '{');
+        int[] entries = sign.entries(depth, 2 * map.size());
+        int n = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getValue() != null) {
+                entries = writeEntry((String) entry.getKey(), entry.getValue(), n++, depth);
+            }
+        }
+        body.put((byte) '}');
+        return sign.record(OBJECT, start, body.pos, n, entries, 2 * n);
+    }
+
+    private int writeObject(Object bean, BeanPlan plan, int depth) {
+        int start = body.pos;
+        body.put((byte) '{');
+        int[] entries = sign.entries(depth, 2 * plan.properties.length);
+        int n = 0;
+        for (BeanPlan.Property property : plan.properties) {
+            Object value = property.get(bean);
+            if (value != null) {
+                entries = writeEntry(property.name, value, n++, depth);
+            }
+        }
+        body.put((byte) '}');
+        return sign.record(OBJECT, start, body.pos, n, entries, 2 * n);
+    }
+
+    /**
+     * @return the entry frame of {@code depth}, possibly grown
+     */
+    private int[] writeEntry(String name, Object value, int index, int depth) {
+        if (index > 0) {
+            body.put((byte) ',');
+        }
+        body.replaced = false;
+        body.putJsonString(name);
+        if (body.replaced) {
+            // Order and sign by the key the gateway decodes, not the malformed one
+            name = new String(name.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        }
+        body.put((byte) ':');
+        int child = writeValue(value, depth + 1);
+        int[] entries = sign.entries(depth, 2 * index + 2);
+        entries[2 * index] = sign.ref(name);
+        entries[2 * index + 1] = child;
+        return entries;
+    }
+
+    private int writeArray(Collection<?> list, int depth) {
+        int start = body.pos;
+        body.put((byte) '[');
+        int[] entries = sign.entries(depth, list.size());
+        int n = 0;
+        for (Object item : list) {
+            if (n > 0) {
+                body.put((byte) ',');
+            }
+            int child = writeValue(item, depth + 1);
+            entries = sign.entries(depth, n + 1);
+            entries[n++] = child;
+        }
+        body.put((byte) ']');
+        return sign.record(ARRAY, start, body.pos, n, entries, n);
+    }
+
+    // ---- signing pass ----
+
+    /**
+     * Write {@code k=v&k=v} for an object node; every object outside arrays is a parsed JSONObject, so empty strings are dropped
+     */
+    private void writeQueryString(int node, int depth) {
+        int n = tape[node + 3];
+        String[] keys = sign.keys(depth, n);
+        int[] children = sign.order(depth, n);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            int child = tape[node + 5 + 2 * i];
+            if (!isEmptyString(child)) {
+                keys[m++] = (String) sign.ref(tape[node + 4 + 2 * i]);
+            }
+        }
+        Arrays.sort(keys, 0, m);
+        for (int i = 0; i < n; i++) {
+            int child = tape[node + 5 + 2 * i];
+            if (!isEmptyString(child)) {
+                children[Arrays.binarySearch(keys, 0, m, sign.ref(tape[node + 4 + 2 * i]))] = child;
+            }
+        }
+        boolean first = true;
+        for (int i = 0; i < m; i++) {
+            int child = children[i];
+            int type = tape[child];
+            if (type == OTHER) {
+                first = CanonicalSigner.writeQueryEntry(sign, keys[i], sign.ref(tape[child + 3]), first, true, true, depth);
+                continue;
+            }
+            if (!first) {
+                sign.put((byte) '&');
+            }
+            first = false;
+            sign.putUtf8(keys[i]);
+            sign.put((byte) '=');
+            switch (type) {
+                case STRING -> sign.put(body.buf, tape[child + 1] + 1, tape[child + 2] - tape[child + 1] - 2);
+                case ESCAPED -> sign.putUtf8((String) sign.ref(tape[child + 3]));
+                case OBJECT -> {
+                    sign.put((byte) '{');
+                    writeQueryString(child, depth + 1);
+                    sign.put((byte) '}');
+                }
+                case ARRAY -> writeJsonArray(child, depth + 1);
+                default -> copy(child);
+            }
+        }
+    }
+
+    private boolean isEmptyString(int child) {
+        return switch (tape[child]) {
+            case STRING -> tape[child + 2] - tape[child + 1] == 2;
+            case OTHER -> "".equals(sign.ref(tape[child + 3]));
+            default -> false;
+        };
+    }
+
+    /**
+     * Write a node as the JSON text fastjson produces after re-parsing it
+     */
+    private void writeJson(int node, int depth) {
+        switch (tape[node]) {
+            case OBJECT -> writeJsonObject(node, depth);
+            case ARRAY -> writeJsonArray(node, depth);
+            case OTHER -> CanonicalSigner.writeJson(sign, sign.ref(tape[node + 3]), depth);
+            default -> copy(node);
+        }
+    }
+
+    private void writeJsonArray(int node, int depth) {
+        int n = tape[node + 3];
+        sign.put((byte) '[');
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                sign.put((byte) ',');
+            }
+            writeJson(tape[node + 4 + i], depth);
+        }
+        sign.put((byte) ']');
+    }
+
+    /**
+     * Write an object node with keys in the iteration order of the HashMap fastjson parses the body into
+     */
+    private void writeJsonObject(int node, int depth) {
+        int n = tape[node + 3];
+        String[] keys = sign.keys(depth, n);
+        for (int i = 0; i < n; i++) {
+            keys[i] = (String) sign.ref(tape[node + 4 + 2 * i]);
+        }
+        int[] order = sign.order(depth, n + PARSED_MAP_CAPACITY);
+        if (!CanonicalSigner.hashMapOrder(keys, n, order)) {
+            String text = new String(body.buf, tape[node + 1], tape[node + 2] - tape[node + 1], StandardCharsets.UTF_8);
+            sign.putUtf8(JSON.toJSONString(JSON.parse(text)));
+            return;
+        }
+        sign.put((byte) '{');
+        boolean first = true;
+        for (int i = 0; i < n; i++) {
+            int child = tape[node + 5 + 2 * order[i]];
+            if (tape[child] == OTHER && sign.ref(tape[child + 3]) == null) {
+                continue;
+            }
+            if (!first) {
+                sign.put((byte) ',');
+            }
+            first = false;
+            sign.putJsonString(keys[order[i]]);
+            sign.put((byte) ':');
+            writeJson(child, depth + 1);
+        }
+        sign.put((byte) '}');
+    }
+
+    private void copy(int node) {
+        sign.put(body.buf, tape[node + 1], tape[node + 2] - tape[node + 1]);
+    }
+}
@@ -0,0 +1,50 @@
+package com.dpe.lesspay2.demo.sign;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Merchant AppSecret with its {@code key=SECRET} suffixes encoded once
+ *
+ * Signing with a SigningKey appends precomputed bytes instead of encoding the secret on every call.
+ */
+public final class SigningKey {
+
+    private final String secret;
+    private final byte[] bare;
+    private final byte[] separated;
+
+    private SigningKey(String secret) {
+        this.secret = secret;
+        this.bare = ("key=" + secret).getBytes(StandardCharsets.UTF_8);
+        this.separated = ("&key=" + secret).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param secret Merchant AppSecret
+     */
+    public static SigningKey of(String secret) {
+        if (secret == null) {
+            throw new IllegalArgumentException("AppSecret must not be null");
+        }
+        return new SigningKey(secret);
+    }
+
+    /**
+     * @return Merchant AppSecret
+     */
+    public String secret() {
+        return secret;
+    }
+
+    /**
+     * @param present whether the canonical string has entries before the key
+     */
+    byte[] suffix(boolean present) {
+        return present ? separated : bare;
+    }
+
+    @Override
+    public String toString() {
+        return "SigningKey[****]";
+    }
+}
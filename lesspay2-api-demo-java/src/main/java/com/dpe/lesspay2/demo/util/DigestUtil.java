@@ -0,0 +1,153 @@
+package com.dpe.lesspay2.demo.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA256 Digest Utility Class
+ *
+ * Each thread keeps its own MessageDigest, so the provider lookup of
+ * MessageDigest.getInstance happens once per thread instead of once per signature
+ * (virtual threads share a pool of them, see {@link ThreadLocalPool}).
+ * Hashes are encoded as uppercase hexadecimal through a lookup table.
+ */
+public final class DigestUtil {
+
+    private static final int SHA256_LENGTH = 32;
+
+    /**
+     * Two uppercase hex characters for every byte value
+     */
+    private static final char[] HEX_TABLE = new char[512];
+
+    static {
+        char[] digits = "0123456789ABCDEF".toCharArray();
+        for (int i = 0; i < 256; i++) {
+            HEX_TABLE[i << 1] = digits[i >>> 4];
+            HEX_TABLE[(i << 1) + 1] = digits[i & 0xF];
+        }
+    }
+
+    private static final ThreadLocalPool<Engine> ENGINES = new ThreadLocalPool<>(Engine::new, 256);
+
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private DigestUtil() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * SHA256 of the UTF-8 bytes of a string
+     *
+     * @return Uppercase hexadecimal hash
+     */
+    public static String sha256Hex(String source) {
+        return sha256Hex(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * SHA256 of bytes the caller already holds (e.g. a UTF-8 request body)
+     *
+     * @return Uppercase hexadecimal hash
+     */
+    public static String sha256Hex(byte[] bytes) {
+        return sha256Hex(bytes, 0, bytes.length);
+    }
+
+    /**
+     * SHA256 of a slice of a byte array
+     *
+     * @return Uppercase hexadecimal hash
+     */
+    public static String sha256Hex(byte[] bytes, int offset, int length) {
+        Engine engine = ENGINES.acquire();
+        try {
+            engine.digest.update(bytes, offset, length);
+            return engine.finish();
+        } finally {
+            ENGINES.release(engine);
+        }
+    }
+
+    /**
+     * SHA256 of the remaining bytes of a buffer; heap and direct buffers are read without copying
+     * and the buffer's position is advanced to its limit.
+     *
+     * @return Uppercase hexadecimal hash
+     */
+    public static String sha256Hex(ByteBuffer buffer) {
+        Engine engine = ENGINES.acquire();
+        try {
+            engine.digest.update(buffer);
+            return engine.finish();
+        } finally {
+            ENGINES.release(engine);
+        }
+    }
+
+    /**
+     * Encode bytes as uppercase hexadecimal
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length << 1];
+        encode(bytes, bytes.length, hex);
+        return new String(hex);
+    }
+
+    /**
+     * Encode bytes as uppercase hexadecimal into a caller-owned array of at least twice their length
+     *
+     * @return The hex array, to build a String from
+     */
+    public static char[] hex(byte[] bytes, char[] hex) {
+        if (hex.length < bytes.length << 1) {
+            throw new IllegalArgumentException("Hex array too short: " + hex.length + " < " + (bytes.length << 1));
+        }
+        encode(bytes, bytes.length, hex);
+        return hex;
+    }
+
+    private static void encode(byte[] bytes, int length, char[] hex) {
+        for (int i = 0; i < length; i++) {
+            int index = (bytes[i] & 0xFF) << 1;
+            hex[i << 1] = HEX_TABLE[index];
+            hex[(i << 1) + 1] = HEX_TABLE[index + 1];
+        }
+    }
+
+    /**
+     * Per-thread digest with its output buffers
+     */
+    private static final class Engine {
+
+        private final MessageDigest digest;
+        private final byte[] hash = new byte[SHA256_LENGTH];
+        private final char[] hex = new char[SHA256_LENGTH << 1];
+
+        private Engine() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA256 algorithm not available", e);
+            }
+        }
+
+        /**
+         * Complete the digest (which also resets it) and encode the hash
+         */
+        private String finish() {
+            try {
+                digest.digest(hash, 0, SHA256_LENGTH);
+            } catch (DigestException e) {
+                digest.reset();
+                throw new IllegalStateException("SHA256 digest failed", e);
+            }
+            encode(hash, SHA256_LENGTH, hex);
+            return new String(hex);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.dpe.lesspay2.demo.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * JSON Masking Utility for Logs
+ *
+ * Renders UTF-8 JSON for a log line in one pass over the bytes: values of sensitive
+ * fields are masked as they are copied, and the copy stops at a size cap, so a large
+ * batch body is never decoded or scanned past the part that is logged.
+ *
+ * Masked string and number values keep their last 4 characters when longer than 8
+ * (e.g. "************1111"), shorter ones are fully replaced (e.g. "***").
+ */
+public final class JsonMasker {
+
+    private static final int VISIBLE_SUFFIX = 4;
+    private static final int MIN_LENGTH_WITH_SUFFIX = 9;
+    /**
+     * Room for masks longer than short values
+     */
+    private static final int MASK_SLACK = 16;
+
+    private final byte[][] fields;
+
+    /**
+     * @param fields Names of the fields whose values are masked, at any depth
+     */
+    public JsonMasker(Collection<String> fields) {
+        this.fields = fields.stream()
+                .map(field -> field.getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+    }
+
+    /**
+     * Render a JSON text for logging
+     *
+     * @param json     UTF-8 JSON (need not be valid; anything else is copied as is)
+     * @param offset   Start of the text
+     * @param length   Length of the text
+     * @param maxBytes Bytes rendered before the text is cut
+     * @return Masked, possibly truncated text
+     */
+    public String mask(byte[] json, int offset, int length, int maxBytes) {
+        int end = offset + length;
+        byte[] out = new byte[Math.min(length + MASK_SLACK, maxBytes)];
+        int n = 0;
+        boolean maskNext = false;
+        int i = offset;
+        while (i < end && n < out.length) {
+            byte b = json[i];
+            if (b == '"') {
+                int close = closingQuote(json, i + 1, end);
+                if (isKey(json, close + 1, end)) {
+                    maskNext = isMasked(json, i + 1, close);
+                } else if (maskNext) {
+                    n = putMasked(out, n, json, i + 1, close, true);
+                    maskNext = false;
+                    i = Math.min(close + 1, end);
+                    continue;
+                }
+                int copy = Math.min(Math.min(close + 1, end) - i, out.length - n);
+                System.arraycopy(json, i, out, n, copy);
+                n += copy;
+                i += copy;
+                continue;
+            }
+            if (maskNext && (b == '-' || (b >= '0' && b <= '9'))) {
+                int stop = i;
+                while (stop < end && isNumberByte(json[stop])) {
+                    stop++;
+                }
+                n = putMasked(out, n, json, i, stop, false);
+                maskNext = false;
+                i = stop;
+                continue;
+            }
+            if (maskNext && b != ':' && b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                // Only a string or number value is masked, not objects, arrays or literals
+                maskNext = false;
+            }
+            out[n++] = b;
+            i++;
+        }
+        if (i < end) {
+            n = utf8Boundary(out, n);
+            byte[] suffix = ("...(truncated, " + length + " bytes)").getBytes(StandardCharsets.US_ASCII);
+            out = Arrays.copyOf(out, n + suffix.length);
+            System.arraycopy(suffix, 0, out, n, suffix.length);
+            n = out.length;
+        }
+        return new String(out, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Render a JSON string for logging
+     */
+    public String mask(String json, int maxBytes) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return mask(bytes, 0, bytes.length, maxBytes);
+    }
+
+    /**
+     * @return index of the quote closing a string starting at {@code from}, or {@code end}
+     */
+    private static int closingQuote(byte[] json, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (json[i] == '\\') {
+                i++;
+            } else if (json[i] == '"') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static boolean isKey(byte[] json, int from, int end) {
+        for (int i = from; i < end; i++) {
+            byte b = json[i];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b == ':';
+            }
+        }
+        return false;
+    }
+
+    private boolean isMasked(byte[] json, int from, int to) {
+        for (byte[] field : fields) {
+            if (Arrays.equals(field, 0, field.length, json, from, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNumberByte(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    /**
+     * Write the mask of the value in [from, to), quoted like the original
+     */
+    private static int putMasked(byte[] out, int n, byte[] json, int from, int to, boolean quoted) {
+        int length = to - from;
+        int visible = length >= MIN_LENGTH_WITH_SUFFIX ? VISIBLE_SUFFIX : 0;
+        int hidden = visible > 0 ? length - visible : 3;
+        if (quoted && n < out.length) {
+            out[n++] = '"';
+        }
+        for (int k = 0; k < hidden && n < out.length; k++) {
+            out[n++] = '*';
+        }
+        for (int k = to - visible; k < to && n < out.length; k++) {
+            out[n++] = json[k];
+        }
+        if (quoted && n < out.length) {
+            out[n++] = '"';
+        }
+        return n;
+    }
+
+    /**
+     * @return length without a trailing, incomplete UTF-8 sequence
+     */
+    private static int utf8Boundary(byte[] out, int n) {
+        int i = n - 1;
+        while (i >= 0 && (out[i] & 0xC0) == 0x80) {
+            i--;
+        }
+        if (i < 0 || (out[i] & 0x80) == 0) {
+            return n;
+        }
+        int expected = (out[i] & 0xE0) == 0xC0 ? 2 : (out[i] & 0xF0) == 0xE0 ? 3 : 4;
+        return n - i == expected ? n : i;
+    }
+}
@@ -6,9 +6,6 @@ import com.alibaba.fastjson.TypeReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -42,10 +39,8 @@ public final class SignUtil {
      */
     public static String createSign(JSONObject parameters, String key) {
         if (parameters == null || parameters.isEmpty()) {
-            logger.info("createSign: parameters isEmpty");
-            String sbkey = "key=" + key;
-            String sign = sha256(sbkey).toUpperCase();
-            logger.info("End of encryption (sha256)sign: {}", sign);
+            String sign = DigestUtil.sha256Hex("key=" + key);
+            logger.trace("createSign: parameters isEmpty, sign: {}", sign);
             return sign;
         }
         replaceEmptyWithNull(parameters);
@@ -54,10 +49,9 @@ public final class SignUtil {
                 new TypeReference<TreeMap<String, Object>>() {
                 });
         String qString = queryString(sortedMap);
-        logger.info("createSign: {}", qString);
-        String sbkey = qString + "&key=" + key;
-        String sign = sha256(sbkey).toUpperCase();
-        logger.info("End of encryption (sha256)sign: {}", sign);
+        String sign = DigestUtil.sha256Hex(qString + "&key=" + key);
+        // The canonical string carries unmasked card and account data
+        logger.trace("createSign: {}, sign: {}", qString, sign);
         return sign;
     }
 
@@ -73,30 +67,6 @@ public final class SignUtil {
         });
     }
 
-    private static String sha256(String source) {
-        byte[] bt = source.getBytes(StandardCharsets.UTF_8);
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(bt);
-            return bytes2Hex(md.digest());
-        } catch (NoSuchAlgorithmException e) {
-            logger.error("SHA256 encryption exception", e);
-            throw new IllegalStateException("SHA256 algorithm not available", e);
-        }
-    }
-
-    private static String bytes2Hex(byte[] bts) {
-        StringBuilder target = new StringBuilder();
-        for (byte bt : bts) {
-            String tmp = Integer.toHexString(bt & 0xFF);
-            if (tmp.length() == 1) {
-                target.append('0');
-            }
-            target.append(tmp);
-        }
-        return target.toString();
-    }
-
     private static String queryString(SortedMap<String, Object> jObj) {
         StringBuilder qString = new StringBuilder();
         if (jObj != null) {
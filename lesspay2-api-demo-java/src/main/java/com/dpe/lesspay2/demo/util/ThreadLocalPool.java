@@ -0,0 +1,51 @@
+package com.dpe.lesspay2.demo.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Per-thread reusable objects that stay cheap on virtual threads
+ *
+ * Platform threads keep their own instance in a ThreadLocal. Virtual threads are
+ * started per task, so a ThreadLocal would build a new instance for every call;
+ * they borrow one from a bounded shared pool instead and hand it back on release.
+ *
+ * @param <T> Type of the pooled object; it must be reset by its user before reuse
+ */
+public final class ThreadLocalPool<T> {
+
+    private final Supplier<T> factory;
+    private final ThreadLocal<T> local;
+    private final BlockingQueue<T> shared;
+
+    /**
+     * @param factory  Creates a new instance
+     * @param capacity Instances kept for virtual threads; more are created on demand and dropped on release
+     */
+    public ThreadLocalPool(Supplier<T> factory, int capacity) {
+        this.factory = factory;
+        this.local = ThreadLocal.withInitial(factory);
+        this.shared = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Get the instance of the current thread, or borrow one on a virtual thread
+     */
+    public T acquire() {
+        if (!VirtualThreads.isVirtual()) {
+            return local.get();
+        }
+        T value = shared.poll();
+        return value != null ? value : factory.get();
+    }
+
+    /**
+     * Hand back an instance obtained by {@link #acquire()} on the same thread
+     */
+    public void release(T value) {
+        if (VirtualThreads.isVirtual()) {
+            shared.offer(value);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.dpe.lesspay2.demo.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual Thread Utility Class
+ *
+ * The module is compiled for Java 17, so the Java 21 virtual thread API is reached
+ * through method handles; on older runtimes virtual threads are reported as unsupported.
+ */
+public final class VirtualThreads {
+
+    private static final MethodHandle IS_VIRTUAL;
+    private static final MethodHandle NEW_EXECUTOR;
+
+    static {
+        MethodHandle isVirtual = null;
+        MethodHandle newExecutor = null;
+        // Java 19 and 20 only have them as a preview API
+        if (Runtime.version().feature() >= 21) {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            try {
+                isVirtual = lookup.findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+                newExecutor = lookup.findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                        MethodType.methodType(ExecutorService.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                isVirtual = null;
+                newExecutor = null;
+            }
+        }
+        IS_VIRTUAL = isVirtual;
+        NEW_EXECUTOR = newExecutor;
+    }
+
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private VirtualThreads() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * @return true if the runtime can create virtual threads (Java 21+)
+     */
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * @return true if the current thread is a virtual thread
+     */
+    public static boolean isVirtual() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            throw new IllegalStateException("Thread.isVirtual failed", e);
+        }
+    }
+
+    /**
+     * Executor starting a new virtual thread for each task
+     *
+     * @throws IllegalStateException if the runtime does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_EXECUTOR == null) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later, running " + Runtime.version());
+        }
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Executors.newVirtualThreadPerTaskExecutor failed", e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.dpe.lesspay2.demo.webhook;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.sign.CanonicalSigner;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Lesspay2 Webhook Verifier
+ *
+ * Verifies the X-Auth-Signature header of payin and payout callbacks:
+ * - The raw body is parsed once; the parsed notification is returned to the caller
+ * - Payin v1 callbacks leave the OrderCallbackV1SignRequest-only fields out of the
+ *   string to sign while it is streamed, without copying the notification
+ * - Signatures are compared in constant time
+ */
+@Component
+public class WebhookVerifier {
+
+    private static final String API_VERSION_V1 = "v1";
+
+    /**
+     * Callback fields not covered by a v1 payin signature
+     */
+    private static final Set<String> V1_EXCLUDED_FIELDS =
+            Set.of("api_version", "order_status_int", "channel_biz_data", "event", "event_data");
+
+    private final ApiConfig apiConfig;
+
+    public WebhookVerifier(ApiConfig apiConfig) {
+        this.apiConfig = apiConfig;
+    }
+
+    /**
+     * Verify a payin callback; the signed field set depends on its api_version
+     *
+     * @param body      Raw request body
+     * @param signature X-Auth-Signature header value
+     * @return Parsed notification, or null if the signature does not match
+     */
+    public JSONObject verifyPayin(String body, String signature) {
+        return verifyPayin(parse(body), signature);
+    }
+
+    /**
+     * Verify a payin callback from the raw UTF-8 body bytes
+     *
+     * @return Parsed notification, or null if the signature does not match
+     */
+    public JSONObject verifyPayin(byte[] body, String signature) {
+        return verifyPayin(parse(body), signature);
+    }
+
+    /**
+     * Verify a payout callback (PayoutQueryVO); the full body is signed
+     *
+     * @param body      Raw request body
+     * @param signature X-Auth-Signature header value
+     * @return Parsed notification, or null if the signature does not match
+     */
+    public JSONObject verifyPayout(String body, String signature) {
+        return verify(parse(body), Collections.emptySet(), signature);
+    }
+
+    /**
+     * Verify a payout callback from the raw UTF-8 body bytes
+     *
+     * @return Parsed notification, or null if the signature does not match
+     */
+    public JSONObject verifyPayout(byte[] body, String signature) {
+        return verify(parse(body), Collections.emptySet(), signature);
+    }
+
+    private JSONObject verifyPayin(JSONObject notification, String signature) {
+        // A missing or blank api_version is treated as v1
+        String apiVersion = notification != null ? notification.getString("api_version") : null;
+        boolean v1 = apiVersion == null || apiVersion.isBlank() || API_VERSION_V1.equalsIgnoreCase(apiVersion);
+        return verify(notification, v1 ? V1_EXCLUDED_FIELDS : Collections.emptySet(), signature);
+    }
+
+    private JSONObject verify(JSONObject notification, Set<String> excludedFields, String signature) {
+        if (notification == null || signature == null) {
+            return null;
+        }
+        String expected = CanonicalSigner.sign(notification, excludedFields, apiConfig.getAppSecret());
+        boolean valid = MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+        return valid ? notification : null;
+    }
+
+    private static JSONObject parse(String body) {
+        return body != null ? JSON.parseObject(body) : null;
+    }
+
+    private static JSONObject parse(byte[] body) {
+        if (body == null) {
+            return null;
+        }
+        Object parsed = JSON.parse(body);
+        if (parsed != null && !(parsed instanceof JSONObject)) {
+            throw new IllegalArgumentException("Webhook body must be a JSON object");
+        }
+        return (JSONObject) parsed;
+    }
+}
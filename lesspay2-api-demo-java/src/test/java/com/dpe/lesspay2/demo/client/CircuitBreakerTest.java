@@ -0,0 +1,126 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A failing way_code must open its circuit, be probed after open-duration, and not affect other way_codes
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpenHalfOpenClose() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(settings());
+        for (int i = 0; i < 2; i++) {
+            breaker.record(breaker.tryAcquire(), false, 0);
+            breaker.record(breaker.tryAcquire(), true, 0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+
+        Thread.sleep(250);
+        Object first = breaker.tryAcquire();
+        Object second = breaker.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        // Only half-open-probes calls go through until they complete
+        assertNull(breaker.tryAcquire());
+        breaker.record(first, false, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.record(second, false, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRate());
+    }
+
+    @Test
+    public void testFailedProbeReopens() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(settings());
+        for (int i = 0; i < 4; i++) {
+            // Slow calls open the circuit like failures
+            breaker.record(breaker.tryAcquire(), false, Duration.ofSeconds(2).toNanos());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(250);
+        Object probe = breaker.tryAcquire();
+        Object cancelled = breaker.tryAcquire();
+        breaker.cancel(cancelled);
+        assertNotNull(breaker.tryAcquire());
+        breaker.record(probe, true, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testEndpointSlowCallThreshold() {
+        // An endpoint slow by design, e.g. batch create-order
+        CircuitBreaker breaker = new CircuitBreaker(settings(), Duration.ofSeconds(5));
+        for (int i = 0; i < 4; i++) {
+            breaker.record(breaker.tryAcquire(), false, Duration.ofSeconds(2).toNanos());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // 16 of 20 calls over its threshold
+        for (int i = 0; i < 16; i++) {
+            breaker.record(breaker.tryAcquire(), false, Duration.ofSeconds(6).toNanos());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testWayCodesAreIsolated() throws Exception {
+        AtomicInteger failingCalls = new AtomicInteger();
+        GatewayStub gateway = new GatewayStub().json("/api/global/payout/create-order", body -> {
+            boolean failing = "EPAY_PAYOUT".equals(body.getString("way_code"));
+            if (failing) {
+                failingCalls.incrementAndGet();
+            }
+            return failing ? "{\"code\":1001,\"msg\":\"channel unavailable\"}" : "{\"code\":0,\"msg\":\"success\"}";
+        });
+        ApiConfig apiConfig = gateway.getApiConfig();
+        apiConfig.setCircuitBreaker(settings());
+        apiConfig.getCircuitBreaker().getFailureCodes().add("1001");
+        apiConfig.getCircuitBreaker().setOpenDuration(Duration.ofSeconds(30));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try {
+            LesspayApiClient client = gateway.client(registry);
+            String path = "/api/global/payout/create-order";
+            for (int i = 0; i < 4; i++) {
+                client.post(path, Map.of("way_code", "EPAY_PAYOUT", "request_id", "E" + i));
+            }
+            CircuitOpenException error = assertThrows(CircuitOpenException.class,
+                    () -> client.post(path, Map.of("way_code", "EPAY_PAYOUT", "request_id", "E4")));
+            assertEquals("EPAY_PAYOUT", error.getWayCode());
+            assertEquals(4, failingCalls.get());
+
+            for (int i = 0; i < 6; i++) {
+                assertEquals("{\"code\":0,\"msg\":\"success\"}", client.post(path, Map.of("way_code", "AWEPAY_PAYOUT", "request_id", "A" + i)));
+            }
+            assertEquals(2.0, registry.get("lesspay.api.circuit.state").tag("app_id", GatewayStub.APP_ID)
+                    .tag("way_code", "EPAY_PAYOUT").gauge().value());
+            assertEquals(0.0, registry.get("lesspay.api.circuit.state").tag("way_code", "AWEPAY_PAYOUT").gauge().value());
+        } finally {
+            gateway.close();
+        }
+    }
+
+    private static ApiConfig.CircuitBreaker settings() {
+        ApiConfig.CircuitBreaker settings = new ApiConfig.CircuitBreaker();
+        settings.setEnabled(true);
+        settings.setMinCalls(4);
+        settings.setFailureRateThreshold(0.5);
+        settings.setSlowCallThreshold(Duration.ofSeconds(1));
+        settings.setOpenDuration(Duration.ofMillis(200));
+        settings.setHalfOpenProbes(2);
+        return settings;
+    }
+}
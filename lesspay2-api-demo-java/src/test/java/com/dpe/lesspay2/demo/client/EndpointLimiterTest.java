@@ -0,0 +1,130 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Calls must be paced to the rate, held under the concurrency limit, and the limit must back off on 429
+ */
+public class EndpointLimiterTest {
+
+    @Test
+    public void testRatePacing() throws Exception {
+        EndpointLimiter limiter = limiter(ApiConfig.Policy.QUEUE, Duration.ofSeconds(5), 20.0, 1, 4);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire().get(5, TimeUnit.SECONDS);
+            limiter.release(200, 0);
+        }
+        // First call at once, then one per 50ms
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= 180, "elapsed " + elapsed);
+    }
+
+    @Test
+    public void testBurstThenFailFast() throws Exception {
+        EndpointLimiter limiter = limiter(ApiConfig.Policy.FAIL_FAST, Duration.ofSeconds(5), 1.0, 3, 10);
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire().get();
+            limiter.release(200, 0);
+        }
+        ExecutionException error = assertThrows(ExecutionException.class, () -> limiter.acquire().get());
+        assertInstanceOf(RateLimitedException.class, error.getCause());
+    }
+
+    @Test
+    public void testConcurrencyQueueAndTimeout() throws Exception {
+        EndpointLimiter limiter = limiter(ApiConfig.Policy.QUEUE, Duration.ofMillis(200), 0.0, 1, 1);
+        limiter.acquire().get();
+        CompletableFuture<Void> queued = limiter.acquire();
+        assertFalse(queued.isDone());
+        limiter.release(200, 0);
+        queued.get(1, TimeUnit.SECONDS);
+        assertEquals(1, limiter.getInFlight());
+
+        CompletableFuture<Void> timedOut = limiter.acquire();
+        ExecutionException error = assertThrows(ExecutionException.class, () -> timedOut.get(2, TimeUnit.SECONDS));
+        assertInstanceOf(RateLimitedException.class, error.getCause());
+        limiter.release(200, 0);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testAdaptiveConcurrency() throws Exception {
+        EndpointLimiter limiter = limiter(ApiConfig.Policy.FAIL_FAST, Duration.ofSeconds(5), 0.0, 1, 8);
+        limiter.acquire().get();
+        limiter.release(429, 0);
+        assertEquals(4.0, limiter.getLimit());
+        // Within the cooldown, further 429s of calls sent together count once
+        limiter.acquire().get();
+        limiter.release(429, 0);
+        assertEquals(4.0, limiter.getLimit());
+
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire().get();
+            limiter.release(200, 0);
+        }
+        assertTrue(limiter.getLimit() > 4.9 && limiter.getLimit() < 5.1, "limit " + limiter.getLimit());
+    }
+
+    @Test
+    public void testClientFailsFastAtLimit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        GatewayStub gateway = new GatewayStub().json("/slow", body -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "{\"code\":0,\"msg\":\"success\"}";
+        });
+        ApiConfig apiConfig = gateway.getApiConfig();
+        apiConfig.getRateLimit().setEnabled(true);
+        apiConfig.getRateLimit().setPolicy(ApiConfig.Policy.FAIL_FAST);
+        ApiConfig.Limit limit = new ApiConfig.Limit();
+        limit.setInitialConcurrency(1);
+        limit.setMaxConcurrency(1);
+        apiConfig.getRateLimit().setEndpoints(Map.of("/slow", limit));
+        try {
+            LesspayApiClient client = gateway.client();
+            CompletableFuture<String> first = client.postAsync("/slow", Map.of("n", 1));
+            ExecutionException error = assertThrows(ExecutionException.class,
+                    () -> client.postAsync("/slow", Map.of("n", 2)).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(RateLimitedException.class, error.getCause());
+            assertThrows(RateLimitedException.class, () -> client.post("/slow", Map.of("n", 3)));
+
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            assertEquals("{\"code\":0,\"msg\":\"success\"}", client.post("/slow", Map.of("n", 4)));
+        } finally {
+            release.countDown();
+            gateway.close();
+        }
+    }
+
+    private static EndpointLimiter limiter(ApiConfig.Policy policy, Duration maxWait, double rate, int burst, int concurrency) {
+        ApiConfig.RateLimit settings = new ApiConfig.RateLimit();
+        settings.setPolicy(policy);
+        settings.setMaxWait(maxWait);
+        ApiConfig.Limit limit = new ApiConfig.Limit();
+        limit.setRate(rate);
+        limit.setBurst(burst);
+        limit.setInitialConcurrency(concurrency);
+        limit.setMaxConcurrency(concurrency);
+        return new EndpointLimiter("/test", settings, limit);
+    }
+}
@@ -0,0 +1,56 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * HttpClients must apply the configured dispatcher, protocols and timeouts
+ */
+public class HttpClientsTest {
+
+    @Test
+    public void testCreate() {
+        ApiConfig.Http settings = new ApiConfig.Http();
+        settings.setMaxRequests(100);
+        settings.setMaxRequestsPerHost(50);
+        OkHttpClient client = HttpClients.create(settings);
+        try {
+            assertEquals(100, client.dispatcher().getMaxRequests());
+            assertEquals(50, client.dispatcher().getMaxRequestsPerHost());
+            assertEquals(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1), client.protocols());
+            assertEquals(10_000, client.connectTimeoutMillis());
+            assertEquals(30_000, client.readTimeoutMillis());
+            assertEquals(0, client.callTimeoutMillis());
+
+            settings.setHttp2(false);
+            assertEquals(List.of(Protocol.HTTP_1_1), HttpClients.create(settings).protocols());
+        } finally {
+            HttpClients.shutdown(client);
+        }
+    }
+
+    @Test
+    public void testWithTimeouts() {
+        OkHttpClient base = HttpClients.create(new ApiConfig.Http());
+        ApiConfig.Timeouts timeouts = new ApiConfig.Timeouts();
+        timeouts.setRead(Duration.ofSeconds(60));
+        OkHttpClient derived = HttpClients.withTimeouts(base, timeouts);
+        try {
+            assertEquals(60_000, derived.readTimeoutMillis());
+            assertEquals(base.connectTimeoutMillis(), derived.connectTimeoutMillis());
+            assertEquals(base.writeTimeoutMillis(), derived.writeTimeoutMillis());
+            assertSame(base.connectionPool(), derived.connectionPool());
+            assertSame(base.dispatcher(), derived.dispatcher());
+        } finally {
+            HttpClients.shutdown(base);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.TypeReference;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.dto.PayinQueryDTO;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import com.dpe.lesspay2.demo.util.SignUtil;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Asynchronous calls against a local HTTP server
+ */
+public class LesspayApiClientTest {
+
+    private GatewayStub gateway;
+    private LesspayApiClient client;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        gateway = new GatewayStub().handle("/echo", exchange -> {
+            // Answer with the parsed body and whether the signature matches
+            JSONObject body = GatewayStub.body(exchange);
+            boolean signed = SignUtil.createSign(body, GatewayStub.APP_SECRET).equals(exchange.getRequestHeaders().getFirst("x-auth-signature"));
+            GatewayStub.respond(exchange, 200, "{\"code\":" + (signed ? 0 : 1001) + ",\"msg\":\"ok\",\"data\":" + body.toJSONString() + "}");
+        }).json("/list", body -> "{\"code\":0,\"msg\":\"ok\",\"data\":[{\"request_id\":\"a\"},{\"request_id\":\"b\"}]}")
+                .handle("/bad-gateway", exchange -> {
+                    exchange.getRequestBody().readAllBytes();
+                    GatewayStub.respond(exchange, 502, "<html>Bad Gateway</html>");
+                }).json("/slow", body -> {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "{\"code\":0}";
+                });
+        client = gateway.client(registry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        gateway.close();
+    }
+
+    @Test
+    public void testPostAsyncTyped() throws Exception {
+        List<CompletableFuture<ApiResponseDTO<PayinQueryDTO>>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            PayinQueryDTO query = new PayinQueryDTO();
+            query.setRequestId("R" + i);
+            query.setStartTime(1700000000000L + i);
+            futures.add(client.postAsync("/echo", query, PayinQueryDTO.class));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            ApiResponseDTO<PayinQueryDTO> response = futures.get(i).get(10, TimeUnit.SECONDS);
+            assertTrue(response.isSuccess());
+            assertEquals("R" + i, response.getData().getRequestId());
+            assertEquals(1700000000000L + i, response.getData().getStartTime());
+        }
+
+        ApiResponseDTO<List<PayinQueryDTO>> list = client.postAsync("/list", new JSONObject(),
+                new TypeReference<List<PayinQueryDTO>>() {
+                }).get(10, TimeUnit.SECONDS);
+        assertEquals("b", list.getData().get(1).getRequestId());
+
+        JSONObject raw = JSON.parseObject(client.postAsync("/list", new JSONObject()).get(10, TimeUnit.SECONDS));
+        assertEquals(0, raw.getIntValue("code"));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        JSONObject body = new JSONObject();
+        body.put("way_code", "KORAPAY_PAYOUT");
+        for (int i = 0; i < 3; i++) {
+            client.post("/echo", body);
+        }
+        client.postAsync("/bad-gateway", body).get(10, TimeUnit.SECONDS);
+
+        Timer echo = registry.get("lesspay.api.calls")
+                .tags("path", "/echo", "way_code", "KORAPAY_PAYOUT", "status", "200", "code", "0", "exception", "none").timer();
+        assertEquals(3, echo.count());
+        Timer badGateway = registry.get("lesspay.api.calls")
+                .tags("path", "/bad-gateway", "status", "502", "code", "none").timer();
+        assertEquals(1, badGateway.count());
+        assertEquals(4, registry.get("lesspay.api.signing").timers().stream().mapToLong(Timer::count).sum());
+        assertEquals(4, registry.get("lesspay.api.serialization").timers().stream().mapToLong(Timer::count).sum());
+        assertEquals(4, registry.get("lesspay.api.connection.acquire").timers().stream().mapToLong(Timer::count).sum());
+    }
+
+    @Test
+    public void testBusinessCode() {
+        assertEquals("0", ApiMetrics.businessCode("{\"code\":0,\"msg\":\"ok\"}"));
+        assertEquals("-12", ApiMetrics.businessCode("{\"data\":{\"code\":\"BANK\",\"list\":[{\"code\":1}]},\"msg\":\"a\\\"code\\\"\", \"code\" : -12}"));
+        assertEquals("none", ApiMetrics.businessCode("{\"data\":{\"code\":5}}"));
+        assertEquals("none", ApiMetrics.businessCode("<html>Bad Gateway</html>"));
+    }
+
+    @Test
+    public void testPostAsyncNotEnvelope() {
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.postAsync("/bad-gateway", new JSONObject(), JSONObject.class).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        CompletableFuture<String> future = client.postAsync("/slow", new JSONObject());
+        waitFor(() -> gateway.getHttpClient().dispatcher().runningCallsCount() == 1);
+        assertTrue(future.cancel(true));
+        waitFor(() -> gateway.getHttpClient().dispatcher().runningCallsCount() == 0);
+        assertTrue(future.isCancelled());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.dto.PayinQueryDTO;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import com.dpe.lesspay2.demo.util.VirtualThreads;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fan-out of blocking calls must stay within max-concurrent-calls
+ */
+public class LesspayApiExecutorTest {
+
+    private static final int MAX_CONCURRENT_CALLS = 4;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private GatewayStub gateway;
+    private LesspayApiExecutor executor;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        gateway = new GatewayStub().handle("/query", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                JSONObject body = GatewayStub.body(exchange);
+                Thread.sleep(20);
+                GatewayStub.respond(exchange, 200, "{\"code\":0,\"msg\":\"ok\",\"data\":" + body.toJSONString() + "}");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+
+        ApiConfig apiConfig = gateway.getApiConfig();
+        apiConfig.getExecution().setVirtualThreads(true);
+        apiConfig.getExecution().setMaxConcurrentCalls(MAX_CONCURRENT_CALLS);
+        executor = new LesspayApiExecutor(apiConfig, gateway.client());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.destroy();
+        gateway.close();
+    }
+
+    @Test
+    public void testSubmitAll() throws Exception {
+        assertEquals(VirtualThreads.isSupported(), executor.isVirtualThreads());
+
+        List<PayinQueryDTO> queries = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            PayinQueryDTO query = new PayinQueryDTO();
+            query.setPayOrderId("P" + i);
+            queries.add(query);
+        }
+        List<CompletableFuture<ApiResponseDTO<PayinQueryDTO>>> futures =
+                executor.submitAll("/query", queries, PayinQueryDTO.class);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("P" + i, futures.get(i).join().getData().getPayOrderId());
+        }
+        assertTrue(maxInFlight.get() <= MAX_CONCURRENT_CALLS, "max in flight " + maxInFlight.get());
+        assertTrue(maxInFlight.get() > 1, "calls did not overlap");
+    }
+
+    @Test
+    public void testVirtualThreadsSupport() {
+        assertEquals(Runtime.version().feature() >= 21, VirtualThreads.isSupported());
+    }
+}
@@ -0,0 +1,110 @@
+package com.dpe.lesspay2.demo.client;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import com.dpe.lesspay2.demo.util.SignUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Each merchant must sign with its own secret, and a saturated merchant must not delay the others
+ */
+public class LesspayClientRegistryTest {
+
+    private static final Map<String, String> SECRETS = Map.of("APP_A", "secret-a", "APP_B", "secret-b", "APP_DEFAULT", "secret-default");
+
+    @Test
+    public void testPerMerchantSigningAndIsolation() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        GatewayStub gateway = new GatewayStub().handle("/echo", exchange -> {
+            String appId = exchange.getRequestHeaders().getFirst("x-auth-appid");
+            JSONObject body = GatewayStub.body(exchange);
+            boolean valid = SignUtil.createSign(body, SECRETS.get(appId)).equals(exchange.getRequestHeaders().getFirst("x-auth-signature"));
+            if ("APP_A".equals(appId)) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            GatewayStub.respond(exchange, 200, "{\"code\":" + (valid ? 0 : 1) + ",\"msg\":\"" + appId + "\"}");
+        });
+        ApiConfig apiConfig = gateway.getApiConfig();
+        apiConfig.setAppId("APP_DEFAULT");
+        apiConfig.setAppSecret(SECRETS.get("APP_DEFAULT"));
+        // The shared dispatcher would let A take every slot
+        apiConfig.getHttp().setMaxRequestsPerHost(4);
+        for (String appId : new String[]{"APP_A", "APP_B"}) {
+            ApiConfig.Merchant merchant = new ApiConfig.Merchant();
+            merchant.setAppSecret(SECRETS.get(appId));
+            merchant.setMaxRequests(4);
+            merchant.setMaxRequestsPerHost(4);
+            apiConfig.getMerchants().put(appId, merchant);
+        }
+        try {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            LesspayApiClient defaultClient = gateway.client(meterRegistry);
+            LesspayClientRegistry registry = new LesspayClientRegistry(apiConfig, defaultClient, gateway.getHttpClient(), meterRegistry);
+            assertSame(defaultClient, registry.client("APP_DEFAULT"));
+            assertEquals(Set.of("APP_A", "APP_B", "APP_DEFAULT"), registry.getAppIds());
+            assertThrows(IllegalArgumentException.class, () -> registry.client("APP_C"));
+
+            // A burst of A: 4 calls held by the server, 16 queued in A's dispatcher
+            List<CompletableFuture<?>> burst = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                burst.add(registry.client("APP_A").postAsync("/echo", Map.of("n", i), Object.class));
+            }
+            for (String appId : new String[]{"APP_B", "APP_DEFAULT"}) {
+                var response = registry.client(appId).postAsync("/echo", Map.of("n", 1), Object.class).get(5, TimeUnit.SECONDS);
+                assertEquals(0, response.getCode());
+                assertEquals(appId, response.getMsg());
+            }
+            assertFalse(burst.get(0).isDone());
+            release.countDown();
+            CompletableFuture.allOf(burst.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+            // Each merchant is measured apart
+            assertEquals(20, meterRegistry.get("lesspay.api.calls").tag("app_id", "APP_A").timer().count());
+            assertEquals(1, meterRegistry.get("lesspay.api.calls").tag("app_id", "APP_B").timer().count());
+        } finally {
+            release.countDown();
+            gateway.close();
+        }
+    }
+
+    @Test
+    public void testInvalidMerchants() {
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.getMerchants().put("APP_A", new ApiConfig.Merchant());
+        OkHttpClient httpClient = HttpClients.create(apiConfig.getHttp());
+        try {
+            // No secret
+            assertThrows(IllegalArgumentException.class,
+                    () -> new LesspayClientRegistry(apiConfig, new LesspayApiClient(apiConfig, httpClient, new SimpleMeterRegistry()),
+                            httpClient, new SimpleMeterRegistry()));
+            // The default merchant again
+            apiConfig.getMerchants().get("APP_A").setAppSecret("secret-a");
+            apiConfig.setAppId("APP_A");
+            assertThrows(IllegalArgumentException.class,
+                    () -> new LesspayClientRegistry(apiConfig, new LesspayApiClient(apiConfig, httpClient, new SimpleMeterRegistry()),
+                            httpClient, new SimpleMeterRegistry()));
+        } finally {
+            HttpClients.shutdown(httpClient);
+        }
+    }
+}
@@ -1,13 +1,13 @@
 package com.dpe.lesspay2.demo.example.payin;
 
 import com.alibaba.fastjson.JSON;
+import com.dpe.lesspay2.demo.client.HttpClients;
 import com.dpe.lesspay2.demo.dto.CreatePayinOrderDTO;
 import com.dpe.lesspay2.demo.util.SignUtil;
 import okhttp3.*;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Payin API Call Example
@@ -29,11 +29,7 @@ public class PayinExample {
     private static final String PAYIN_API_PATH = "/api/global/v1/pay/create-order";
     private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
 
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    private final OkHttpClient httpClient = HttpClients.shared();
 
     /**
      * Payin API call test
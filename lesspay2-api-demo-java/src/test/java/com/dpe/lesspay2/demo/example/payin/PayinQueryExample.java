@@ -1,13 +1,13 @@
 package com.dpe.lesspay2.demo.example.payin;
 
 import com.alibaba.fastjson.JSON;
+import com.dpe.lesspay2.demo.client.HttpClients;
 import com.dpe.lesspay2.demo.dto.PayinQueryDTO;
 import com.dpe.lesspay2.demo.util.SignUtil;
 import okhttp3.*;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Fetch Payin API Call Example
@@ -34,11 +34,7 @@ public class PayinQueryExample {
     private static final String PAYIN_QUERY_API_PATH = "/api/global/v1/pay/query-order";
     private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
 
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    private final OkHttpClient httpClient = HttpClients.shared();
 
     /**
      * Fetch Payin API call test - Query by request_id
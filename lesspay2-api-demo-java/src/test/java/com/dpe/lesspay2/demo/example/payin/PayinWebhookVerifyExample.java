@@ -183,10 +183,9 @@ public class PayinWebhookVerifyExample {
      *         @RequestBody String body) {
      *
      *     // 1. Parse the body and verify the signature
-     *     JSONObject webhook = JSON.parseObject(body);
-     *     JSONObject signPayload = buildSignPayloadByApiVersion(webhook);
-     *     String calculatedSign = SignUtil.createSign(signPayload, APP_SECRET);
-     *     if (!calculatedSign.equals(signature)) {
+     *     //    (WebhookVerifier applies the api_version field rules and compares in constant time)
+     *     JSONObject webhook = webhookVerifier.verifyPayin(body, signature);
+     *     if (webhook == null) {
      *         log.error("Payin webhook signature verification failed, timestamp={}", timestamp);
      *         return "FAIL";
      *     }
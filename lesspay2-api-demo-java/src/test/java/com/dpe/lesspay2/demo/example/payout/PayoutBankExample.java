@@ -1,13 +1,13 @@
 package com.dpe.lesspay2.demo.example.payout;
 
 import com.alibaba.fastjson.JSON;
+import com.dpe.lesspay2.demo.client.HttpClients;
 import com.dpe.lesspay2.demo.dto.PayoutBankDTO;
 import com.dpe.lesspay2.demo.util.SignUtil;
 import okhttp3.*;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Payout Supported Banks API Call Example
@@ -29,11 +29,7 @@ public class PayoutBankExample {
     private static final String PAYOUT_BANK_API_PATH = "/api/global/payout/bank";
     private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
 
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    private final OkHttpClient httpClient = HttpClients.shared();
 
     /**
      * Payout Supported Banks API call test
@@ -1,6 +1,7 @@
 package com.dpe.lesspay2.demo.example.payout;
 
 import com.alibaba.fastjson.JSON;
+import com.dpe.lesspay2.demo.client.HttpClients;
 import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO;
 import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO.PayoutOrderDetailDTO;
 import com.dpe.lesspay2.demo.dto.PayoutEWalletDTO;
@@ -11,7 +12,6 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Payout API Call Example
@@ -33,11 +33,7 @@ public class PayoutBatchExample {
     private static final String PAYOUT_API_PATH = "/api/global/payout/batch/create-order";
     private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
 
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    private final OkHttpClient httpClient = HttpClients.shared();
 
     /**
      * Payout API call test
@@ -1,6 +1,7 @@
 package com.dpe.lesspay2.demo.example.payout;
 
 import com.alibaba.fastjson.JSON;
+import com.dpe.lesspay2.demo.client.HttpClients;
 import com.dpe.lesspay2.demo.dto.PayoutQueryDTO;
 import com.dpe.lesspay2.demo.util.SignUtil;
 import okhttp3.*;
@@ -8,7 +9,6 @@ import org.junit.jupiter.api.Test;
 import org.junit.platform.commons.util.StringUtils;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Fetch Payout API Call Example
@@ -35,11 +35,7 @@ public class PayoutQueryExample {
     private static final String PAYOUT_QUERY_API_PATH = "/api/global/payout/query";
     private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
 
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    private final OkHttpClient httpClient = HttpClients.shared();
 
     /**
      * Fetch Payout API call test - Query by pay_order_id
@@ -3,12 +3,12 @@ package com.dpe.lesspay2.demo.example.payout;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.HttpClients;
 import com.dpe.lesspay2.demo.util.SignUtil;
 import okhttp3.*;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Payout Webhook Signature Verification Demo
@@ -40,11 +40,7 @@ public class PayoutWebhookVerifyExample {
     private static final String TRIGGER_NOTIFY_API_PATH = "/api/global/payout/triggerNotify";
     private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
 
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    private final OkHttpClient httpClient = HttpClients.shared();
 
     /**
      * Test complete flow: call triggerNotify -> get callback content -> verify signature
@@ -312,14 +308,14 @@ public class PayoutWebhookVerifyExample {
      *         @RequestBody String body) {
      *
      *     // 1. Verify signature (X-Auth-Signature generated by platform using merchant APP_SECRET)
-     *     String calculatedSign = SignUtil.createSign(JSON.parseObject(body), APP_SECRET);
-     *     if (!calculatedSign.equals(signature)) {
+     *     //    and parse notification content (PayoutQueryVO) in one go
+     *     JSONObject notification = webhookVerifier.verifyPayout(body, signature);
+     *     if (notification == null) {
      *         log.error("Webhook signature verification failed");
      *         return "FAIL";
      *     }
      *
-     *     // 2. Parse notification content (PayoutQueryVO)
-     *     JSONObject notification = JSON.parseObject(body);
+     *     // 2. Read notification content
      *     String orderId = notification.getString("pay_order_id");
      *     String requestId = notification.getString("request_id");
      *     String status = notification.getString("order_status");
@@ -1,6 +1,7 @@
 package com.dpe.lesspay2.demo.example.payout.waycode;
 
 import com.alibaba.fastjson.JSON;
+import com.dpe.lesspay2.demo.client.HttpClients;
 import com.dpe.lesspay2.demo.dto.BankCodesDTO;
 import com.dpe.lesspay2.demo.dto.BankDTO;
 import com.dpe.lesspay2.demo.dto.BeneficiaryDTO;
@@ -19,7 +20,6 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
  * AwePay Payout 调试示例（单笔）
@@ -43,11 +43,7 @@ public class PayoutAwePayExample {
     private static final String PAYOUT_BALANCE_API_PATH = "/api/global/payout/balance";
     private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
 
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    private final OkHttpClient httpClient = HttpClients.shared();
 
     /**
      * AwePay 印度尼西亚银行转账出金请求调试（会真实发起 HTTP 请求）
@@ -1,6 +1,7 @@
 package com.dpe.lesspay2.demo.example.payout.waycode;
 
 import com.alibaba.fastjson.JSON;
+import com.dpe.lesspay2.demo.client.HttpClients;
 import com.dpe.lesspay2.demo.dto.BankCodesDTO;
 import com.dpe.lesspay2.demo.dto.BankDTO;
 import com.dpe.lesspay2.demo.dto.BeneficiaryDTO;
@@ -22,7 +23,6 @@ import java.net.SocketTimeoutException;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Teemopay Payout 调试示例（巴基斯坦代付）
@@ -49,11 +49,7 @@ public class PayoutTeemopayExample {
     private static final String WAY_CODE = "TEEMOPAY_PAYOUT";
     private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
 
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    private final OkHttpClient httpClient = HttpClients.shared();
 
     /**
      * Teemopay 巴基斯坦银行卡出金请求调试（会真实发起 HTTP 请求）
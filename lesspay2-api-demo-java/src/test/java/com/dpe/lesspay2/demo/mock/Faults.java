@@ -0,0 +1,39 @@
+package com.dpe.lesspay2.demo.mock;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Faults injected by {@link MockGateway}, each the share of requests it hits
+ */
+@Data
+public class Faults {
+
+    static final Faults NONE = new Faults();
+
+    /**
+     * Answered with an HTTP 502 HTML page, not processed
+     */
+    private double errorRate;
+
+    /**
+     * Never answered, not processed: the connection is held for hang, then closed
+     */
+    private double timeoutRate;
+
+    /**
+     * Answered with business code {@link MockGateway#INJECTED_ERROR}, not processed
+     */
+    private double rejectRate;
+
+    /**
+     * Processed (the order is created), but the response is dropped like a timeout: the outcome is unknown to the client
+     */
+    private double lostResponseRate;
+
+    /**
+     * How long timed out and lost requests are held before the connection is closed
+     */
+    private Duration hang = Duration.ofSeconds(60);
+}
@@ -0,0 +1,128 @@
+package com.dpe.lesspay2.demo.mock;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.HttpClients;
+import com.dpe.lesspay2.demo.client.LesspayApiClient;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Gateway Stub
+ *
+ * A local HTTP server whose endpoints each test scripts, with the ApiConfig and clients pointed at it:
+ * - {@link #handle} serves a path with a raw handler, {@link #json} with a function from the request
+ *   body to the response body
+ * - {@link #getApiConfig()} has the base-url, AppId and AppSecret set; change it before the first
+ *   {@link #client()}, which builds the OkHttpClient from its http settings
+ * - {@link #close()} shuts the client and the server down
+ *
+ * Requests are handled concurrently and signatures are not checked; see {@link MockGateway} for a
+ * stand-in that behaves like the gateway.
+ */
+public final class GatewayStub implements Closeable {
+
+    public static final String APP_ID = "TEST_APP_ID";
+    public static final String APP_SECRET = "TEST_SECRET";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ApiConfig apiConfig = new ApiConfig();
+    private OkHttpClient httpClient;
+
+    public GatewayStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.start();
+        apiConfig.setBaseUrl(getBaseUrl());
+        apiConfig.setAppId(APP_ID);
+        apiConfig.setAppSecret(APP_SECRET);
+    }
+
+    /**
+     * Serve a path
+     */
+    public GatewayStub handle(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+        return this;
+    }
+
+    /**
+     * Serve a path with HTTP 200 and the JSON built from the request body
+     *
+     * @param responder Receives the request body (an empty object if there is none), returns the response body
+     */
+    public GatewayStub json(String path, Function<JSONObject, String> responder) {
+        return handle(path, exchange -> respond(exchange, 200, responder.apply(body(exchange))));
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public ApiConfig getApiConfig() {
+        return apiConfig;
+    }
+
+    /**
+     * @return Client of the default merchant with its own meter registry
+     */
+    public LesspayApiClient client() {
+        return client(new SimpleMeterRegistry());
+    }
+
+    public LesspayApiClient client(MeterRegistry registry) {
+        return new LesspayApiClient(apiConfig, getHttpClient(), registry);
+    }
+
+    /**
+     * @return OkHttpClient built from the http settings on first use, shut down by {@link #close()}
+     */
+    public synchronized OkHttpClient getHttpClient() {
+        if (httpClient == null) {
+            httpClient = HttpClients.create(apiConfig.getHttp());
+        }
+        return httpClient;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (httpClient != null) {
+            HttpClients.shutdown(httpClient);
+        }
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return Request body as a JSON object, empty if there is none
+     */
+    public static JSONObject body(HttpExchange exchange) throws IOException {
+        byte[] raw = exchange.getRequestBody().readAllBytes();
+        JSONObject body = raw.length > 0 ? JSON.parseObject(new String(raw, StandardCharsets.UTF_8)) : null;
+        return body != null ? body : new JSONObject();
+    }
+
+    public static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.dpe.lesspay2.demo.mock;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency added by {@link MockGateway} before it processes a request
+ */
+@FunctionalInterface
+public interface Latency {
+
+    /**
+     * @return Delay of one request in nanoseconds
+     */
+    long sampleNanos();
+
+    static Latency none() {
+        return () -> 0;
+    }
+
+    static Latency fixed(Duration delay) {
+        long nanos = delay.toNanos();
+        return () -> nanos;
+    }
+
+    /**
+     * Uniform between min and max
+     */
+    static Latency uniform(Duration min, Duration max) {
+        long low = min.toNanos();
+        long high = max.toNanos();
+        if (high < low) {
+            throw new IllegalArgumentException("max latency is below min latency");
+        }
+        return () -> low + ThreadLocalRandom.current().nextLong(high - low + 1);
+    }
+
+    /**
+     * Log-normal with the given median and 99th percentile: a long right tail, as gateway latencies have
+     */
+    static Latency logNormal(Duration median, Duration p99) {
+        if (median.isNegative() || median.isZero() || p99.compareTo(median) < 0) {
+            throw new IllegalArgumentException("Log-normal latency needs 0 < median <= p99");
+        }
+        double mu = Math.log(median.toNanos());
+        // z of the 99th percentile of the standard normal distribution
+        double sigma = (Math.log(p99.toNanos()) - mu) / 2.3263478740408408;
+        return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+}
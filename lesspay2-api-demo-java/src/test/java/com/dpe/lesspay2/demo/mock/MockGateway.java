@@ -0,0 +1,610 @@
+package com.dpe.lesspay2.demo.mock;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.util.SignUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Mock Lesspay2 Gateway
+ *
+ * An in-process stand-in for the gateway, for integration and load tests without network access:
+ * - serves the endpoints of the examples: pay create-order / query-order, payout create-order,
+ *   batch create-order, query, bank, balance and triggerNotify
+ * - verifies x-auth-appid and x-auth-signature of every request with SignUtil.createSign
+ * - keeps orders in memory: they are created PENDING, settled SUCCEED or FAILED after settle-after,
+ *   and a signed webhook is then posted to their notify_url; payouts are debited from a balance
+ *   per currency and way_code, and failed ones credited back
+ * - injects latency (see {@link Latency}) and faults (see {@link Faults}), per path or for all paths
+ *
+ * Business error codes ({@link #SIGNATURE_ERROR}, ...) are the mock's own; {@link #ORDER_NOT_FOUND} is the
+ * default of lesspay2.api.retry.order-not-found-codes. The mock ships in the test-jar of this module.
+ */
+public class MockGateway implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MockGateway.class);
+
+    public static final String PAYIN_CREATE_PATH = "/api/global/v1/pay/create-order";
+    public static final String PAYIN_QUERY_PATH = "/api/global/v1/pay/query-order";
+    public static final String PAYOUT_CREATE_PATH = "/api/global/payout/create-order";
+    public static final String BATCH_PAYOUT_PATH = "/api/global/payout/batch/create-order";
+    public static final String PAYOUT_QUERY_PATH = "/api/global/payout/query";
+    public static final String PAYOUT_BANK_PATH = "/api/global/payout/bank";
+    public static final String PAYOUT_BALANCE_PATH = "/api/global/payout/balance";
+    public static final String TRIGGER_NOTIFY_PATH = "/api/global/payout/triggerNotify";
+
+    public static final int BAD_REQUEST = 40000;
+    public static final int SIGNATURE_ERROR = 40001;
+    public static final int DUPLICATE_REQUEST = 40002;
+    public static final int ORDER_NOT_FOUND = 40004;
+    public static final int INSUFFICIENT_BALANCE = 40010;
+    public static final int INJECTED_ERROR = 50000;
+
+    private final Map<String, String> merchants;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService settler;
+    private final HttpClient webhookClient;
+
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Faults> faults = new ConcurrentHashMap<>();
+    private volatile Duration settleAfter = Duration.ofSeconds(1);
+    private volatile double settleFailureRate;
+    private volatile BigDecimal defaultBalance = new BigDecimal("1000000000");
+    private volatile List<JSONObject> banks = List.of(
+            bank("BDO", "BDO Unibank", "BNORPHMM"),
+            bank("BPI", "Bank of the Philippine Islands", "BOPIPHMM"),
+            bank("MBTC", "Metropolitan Bank and Trust", "MBTCPHMM"));
+
+    /**
+     * Orders by pay_order_id
+     */
+    private final ConcurrentMap<String, Order> orders = new ConcurrentHashMap<>();
+
+    /**
+     * pay_order_id by type, AppId and request_id
+     */
+    private final ConcurrentMap<String, String> requestIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, BigDecimal> balances = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentMap<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final LongAdder webhooks = new LongAdder();
+
+    /**
+     * @param merchants AppSecret by AppId of the merchants the gateway accepts
+     */
+    public MockGateway(Map<String, String> merchants) throws IOException {
+        this.merchants = Map.copyOf(merchants);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newCachedThreadPool(daemon("lesspay-mock-gateway"));
+        this.settler = Executors.newSingleThreadScheduledExecutor(daemon("lesspay-mock-settle"));
+        this.webhookClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).executor(executor).build();
+        server.setExecutor(executor);
+        handle(PAYIN_CREATE_PATH, this::createPayin);
+        handle(PAYIN_QUERY_PATH, this::queryPayin);
+        handle(PAYOUT_CREATE_PATH, this::createPayout);
+        handle(BATCH_PAYOUT_PATH, this::createBatchPayout);
+        handle(PAYOUT_QUERY_PATH, (appId, body) -> find("payout", appId, body).view());
+        handle(PAYOUT_BANK_PATH, (appId, body) -> new JSONArray(new ArrayList<>(banks)));
+        handle(PAYOUT_BALANCE_PATH, this::balance);
+        handle(TRIGGER_NOTIFY_PATH, this::triggerNotify);
+    }
+
+    /**
+     * Start serving on a free port of 127.0.0.1
+     */
+    public MockGateway start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * @return Base URL to configure as lesspay2.api.base-url
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Set the latency of a path, or of every path without its own when path is null
+     */
+    public void setLatency(String path, Latency latency) {
+        latencies.put(path != null ? path : "", latency);
+    }
+
+    /**
+     * Set the faults of a path, or of every path without its own when path is null
+     */
+    public void setFaults(String path, Faults pathFaults) {
+        faults.put(path != null ? path : "", pathFaults);
+    }
+
+    /**
+     * Delay before a created order is settled and its webhook sent (default 1s)
+     */
+    public void setSettleAfter(Duration settleAfter) {
+        this.settleAfter = settleAfter;
+    }
+
+    /**
+     * Share of orders settled FAILED instead of SUCCEED (default 0)
+     */
+    public void setSettleFailureRate(double settleFailureRate) {
+        this.settleFailureRate = settleFailureRate;
+    }
+
+    /**
+     * Set the payout balance of a currency and way_code; others start at 1,000,000,000
+     */
+    public void setBalance(String currency, String wayCode, BigDecimal balance) {
+        balances.put(currency + "|" + wayCode, balance);
+    }
+
+    /**
+     * Set the bank list returned for every way_code and country
+     */
+    public void setBanks(List<JSONObject> banks) {
+        this.banks = List.copyOf(banks);
+    }
+
+    /**
+     * @return Current state of an order, or null if unknown
+     */
+    public JSONObject getOrder(String payOrderId) {
+        Order order = orders.get(payOrderId);
+        return order != null ? order.view() : null;
+    }
+
+    /**
+     * @return Orders created so far
+     */
+    public int getOrderCount() {
+        return orders.size();
+    }
+
+    /**
+     * @return Requests received on a path, rejected ones included
+     */
+    public long getRequestCount(String path) {
+        LongAdder count = requests.get(path);
+        return count != null ? count.sum() : 0;
+    }
+
+    /**
+     * @return Webhooks delivered with a 2xx response
+     */
+    public long getWebhookCount() {
+        return webhooks.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        settler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void handle(String path, Endpoint endpoint) {
+        server.createContext(path, exchange -> {
+            try (exchange) {
+                requests.computeIfAbsent(path, p -> new LongAdder()).increment();
+                byte[] raw = exchange.getRequestBody().readAllBytes();
+                sleep(latencies.getOrDefault(path, latencies.getOrDefault("", Latency.none())).sampleNanos());
+                Faults pathFaults = faults.getOrDefault(path, faults.getOrDefault("", Faults.NONE));
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                if (random.nextDouble() < pathFaults.getTimeoutRate()) {
+                    // Never answered: the client times out
+                    sleep(pathFaults.getHang().toNanos());
+                    return;
+                }
+                if (random.nextDouble() < pathFaults.getErrorRate()) {
+                    respond(exchange, 502, "<html><body>502 Bad Gateway</body></html>", "text/html");
+                    return;
+                }
+                if (random.nextDouble() < pathFaults.getRejectRate()) {
+                    respond(exchange, 200, envelope(INJECTED_ERROR, "injected error", null), "application/json");
+                    return;
+                }
+                String response = process(exchange, raw, endpoint);
+                if (random.nextDouble() < pathFaults.getLostResponseRate()) {
+                    // Processed, but the response never arrives
+                    sleep(pathFaults.getHang().toNanos());
+                    return;
+                }
+                respond(exchange, 200, response, "application/json");
+            } catch (IOException e) {
+                logger.debug("Mock gateway could not answer {}: {}", path, e.toString());
+            }
+        });
+    }
+
+    private String process(HttpExchange exchange, byte[] raw, Endpoint endpoint) {
+        String appId = exchange.getRequestHeaders().getFirst("x-auth-appid");
+        String secret = appId != null ? merchants.get(appId) : null;
+        String text = new String(raw, StandardCharsets.UTF_8);
+        JSONObject body;
+        try {
+            body = raw.length > 0 ? JSON.parseObject(text) : new JSONObject();
+        } catch (RuntimeException e) {
+            return envelope(BAD_REQUEST, "request body is not a JSON object", null);
+        }
+        String signature = exchange.getRequestHeaders().getFirst("x-auth-signature");
+        if (secret == null || signature == null || body == null || !MessageDigest.isEqual(
+                sign(text, secret).getBytes(StandardCharsets.US_ASCII), signature.getBytes(StandardCharsets.US_ASCII))) {
+            return envelope(SIGNATURE_ERROR, "signature verification failed", null);
+        }
+        try {
+            return envelope(0, "success", endpoint.handle(appId, body));
+        } catch (MockException e) {
+            return envelope(e.code, e.getMessage(), null);
+        }
+    }
+
+    private Object createPayin(String appId, JSONObject body) {
+        String requestId = required(body, "request_id");
+        Order order = create("payin", "PI", appId, body, requestId, null, null, (payOrderId, data) -> {
+            data.put("target_amount", body.getString("target_amount"));
+            data.put("target_currency", body.getString("target_currency"));
+            data.put("pay_url", getBaseUrl() + "/mock/pay/" + payOrderId);
+        });
+        settleLater(order);
+        return order.view();
+    }
+
+    private Object queryPayin(String appId, JSONObject body) {
+        if (body.getString("pay_order_id") != null || body.getString("request_id") != null) {
+            return find("payin", appId, body).view();
+        }
+        long start = body.getLongValue("start_time");
+        long end = body.containsKey("end_time") ? body.getLongValue("end_time") : Long.MAX_VALUE;
+        int page = Math.max(1, body.getIntValue("page"));
+        int pageSize = body.containsKey("page_size") ? Math.min(1000, Math.max(1, body.getIntValue("page_size"))) : 20;
+        List<Order> matching = new ArrayList<>();
+        for (Order order : orders.values()) {
+            if (order.type.equals("payin") && order.appId.equals(appId) && order.createdAt >= start && order.createdAt <= end) {
+                matching.add(order);
+            }
+        }
+        matching.sort(Comparator.comparingLong((Order o) -> o.createdAt).thenComparing(o -> o.payOrderId));
+        JSONArray list = new JSONArray();
+        for (int i = (page - 1) * pageSize; i < Math.min(matching.size(), page * pageSize); i++) {
+            list.add(matching.get(i).view());
+        }
+        JSONObject result = new JSONObject();
+        result.put("total", matching.size());
+        result.put("list", list);
+        return result;
+    }
+
+    private Object createPayout(String appId, JSONObject body) {
+        String requestId = required(body, "request_id");
+        BigDecimal amount = amount(body, "amount");
+        JSONObject detail = new JSONObject();
+        detail.put("mch_order_id", requestId);
+        detail.put("amount", amount.toPlainString());
+        return createPayoutOrder(appId, body, requestId, amount, List.of(detail));
+    }
+
+    private Object createBatchPayout(String appId, JSONObject body) {
+        String requestId = required(body, "request_id");
+        JSONArray details = body.getJSONArray("payout_order_details");
+        if (details == null || details.isEmpty()) {
+            throw new MockException(BAD_REQUEST, "payout_order_details is required");
+        }
+        BigDecimal total = BigDecimal.ZERO;
+        List<JSONObject> orderDetails = new ArrayList<>();
+        for (int i = 0; i < details.size(); i++) {
+            JSONObject detail = details.getJSONObject(i);
+            BigDecimal amount = amount(detail, "amount");
+            total = total.add(amount);
+            JSONObject orderDetail = new JSONObject();
+            orderDetail.put("mch_order_id", detail.getString("mch_order_id"));
+            orderDetail.put("amount", amount.toPlainString());
+            orderDetails.add(orderDetail);
+        }
+        if (body.getString("total_amount") != null && amount(body, "total_amount").compareTo(total) != 0) {
+            throw new MockException(BAD_REQUEST, "total_amount does not match the details");
+        }
+        return createPayoutOrder(appId, body, requestId, total, orderDetails);
+    }
+
+    private Object createPayoutOrder(String appId, JSONObject body, String requestId, BigDecimal amount,
+                                     List<JSONObject> details) {
+        String account = body.getString("currency") + "|" + body.getString("way_code");
+        // Debit first; a duplicate request_id gives it back below
+        boolean[] debited = {false};
+        balances.compute(account, (key, balance) -> {
+            BigDecimal current = balance != null ? balance : defaultBalance;
+            if (current.compareTo(amount) < 0) {
+                return current;
+            }
+            debited[0] = true;
+            return current.subtract(amount);
+        });
+        if (!debited[0]) {
+            throw new MockException(INSUFFICIENT_BALANCE, "insufficient balance");
+        }
+        Order order;
+        try {
+            order = create("payout", "PO", appId, body, requestId, account, amount, (payOrderId, data) -> {
+                data.put("currency", body.getString("currency"));
+                data.put("total_amount", amount.toPlainString());
+                data.put("decimal_places", 2);
+                JSONArray orderDetails = new JSONArray();
+                for (int i = 0; i < details.size(); i++) {
+                    JSONObject detail = details.get(i);
+                    detail.put("payout_order_detail_id", payOrderId + "-" + (i + 1));
+                    detail.put("status", "PENDING");
+                    orderDetails.add(detail);
+                }
+                data.put("details", orderDetails);
+            });
+        } catch (MockException e) {
+            balances.merge(account, amount, BigDecimal::add);
+            throw e;
+        }
+        settleLater(order);
+        return order.view();
+    }
+
+    private Object balance(String appId, JSONObject body) {
+        String currency = required(body, "currency");
+        String wayCode = required(body, "way_code");
+        JSONObject result = new JSONObject();
+        result.put("currency", currency);
+        result.put("way_code", wayCode);
+        result.put("available_balance", balances.getOrDefault(currency + "|" + wayCode, defaultBalance).toPlainString());
+        return result;
+    }
+
+    private Object triggerNotify(String appId, JSONObject body) {
+        Order order = find("payout", appId, body);
+        JSONObject notification = order.view();
+        sendWebhook(order, notification);
+        return notification;
+    }
+
+    /**
+     * Build an order and publish it once its data is complete; from then on it is only changed under its lock
+     *
+     * @param account Balance debited by a payout, null for a payin
+     * @param fields  Adds the fields of the order type, given the pay_order_id and the data
+     */
+    private Order create(String type, String prefix, String appId, JSONObject body, String requestId,
+                         String account, BigDecimal amount, BiConsumer<String, JSONObject> fields) {
+        String payOrderId = prefix + System.currentTimeMillis() + String.format("%06d", sequence.incrementAndGet() % 1_000_000);
+        if (requestIds.putIfAbsent(type + "|" + appId + "|" + requestId, payOrderId) != null) {
+            throw new MockException(DUPLICATE_REQUEST, "duplicate request_id: " + requestId);
+        }
+        Order order = new Order(type, appId, payOrderId, System.currentTimeMillis(), body.getString("notify_url"),
+                account, amount);
+        order.data.put("pay_order_id", payOrderId);
+        order.data.put("request_id", requestId);
+        order.data.put("way_code", body.getString("way_code"));
+        order.data.put("order_status", "PENDING");
+        order.data.put("created_at", order.createdAt);
+        fields.accept(payOrderId, order.data);
+        orders.put(payOrderId, order);
+        return order;
+    }
+
+    private Order find(String type, String appId, JSONObject body) {
+        String payOrderId = body.getString("pay_order_id");
+        if (payOrderId == null && body.getString("request_id") != null) {
+            payOrderId = requestIds.get(type + "|" + appId + "|" + body.getString("request_id"));
+        }
+        Order order = payOrderId != null ? orders.get(payOrderId) : null;
+        if (order == null || !order.type.equals(type) || !order.appId.equals(appId)) {
+            throw new MockException(ORDER_NOT_FOUND, "order not found");
+        }
+        return order;
+    }
+
+    private void settleLater(Order order) {
+        settler.schedule(() -> {
+            boolean failed = ThreadLocalRandom.current().nextDouble() < settleFailureRate;
+            String status = failed ? "FAILED" : "SUCCEED";
+            synchronized (order) {
+                order.data.put("order_status", status);
+                JSONArray details = order.data.getJSONArray("details");
+                if (details != null) {
+                    for (int i = 0; i < details.size(); i++) {
+                        details.getJSONObject(i).put("status", status);
+                    }
+                }
+                if (failed) {
+                    order.data.put("fail_reason", "mock settlement failure");
+                }
+            }
+            if (failed && order.account != null) {
+                balances.merge(order.account, order.amount, BigDecimal::add);
+            }
+            sendWebhook(order, order.view());
+        }, settleAfter.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private void sendWebhook(Order order, JSONObject notification) {
+        if (order.notifyUrl == null || order.notifyUrl.isEmpty()) {
+            return;
+        }
+        String payload = notification.toJSONString();
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(order.notifyUrl))
+                    .timeout(Duration.ofSeconds(10))
+                    .header("Content-Type", "application/json")
+                    .header("x-auth-appid", order.appId)
+                    .header("X-Auth-Signature", sign(payload, merchants.get(order.appId)))
+                    .POST(HttpRequest.BodyPublishers.ofString(payload))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            logger.debug("Mock gateway cannot notify {}: {}", order.notifyUrl, e.toString());
+            return;
+        }
+        webhookClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            if (response != null && response.statusCode() / 100 == 2) {
+                webhooks.increment();
+            } else {
+                logger.debug("Mock webhook to {} failed: {}", order.notifyUrl, error != null ? error.toString() : response.statusCode());
+            }
+        });
+    }
+
+    /**
+     * Signature of a JSON body, as merchants compute it with SignUtil.createSign
+     */
+    private static String sign(String body, String secret) {
+        // createSign rewrites empty strings of its argument, so it gets its own copy
+        JSONObject parameters = body.isEmpty() ? new JSONObject() : JSON.parseObject(body);
+        return SignUtil.createSign(parameters, secret);
+    }
+
+    private static String envelope(int code, String msg, Object data) {
+        JSONObject envelope = new JSONObject(true);
+        envelope.put("code", code);
+        envelope.put("msg", msg);
+        if (data != null) {
+            envelope.put("data", data);
+        }
+        return envelope.toJSONString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body, String contentType) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String required(JSONObject body, String name) {
+        String value = body.getString(name);
+        if (value == null || value.isEmpty()) {
+            throw new MockException(BAD_REQUEST, name + " is required");
+        }
+        return value;
+    }
+
+    private static BigDecimal amount(JSONObject body, String name) {
+        try {
+            BigDecimal amount = new BigDecimal(required(body, name));
+            if (amount.signum() <= 0) {
+                throw new MockException(BAD_REQUEST, name + " must be positive");
+            }
+            return amount;
+        } catch (NumberFormatException e) {
+            throw new MockException(BAD_REQUEST, name + " is not a number");
+        }
+    }
+
+    private static JSONObject bank(String code, String name, String swift) {
+        JSONObject bank = new JSONObject();
+        bank.put("bank_code", code);
+        bank.put("bank_name", name);
+        bank.put("bank_swift_code", swift);
+        return bank;
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        Object handle(String appId, JSONObject body);
+    }
+
+    private static final class MockException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int code;
+
+        private MockException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    private static final class Order {
+
+        private final String type;
+        private final String appId;
+        private final String payOrderId;
+        private final long createdAt;
+        private final String notifyUrl;
+        private final String account;
+        private final BigDecimal amount;
+
+        /**
+         * Complete before the order is published, then guarded by the order's lock
+         */
+        private final JSONObject data = new JSONObject(true);
+
+        private Order(String type, String appId, String payOrderId, long createdAt, String notifyUrl,
+                      String account, BigDecimal amount) {
+            this.type = type;
+            this.appId = appId;
+            this.payOrderId = payOrderId;
+            this.createdAt = createdAt;
+            this.notifyUrl = notifyUrl;
+            this.account = account;
+            this.amount = amount;
+        }
+
+        /**
+         * @return Deep copy of the order, safe to serialize while it settles
+         */
+        private synchronized JSONObject view() {
+            return JSON.parseObject(data.toJSONString());
+        }
+    }
+}
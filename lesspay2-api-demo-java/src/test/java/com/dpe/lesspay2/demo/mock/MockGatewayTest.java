@@ -0,0 +1,157 @@
+package com.dpe.lesspay2.demo.mock;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.client.HttpClients;
+import com.dpe.lesspay2.demo.client.LesspayApiClient;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.retry.CreateOrderRetrier;
+import com.dpe.lesspay2.demo.webhook.WebhookVerifier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The mock gateway must accept the client's signatures, keep order state and sign webhooks the verifier accepts
+ */
+public class MockGatewayTest {
+
+    private MockGateway gateway;
+    private ApiConfig apiConfig;
+    private OkHttpClient httpClient;
+    private LesspayApiClient apiClient;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        gateway = new MockGateway(Map.of(GatewayStub.APP_ID, GatewayStub.APP_SECRET)).start();
+        apiConfig = new ApiConfig();
+        apiConfig.setBaseUrl(gateway.getBaseUrl());
+        apiConfig.setAppId(GatewayStub.APP_ID);
+        apiConfig.setAppSecret(GatewayStub.APP_SECRET);
+        apiConfig.getHttp().getTimeouts().setRead(Duration.ofMillis(500));
+        apiConfig.getRetry().setInitialBackoff(Duration.ofMillis(20));
+        httpClient = HttpClients.create(apiConfig.getHttp());
+        apiClient = new LesspayApiClient(apiConfig, httpClient, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        HttpClients.shutdown(httpClient);
+        gateway.close();
+    }
+
+    @Test
+    public void testPayoutDebitsBalanceAndRejectsDuplicates() throws IOException {
+        gateway.setBalance("PHP", "GCASH", new BigDecimal("100.00"));
+        ApiResponseDTO<JSONObject> created = apiClient.post(MockGateway.PAYOUT_CREATE_PATH, payout("R1", "60.00"), JSONObject.class);
+        assertEquals(0, created.getCode());
+        assertEquals("PENDING", created.getData().getString("order_status"));
+
+        ApiResponseDTO<JSONObject> query = apiClient.post(MockGateway.PAYOUT_QUERY_PATH, Map.of("request_id", "R1"), JSONObject.class);
+        assertEquals(created.getData().getString("pay_order_id"), query.getData().getString("pay_order_id"));
+
+        assertEquals(MockGateway.DUPLICATE_REQUEST, apiClient.post(MockGateway.PAYOUT_CREATE_PATH, payout("R1", "10.00"), JSONObject.class).getCode());
+        assertEquals(MockGateway.INSUFFICIENT_BALANCE, apiClient.post(MockGateway.PAYOUT_CREATE_PATH, payout("R2", "60.00"), JSONObject.class).getCode());
+        ApiResponseDTO<JSONObject> balance = apiClient.post(MockGateway.PAYOUT_BALANCE_PATH,
+                Map.of("currency", "PHP", "way_code", "GCASH"), JSONObject.class);
+        assertEquals("40.00", balance.getData().getString("available_balance"));
+    }
+
+    @Test
+    public void testRejectsWrongSignature() throws IOException {
+        apiConfig.setAppSecret("WRONG_SECRET");
+        LesspayApiClient wrongClient = new LesspayApiClient(apiConfig, httpClient, new SimpleMeterRegistry());
+        ApiResponseDTO<JSONObject> response = wrongClient.post(MockGateway.PAYOUT_CREATE_PATH, payout("R3", "1.00"), JSONObject.class);
+        assertEquals(MockGateway.SIGNATURE_ERROR, response.getCode());
+        assertEquals(0, gateway.getOrderCount());
+    }
+
+    @Test
+    public void testSettledPayinSendsVerifiableWebhook() throws Exception {
+        BlockingQueue<String[]> received = new LinkedBlockingQueue<>();
+        GatewayStub merchant = new GatewayStub().handle("/notify", exchange -> {
+            received.add(new String[]{new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8),
+                    exchange.getRequestHeaders().getFirst("X-Auth-Signature")});
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        try {
+            gateway.setSettleAfter(Duration.ofMillis(50));
+            Map<String, Object> order = new HashMap<>();
+            order.put("request_id", "PI-1");
+            order.put("target_amount", "12.50");
+            order.put("target_currency", "USD");
+            order.put("way_code", "CARD");
+            order.put("notify_url", merchant.getBaseUrl() + "/notify");
+            String payOrderId = apiClient.post(MockGateway.PAYIN_CREATE_PATH, order, JSONObject.class).getData().getString("pay_order_id");
+
+            String[] webhook = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(webhook);
+            JSONObject notification = new WebhookVerifier(apiConfig).verifyPayin(webhook[0], webhook[1]);
+            assertNotNull(notification);
+            assertEquals(payOrderId, notification.getString("pay_order_id"));
+            assertEquals("SUCCEED", notification.getString("order_status"));
+            assertEquals("SUCCEED", gateway.getOrder(payOrderId).getString("order_status"));
+        } finally {
+            merchant.close();
+        }
+    }
+
+    @Test
+    public void testLostResponseIsFoundByRetrier() throws Exception {
+        Faults lost = new Faults();
+        lost.setLostResponseRate(1.0);
+        lost.setHang(Duration.ofSeconds(2));
+        gateway.setFaults(MockGateway.PAYOUT_CREATE_PATH, lost);
+
+        assertThrows(IOException.class, () -> apiClient.post(MockGateway.PAYOUT_CREATE_PATH, payout("R4", "1.00"), JSONObject.class));
+        assertEquals(1, gateway.getOrderCount());
+
+        ApiResponseDTO<JSONObject> response = new CreateOrderRetrier(apiConfig, apiClient)
+                .submit(MockGateway.PAYOUT_CREATE_PATH, payout("R5", "1.00")).get(10, TimeUnit.SECONDS);
+        assertEquals("R5", response.getData().getString("request_id"));
+        assertEquals(2, gateway.getOrderCount());
+        assertEquals(1, gateway.getRequestCount(MockGateway.PAYOUT_QUERY_PATH));
+    }
+
+    @Test
+    public void testLogNormalLatencyPercentiles() {
+        Latency latency = Latency.logNormal(Duration.ofMillis(20), Duration.ofMillis(200));
+        long[] samples = new long[20_000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = latency.sampleNanos();
+        }
+        Arrays.sort(samples);
+        double median = samples[samples.length / 2] / 1e6;
+        double p99 = samples[samples.length * 99 / 100] / 1e6;
+        assertTrue(median > 17 && median < 23, "median " + median);
+        assertTrue(p99 > 150 && p99 < 260, "p99 " + p99);
+    }
+
+    private static Map<String, Object> payout(String requestId, String amount) {
+        Map<String, Object> payout = new HashMap<>();
+        payout.put("request_id", requestId);
+        payout.put("amount", amount);
+        payout.put("currency", "PHP");
+        payout.put("way_code", "GCASH");
+        return payout;
+    }
+}
@@ -0,0 +1,140 @@
+package com.dpe.lesspay2.demo.outbox;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Payouts must be journaled before they are sent, and unresolved ones reconciled after a restart
+ */
+public class PayoutOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    private GatewayStub gateway;
+    private ApiConfig apiConfig;
+    private final Set<String> created = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        gateway = new GatewayStub().json(PayoutOutbox.PAYOUT_CREATE_PATH, body -> {
+            String requestId = body.getString("request_id");
+            created.add(requestId);
+            return "{\"code\":0,\"msg\":\"success\",\"data\":{\"pay_order_id\":\"P-" + requestId + "\"}}";
+        }).json("/api/global/payout/query", body -> {
+            String requestId = body.getString("request_id");
+            if (requestId.startsWith("T")) {
+                return "{\"code\":42900,\"msg\":\"too many requests\"}";
+            }
+            return created.contains(requestId)
+                    ? "{\"code\":0,\"msg\":\"success\",\"data\":{\"pay_order_id\":\"P-" + requestId + "\",\"order_status\":\"SUCCEED\"}}"
+                    : "{\"code\":40004,\"msg\":\"order not found\"}";
+        });
+        apiConfig = gateway.getApiConfig();
+        apiConfig.getOutbox().setDirectory(directory.toString());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        gateway.close();
+    }
+
+    @Test
+    public void testSubmitSettlesConcurrentPayouts() throws Exception {
+        PayoutOutbox outbox = outbox();
+        try {
+            List<CompletableFuture<ApiResponseDTO<JSONObject>>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(outbox.submit(PayoutOutbox.PAYOUT_CREATE_PATH, Map.of("request_id", "R" + i, "amount", "10.00")));
+            }
+            for (CompletableFuture<ApiResponseDTO<JSONObject>> future : futures) {
+                assertEquals(0, future.get(10, TimeUnit.SECONDS).getCode());
+            }
+            assertEquals(0, outbox.getPendingCount());
+            assertThrows(IllegalArgumentException.class, () -> outbox.submit(PayoutOutbox.PAYOUT_CREATE_PATH, Map.of("amount", "1")));
+        } finally {
+            outbox.destroy();
+        }
+        // Every submission has its outcome in the journal
+        PayoutOutbox reopened = outbox();
+        try {
+            assertEquals(0, reopened.recover().get(10, TimeUnit.SECONDS).size());
+        } finally {
+            reopened.destroy();
+        }
+    }
+
+    @Test
+    public void testRecoveryAfterCrash() throws Exception {
+        // A process that journaled three payouts and died; only R1 reached the gateway
+        OutboxJournal journal = new OutboxJournal(directory, 1 << 16, 0, () -> 0, record -> {
+        });
+        journal.append(PayoutOutbox.SUBMIT, "R1", PayoutOutbox.PAYOUT_CREATE_PATH, "{\"request_id\":\"R1\"}");
+        journal.append(PayoutOutbox.SUBMIT, "T3", PayoutOutbox.PAYOUT_CREATE_PATH, "{\"request_id\":\"T3\"}");
+        journal.sync(journal.append(PayoutOutbox.SUBMIT, "R2", PayoutOutbox.PAYOUT_CREATE_PATH, "{\"request_id\":\"R2\"}"))
+                .get(5, TimeUnit.SECONDS);
+        journal.close();
+        created.add("R1");
+
+        PayoutOutbox outbox = outbox();
+        try {
+            Map<String, PayoutOutbox.Recovery> recoveries = outbox.recover().get(10, TimeUnit.SECONDS).stream()
+                    .collect(Collectors.toMap(PayoutOutbox.Recovery::getRequestId, r -> r));
+            assertEquals(PayoutOutbox.Status.CREATED, recoveries.get("R1").getStatus());
+            assertEquals("SUCCEED", recoveries.get("R1").getOrder().getString("order_status"));
+            assertEquals(PayoutOutbox.Status.NOT_FOUND, recoveries.get("R2").getStatus());
+            assertEquals("{\"request_id\":\"R2\"}", recoveries.get("R2").getBody());
+            // Throttled: not an answer about the order, it stays pending
+            assertEquals(PayoutOutbox.Status.UNKNOWN, recoveries.get("T3").getStatus());
+            assertEquals(1, outbox.getPendingCount());
+        } finally {
+            outbox.destroy();
+        }
+    }
+
+    @Test
+    public void testSegmentsRollAndCompact() throws Exception {
+        apiConfig.getOutbox().setSegmentSize(DataSize.ofKilobytes(1));
+        PayoutOutbox outbox = outbox();
+        try {
+            for (int i = 0; i < 40; i++) {
+                outbox.submit(PayoutOutbox.PAYOUT_CREATE_PATH, Map.of("request_id", "S" + i)).get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            outbox.destroy();
+        }
+        // Resolved segments are deleted as new ones start
+        try (Stream<Path> files = Files.list(directory)) {
+            long segments = files.count();
+            assertTrue(segments <= 2, "segments " + segments);
+        }
+    }
+
+    private PayoutOutbox outbox() {
+        return new PayoutOutbox(apiConfig, gateway.client());
+    }
+}
@@ -0,0 +1,172 @@
+package com.dpe.lesspay2.demo.payout;
+
+import com.alibaba.fastjson.JSON;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reservations must never overdraw, webhooks must credit failures once, and resync must keep in-flight reservations
+ */
+public class BalanceLedgerTest {
+
+    private final AtomicReference<String> balance = new AtomicReference<>("1000.00");
+    private final AtomicInteger balanceCalls = new AtomicInteger();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private GatewayStub gateway;
+    private BalanceLedger ledger;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        gateway = new GatewayStub().json(BalanceLedger.PAYOUT_BALANCE_PATH, body -> {
+            balanceCalls.incrementAndGet();
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "{\"code\":0,\"msg\":\"success\",\"data\":{\"currency\":\"PHP\",\"available_balance\":\""
+                    + balance.get() + "\"}}";
+        });
+        ApiConfig apiConfig = gateway.getApiConfig();
+        apiConfig.getBalance().setResyncInterval(Duration.ZERO);
+        ledger = new BalanceLedger(apiConfig, gateway.client());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ledger.destroy();
+        gateway.close();
+    }
+
+    @Test
+    public void testReserveAndWebhooks() throws Exception {
+        assertEquals(BalanceLedger.ReserveResult.NOT_SEEDED, ledger.reserve("R0", "PHP", "KORAPAY_PAYOUT", "1.00"));
+        assertEquals(new BigDecimal("1000.0000"), ledger.seed("PHP", "KORAPAY_PAYOUT").get(10, TimeUnit.SECONDS));
+
+        assertEquals(BalanceLedger.ReserveResult.RESERVED, ledger.reserve("R1", "PHP", "KORAPAY_PAYOUT", "600.00"));
+        assertEquals(BalanceLedger.ReserveResult.INSUFFICIENT_FUNDS, ledger.reserve("R2", "PHP", "KORAPAY_PAYOUT", "400.01"));
+        assertEquals(BalanceLedger.ReserveResult.RESERVED, ledger.reserve("R2", "PHP", "KORAPAY_PAYOUT", "300.00"));
+        assertThrows(IllegalArgumentException.class, () -> ledger.reserve("R2", "PHP", "KORAPAY_PAYOUT", "1.00"));
+        assertEquals(new BigDecimal("100.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+
+        // Failed order: credited once
+        ledger.onPayoutWebhook(JSON.parseObject("{\"request_id\":\"R1\",\"order_status\":\"PENDING_PAY\"}"));
+        assertEquals(new BigDecimal("100.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+        ledger.onPayoutWebhook(JSON.parseObject("{\"request_id\":\"R1\",\"order_status\":\"FAILED\"}"));
+        ledger.onPayoutWebhook(JSON.parseObject("{\"request_id\":\"R1\",\"order_status\":\"FAILED\"}"));
+        assertEquals(new BigDecimal("700.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+
+        // Partial success: failed details credited
+        ledger.onPayoutWebhook(JSON.parseObject("""
+                {"request_id": "R2", "order_status": "PARTIAL_SUCCESS", "details": [
+                  {"mch_order_id": "M1", "amount": "100.00", "status": "Succeeded"},
+                  {"mch_order_id": "M2", "amount": "200.00", "status": "Failed"}
+                ]}
+                """));
+        assertEquals(new BigDecimal("900.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+
+        assertEquals(BalanceLedger.ReserveResult.RESERVED, ledger.reserve("R3", "PHP", "KORAPAY_PAYOUT", "50"));
+        assertTrue(ledger.release("R3"));
+        assertFalse(ledger.release("R3"));
+        assertEquals(new BigDecimal("900.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+        assertNull(ledger.getAvailable("IDR", "AWEPAY_PAYOUT"));
+        assertThrows(IllegalArgumentException.class, () -> ledger.reserve("R4", "PHP", "KORAPAY_PAYOUT", "0.00001"));
+        assertThrows(IllegalArgumentException.class, () -> ledger.reserve("R4", "PHP", "KORAPAY_PAYOUT", "-1"));
+    }
+
+    @Test
+    public void testConcurrentReservations() throws Exception {
+        ledger.seed("PHP", "KORAPAY_PAYOUT").get(10, TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                String requestId = "R" + i;
+                tasks.add(() -> ledger.reserve(requestId, "PHP", "KORAPAY_PAYOUT", "0.70") == BalanceLedger.ReserveResult.RESERVED);
+            }
+            int reserved = 0;
+            for (Future<Boolean> result : executor.invokeAll(tasks)) {
+                reserved += result.get() ? 1 : 0;
+            }
+            // 1000.00 / 0.70
+            assertEquals(1428, reserved);
+            assertEquals(new BigDecimal("0.4000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResync() throws Exception {
+        ledger.seed("PHP", "KORAPAY_PAYOUT").get(10, TimeUnit.SECONDS);
+        ledger.reserve("R1", "PHP", "KORAPAY_PAYOUT", "100.00");
+        assertTrue(ledger.acknowledge("R1"));
+        // The gateway has applied R1 and a deposit of 50.00
+        balance.set("950.00");
+        ledger.resync().get(10, TimeUnit.SECONDS);
+        assertEquals(new BigDecimal("950.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+
+        // R2 is still queued on our side: the gateway balance does not have it, every resync keeps it deducted
+        ledger.reserve("R2", "PHP", "KORAPAY_PAYOUT", "200.00");
+        ledger.resync().get(10, TimeUnit.SECONDS);
+        assertEquals(new BigDecimal("750.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+        ledger.resync().get(10, TimeUnit.SECONDS);
+        assertEquals(new BigDecimal("750.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+
+        // Created: now in the gateway balance
+        ledger.acknowledge("R2");
+        balance.set("750.00");
+        ledger.resync().get(10, TimeUnit.SECONDS);
+        assertEquals(new BigDecimal("750.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+
+        // Rejected before it was created
+        ledger.reserve("R3", "PHP", "KORAPAY_PAYOUT", "50.00");
+        assertTrue(ledger.release("R3"));
+        ledger.resync().get(10, TimeUnit.SECONDS);
+        assertEquals(new BigDecimal("750.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+        assertFalse(ledger.acknowledge("R3"));
+    }
+
+    @Test
+    public void testCreditDuringResync() throws Exception {
+        ledger.seed("PHP", "KORAPAY_PAYOUT").get(10, TimeUnit.SECONDS);
+        ledger.reserve("R1", "PHP", "KORAPAY_PAYOUT", "600.00");
+        ledger.acknowledge("R1");
+
+        gate = new CountDownLatch(1);
+        CompletableFuture<Void> resync = ledger.resync();
+        while (balanceCalls.get() < 2) {
+            Thread.sleep(5);
+        }
+        // R1 fails while the balance request is in flight; the gateway refunded it before answering
+        balance.set("1000.00");
+        ledger.onPayoutWebhook(JSON.parseObject("{\"request_id\":\"R1\",\"order_status\":\"FAILED\"}"));
+        assertEquals(new BigDecimal("1000.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+        gate.countDown();
+        resync.get(10, TimeUnit.SECONDS);
+        assertEquals(new BigDecimal("1000.0000"), ledger.getAvailable("PHP", "KORAPAY_PAYOUT"));
+    }
+}
@@ -0,0 +1,134 @@
+package com.dpe.lesspay2.demo.payout;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.dto.PayoutBankDTO;
+import com.dpe.lesspay2.demo.dto.PayoutBankInfoDTO;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lookups must be indexed; reads must never wait and serve the old list while it is refreshed
+ */
+public class BankDirectoryTest {
+
+    private static final String BANKS = """
+            [
+              {"bank_code": "BDO", "bank_name": "BDO Unibank", "swift_code": "BNORPHMM"},
+              {"bank_code": "BPI", "bank_name": "Bank of the Philippine Islands", "swift_code": "BOPIPHMMXXX"},
+              {"bank_code": "MBTC", "bank_name": "Metropolitan Bank and Trust", "swift_code": "MBTCPHMM"},
+              {"code": "BOC", "name": "Bank of Commerce"}
+            ]
+            """;
+
+    @Test
+    public void testLookups() {
+        BankList banks = new BankList(JSON.parseArray(BANKS, PayoutBankInfoDTO.class), 1L);
+
+        assertTrue(banks.isLoaded());
+        assertEquals("BDO Unibank", banks.byCode("bdo").getBankName());
+        assertEquals("Bank of Commerce", banks.byCode("BOC").getBankName());
+        assertNull(banks.byCode("XYZ"));
+        assertEquals("BPI", banks.bySwift("BOPIPHMM").getBankCode());
+        assertEquals("BPI", banks.bySwift("bopiphmmxxx").getBankCode());
+        assertEquals("BDO", banks.bySwift("BNORPHMM123").getBankCode());
+        assertEquals(List.of("BOC", "BPI"), banks.byNamePrefix("bank of").stream().map(PayoutBankInfoDTO::getBankCode).toList());
+        // Longer than the indexed prefixes
+        assertEquals(List.of("BPI"), banks.byNamePrefix("Bank of the Phil").stream().map(PayoutBankInfoDTO::getBankCode).toList());
+        assertEquals(4, banks.byNamePrefix("").size());
+        assertTrue(banks.byNamePrefix("Citi").isEmpty());
+        assertFalse(BankList.NOT_LOADED.isLoaded());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicReference<String> data = new AtomicReference<>(BANKS);
+        AtomicReference<CountDownLatch> gate = new AtomicReference<>(new CountDownLatch(0));
+        GatewayStub gateway = new GatewayStub().handle(BankDirectory.PAYOUT_BANK_PATH, exchange -> {
+            calls.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            try {
+                gate.get().await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            GatewayStub.respond(exchange, 200, data.get() != null
+                    ? "{\"code\":0,\"msg\":\"success\",\"data\":{\"list\":" + data.get() + "}}"
+                    : "{\"code\":500,\"msg\":\"channel unavailable\"}");
+        });
+        ApiConfig apiConfig = gateway.getApiConfig();
+        apiConfig.getBanks().setRefreshAfter(Duration.ofMillis(500));
+        apiConfig.getBanks().setRetryAfter(Duration.ofMillis(500));
+        try {
+            AtomicLong clock = new AtomicLong();
+            BankDirectory directory = new BankDirectory(apiConfig, gateway.client(), clock::get);
+            PayoutBankDTO query = new PayoutBankDTO();
+            query.setWayCode("TAZAPAY_PAYOUT");
+            query.setBankCountryCode("PH");
+            query.setCurrency("PHP");
+
+            // Cold: answered at once, loaded in the background
+            gate.set(new CountDownLatch(1));
+            assertEquals(BankDirectory.Validation.NOT_LOADED, directory.validate(query, "BDO"));
+            // Taken while the refresh is held, so it joins it instead of starting another
+            CompletableFuture<BankList> loading = directory.load(query);
+            gate.get().countDown();
+            BankList first = loading.get(10, TimeUnit.SECONDS);
+            assertEquals(4, first.getBanks().size());
+            assertEquals(BankDirectory.Validation.VALID, directory.validate(query, "BDO"));
+            assertEquals(BankDirectory.Validation.UNKNOWN_BANK, directory.validate(query, "XYZ"));
+            assertEquals(1, calls.get());
+
+            // Stale: the old list is served while the refresh is held back
+            clock.addAndGet(Duration.ofMillis(600).toNanos());
+            data.set("[{\"bank_code\": \"UBP\", \"bank_name\": \"UnionBank\"}]");
+            gate.set(new CountDownLatch(1));
+            assertSame(first, directory.get(query));
+            assertSame(first, directory.get(query));
+            loading = directory.load(query);
+            gate.get().countDown();
+            BankList second = loading.get(10, TimeUnit.SECONDS);
+            assertEquals("UnionBank", second.byCode("UBP").getBankName());
+            assertEquals(2, calls.get());
+
+            // Not due yet: reads do not refresh
+            directory.get(query);
+            assertEquals(2, calls.get());
+
+            // A failed refresh keeps the list
+            clock.addAndGet(Duration.ofMillis(600).toNanos());
+            data.set(null);
+            assertSame(second, directory.load(query).get(10, TimeUnit.SECONDS));
+            assertSame(second, directory.get(query));
+        } finally {
+            gateway.close();
+        }
+    }
+
+    @Test
+    public void testParse() {
+        JSONObject response = JSON.parseObject("{\"code\":0,\"data\":" + BANKS + "}");
+        ApiResponseDTO<Object> envelope = new ApiResponseDTO<>();
+        envelope.setCode(0);
+        envelope.setData(response.get("data"));
+        assertEquals(4, BankDirectory.parse(envelope).size());
+    }
+}
@@ -0,0 +1,134 @@
+package com.dpe.lesspay2.demo.payout;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO.PayoutOrderDetailDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Splitting must keep amounts exact and ids deterministic; submission must respect the concurrency bound
+ */
+public class BatchPayoutSubmitterTest {
+
+    @Test
+    public void testSplit() {
+        CreatePayoutOrderDTO batch = batch(7);
+        List<CreatePayoutOrderDTO> chunks = BatchPayoutSubmitter.split(batch, 3);
+
+        assertEquals(3, chunks.size());
+        assertEquals(List.of("B1-1", "B1-2", "B1-3"), chunks.stream().map(CreatePayoutOrderDTO::getRequestId).toList());
+        // 0.10 + 0.20 + 0.30, 0.40 + 0.50 + 0.60, 0.70
+        assertEquals(List.of("0.60", "1.50", "0.70"), chunks.stream().map(CreatePayoutOrderDTO::getTotalAmount).toList());
+        assertEquals(List.of(3, 3, 1), chunks.stream().map(c -> c.getPayoutOrderDetails().size()).toList());
+        assertEquals("PHP", chunks.get(2).getCurrency());
+        assertEquals("M7", chunks.get(2).getPayoutOrderDetails().get(0).getMchOrderId());
+        assertEquals(JSON.toJSONString(chunks), JSON.toJSONString(BatchPayoutSubmitter.split(batch(7), 3)));
+
+        CreatePayoutOrderDTO single = BatchPayoutSubmitter.split(batch, 10).get(0);
+        assertEquals("B1", single.getRequestId());
+        assertEquals("2.80", single.getTotalAmount());
+
+        batch.setTotalAmount("2.8");
+        assertEquals(3, BatchPayoutSubmitter.split(batch, 3).size());
+        batch.setTotalAmount("2.81");
+        assertThrows(IllegalArgumentException.class, () -> BatchPayoutSubmitter.split(batch, 3));
+        batch.setTotalAmount(null);
+        batch.getPayoutOrderDetails().get(0).setAmount("1,00");
+        assertThrows(IllegalArgumentException.class, () -> BatchPayoutSubmitter.split(batch, 3));
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        GatewayStub gateway = new GatewayStub().handle(BatchPayoutSubmitter.BATCH_PAYOUT_PATH, exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                JSONObject body = GatewayStub.body(exchange);
+                Thread.sleep(10);
+                // The third chunk is rejected
+                int code = body.getString("request_id").endsWith("-3") ? 1001 : 0;
+                GatewayStub.respond(exchange, 200, "{\"code\":" + code + ",\"msg\":\"ok\",\"data\":{\"request_id\":\""
+                        + body.getString("request_id") + "\"}}");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+
+        ApiConfig apiConfig = gateway.getApiConfig();
+        apiConfig.getBatch().setChunkSize(10);
+        apiConfig.getBatch().setMaxConcurrentChunks(3);
+        try {
+            BatchPayoutSubmitter submitter = new BatchPayoutSubmitter(apiConfig, gateway.client());
+            BatchPayoutResult result = submitter.submit(batch(95)).get(30, TimeUnit.SECONDS);
+
+            assertEquals(10, result.getChunks().size());
+            assertEquals(95, result.getChunksByMchOrderId().size());
+            assertFalse(result.isSuccess());
+            for (BatchPayoutResult.Chunk chunk : result.getChunks()) {
+                assertNotNull(chunk.getResponse());
+                assertEquals(chunk.getRequestId(), chunk.getResponse().getData().getString("request_id"));
+                assertEquals(chunk.getIndex() != 2, chunk.isSuccess());
+            }
+            assertSame(result.getChunks().get(9), result.getChunk("M95"));
+            assertEquals("B1-3", result.getChunk("M21").getRequestId());
+            assertTrue(maxInFlight.get() <= 3, "max in flight " + maxInFlight.get());
+        } finally {
+            gateway.close();
+        }
+    }
+
+    @Test
+    public void testChunksAnsweredAtOnce() throws Exception {
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.getBatch().setChunkSize(1);
+        apiConfig.getBatch().setMaxConcurrentChunks(2);
+        // As if every chunk were rejected by a limiter before it is sent
+        BatchPayoutSubmitter submitter = new BatchPayoutSubmitter(apiConfig, null) {
+            @Override
+            CompletableFuture<BatchPayoutResult.Chunk> submitChunk(int index, CreatePayoutOrderDTO chunk) {
+                return CompletableFuture.completedFuture(new BatchPayoutResult.Chunk(index, chunk.getRequestId(),
+                        chunk.getTotalAmount(), List.of(), null, new IllegalStateException("rejected")));
+            }
+        };
+        BatchPayoutResult result = submitter.submit(batch(100_000)).get(30, TimeUnit.SECONDS);
+
+        assertEquals(100_000, result.getChunks().size());
+        assertFalse(result.isSuccess());
+    }
+
+    private static CreatePayoutOrderDTO batch(int details) {
+        CreatePayoutOrderDTO batch = new CreatePayoutOrderDTO();
+        batch.setRequestId("B1");
+        batch.setCurrency("PHP");
+        batch.setWayCode("KORAPAY_PAYOUT");
+        List<PayoutOrderDetailDTO> list = new ArrayList<>();
+        for (int i = 1; i <= details; i++) {
+            PayoutOrderDetailDTO detail = new PayoutOrderDetailDTO();
+            detail.setMchOrderId("M" + i);
+            detail.setAmount(new BigDecimal(i).movePointLeft(1).setScale(2).toPlainString());
+            list.add(detail);
+        }
+        batch.setPayoutOrderDetails(list);
+        return batch;
+    }
+}
@@ -0,0 +1,160 @@
+package com.dpe.lesspay2.demo.payout;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Rows must be validated, chunked and submitted; rejected rows must land in the reject file
+ */
+public class PayoutFileIngesterTest {
+
+    @TempDir
+    Path dir;
+
+    private final Map<String, JSONObject> received = new ConcurrentHashMap<>();
+    private GatewayStub gateway;
+    private PayoutFileIngester ingester;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        gateway = new GatewayStub().json(BatchPayoutSubmitter.BATCH_PAYOUT_PATH, body -> {
+            received.put(body.getString("request_id"), body);
+            return "{\"code\":0,\"msg\":\"ok\",\"data\":{}}";
+        });
+
+        ApiConfig apiConfig = gateway.getApiConfig();
+        apiConfig.getBatch().setChunkSize(3);
+        apiConfig.getBatch().setMaxConcurrentChunks(2);
+        ingester = new PayoutFileIngester(apiConfig, new BatchPayoutSubmitter(apiConfig, gateway.client()));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        gateway.close();
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+        Path csv = dir.resolve("payroll.csv");
+        Files.writeString(csv, String.join("\n",
+                "\uFEFFmch_order_id,amount,bank_account_no,bank_account_name,bank_name",
+                "M1,100.10,001,\"Dela Cruz, Juan\",BDO",
+                "M1,100.10,001,Juan,BDO",
+                "M2,0.20,002,Maria,\"The \"\"Best\"\" Bank\"",
+                "M3,,003,Pedro,BDO",
+                "",
+                "M4,abc,004,Jose,BDO",
+                "M5,5,005,Ana,BDO",
+                "M6,1.5,,Ana,BDO",
+                "M7,7.00,007,Lea,BDO,extra",
+                "M8,8,008,\"Open,BDO",
+                "M9,9.99,009,Rey,BDO",
+                "M10,10,010,Sam,BDO"), StandardCharsets.UTF_8);
+        Path rejects = dir.resolve("rejects.jsonl");
+        List<BatchPayoutResult.Chunk> chunks = new CopyOnWriteArrayList<>();
+
+        PayoutIngestionResult result = ingester.ingest(csv, header(), rejects, chunks::add);
+
+        assertEquals(11, result.getRowsRead());
+        assertEquals(6, result.getRowsRejected());
+        assertEquals(5, result.getRowsSubmitted());
+        assertEquals(2, result.getChunksSubmitted());
+        assertEquals(2, result.getChunksSucceeded());
+        assertEquals(2, chunks.size());
+
+        JSONObject first = received.get("PAYROLL-1");
+        assertEquals("105.30", first.getString("total_amount"));
+        assertEquals("PHP", first.getString("currency"));
+        assertEquals("Dela Cruz, Juan", first.getJSONArray("payout_order_details").getJSONObject(0).getString("bank_account_name"));
+        assertEquals("The \"Best\" Bank", first.getJSONArray("payout_order_details").getJSONObject(1).getString("bank_name"));
+        assertEquals("19.99", received.get("PAYROLL-2").getString("total_amount"));
+
+        List<String> rejected = Files.readAllLines(rejects, StandardCharsets.UTF_8);
+        assertEquals(List.of(3L, 5L, 7L, 9L, 10L, 11L),
+                rejected.stream().map(line -> JSON.parseObject(line).getLong("line")).toList());
+        assertTrue(JSON.parseObject(rejected.get(0)).getString("reason").startsWith("Duplicate mch_order_id"));
+        assertEquals("M8,8,008,\"Open,BDO", JSON.parseObject(rejected.get(5)).getString("content"));
+    }
+
+    @Test
+    public void testDuplicateInLaterChunk() throws Exception {
+        Path csv = dir.resolve("payroll.csv");
+        Files.writeString(csv, String.join("\n",
+                "mch_order_id,amount,bank_account_no,bank_account_name",
+                "M1,1,001,Juan",
+                "M2,2,002,Maria",
+                "M3,3,003,Pedro",
+                "M4,4,004,Jose",
+                "M2,2,002,Maria",
+                "M5,5,005,Ana"), StandardCharsets.UTF_8);
+        Path rejects = dir.resolve("rejects.jsonl");
+
+        PayoutIngestionResult result = ingester.ingest(csv, header(), rejects, chunk -> {
+        });
+
+        assertEquals(1, result.getRowsRejected());
+        assertEquals(5, result.getRowsSubmitted());
+        assertEquals("9", received.get("PAYROLL-2").getString("total_amount"));
+        JSONObject rejected = JSON.parseObject(Files.readAllLines(rejects, StandardCharsets.UTF_8).get(0));
+        assertEquals(6, rejected.getIntValue("line"));
+        assertTrue(rejected.getString("reason").startsWith("Duplicate mch_order_id"));
+    }
+
+    @Test
+    public void testJsonl() throws Exception {
+        Path jsonl = dir.resolve("payroll.jsonl");
+        Files.writeString(jsonl, String.join("\n",
+                "{\"mch_order_id\":\"W1\",\"amount\":\"1.00\",\"e_wallet\":{\"account_number\":\"0917\",\"provider\":\"GCASH\"}}",
+                "{\"mch_order_id\":\"W2\",\"amount\":\"2.00\"}",
+                "not json"), StandardCharsets.UTF_8);
+        CreatePayoutOrderDTO header = header();
+        header.setDestinationType("ewallet");
+
+        PayoutIngestionResult result = ingester.ingest(jsonl, header, dir.resolve("rejects.jsonl"), chunk -> {
+        });
+
+        assertEquals(3, result.getRowsRead());
+        assertEquals(2, result.getRowsRejected());
+        assertEquals(1, result.getChunksSubmitted());
+        assertEquals("GCASH", received.get("PAYROLL-1").getJSONArray("payout_order_details")
+                .getJSONObject(0).getJSONObject("e_wallet").getString("provider"));
+    }
+
+    @Test
+    public void testUnknownColumn() throws Exception {
+        Path csv = dir.resolve("payroll.csv");
+        Files.writeString(csv, "mch_order_id,amount,iban\nM1,1,X\n", StandardCharsets.UTF_8);
+        assertThrows(IllegalArgumentException.class,
+                () -> ingester.ingest(csv, header(), dir.resolve("rejects.jsonl"), chunk -> {
+                }));
+        assertTrue(received.isEmpty());
+    }
+
+    private static CreatePayoutOrderDTO header() {
+        CreatePayoutOrderDTO header = new CreatePayoutOrderDTO();
+        header.setRequestId("PAYROLL");
+        header.setCurrency("PHP");
+        header.setWayCode("KORAPAY_PAYOUT");
+        return header;
+    }
+}
@@ -0,0 +1,192 @@
+package com.dpe.lesspay2.demo.query;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.PayinQueryDTO;
+import com.dpe.lesspay2.demo.dto.PayoutQueryDTO;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Terminal orders must be served from the cache, pending ones refreshed, and webhooks applied at once
+ */
+public class OrderStatusCacheTest {
+
+    private final Map<String, String> statuses = new ConcurrentHashMap<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private GatewayStub gateway;
+    private OrderStatusCache cache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        gateway = new GatewayStub();
+        for (String path : new String[]{PayinQueryPager.PAYIN_QUERY_PATH, OrderStatusCache.PAYOUT_QUERY_PATH}) {
+            gateway.json(path, body -> {
+                calls.incrementAndGet();
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // P1 <-> R1, P2 <-> R2, ...
+                String payOrderId = body.containsKey("pay_order_id") ? body.getString("pay_order_id")
+                        : "P" + body.getString("request_id").substring(1);
+                JSONObject data = new JSONObject()
+                        .fluentPut("pay_order_id", payOrderId)
+                        .fluentPut("request_id", "R" + payOrderId.substring(1))
+                        .fluentPut("order_status", statuses.getOrDefault(payOrderId, "PENDING_PAY"))
+                        .fluentPut("total_amount", "100.00");
+                return new JSONObject().fluentPut("code", 0).fluentPut("msg", "success").fluentPut("data", data)
+                        .toJSONString();
+            });
+        }
+        ApiConfig apiConfig = gateway.getApiConfig();
+        apiConfig.getCache().setMaxEntries(3);
+        apiConfig.getCache().setPendingTtl(Duration.ofMillis(50));
+        cache = new OrderStatusCache(apiConfig, gateway.client());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        gateway.close();
+    }
+
+    @Test
+    public void testTtlByStatus() throws Exception {
+        statuses.put("P1", "SUCCEED");
+        assertEquals("SUCCEED", payout("P1", null).getString("order_status"));
+        assertEquals("SUCCEED", payout("P1", null).getString("order_status"));
+        // Same order by request_id
+        assertEquals("P1", payout(null, "R1").getString("pay_order_id"));
+        assertEquals(1, calls.get());
+
+        assertEquals("PENDING_PAY", payout("P2", null).getString("order_status"));
+        assertEquals("PENDING_PAY", payout("P2", null).getString("order_status"));
+        assertEquals(2, calls.get());
+        Thread.sleep(80);
+        statuses.put("P2", "FAILED");
+        assertEquals("FAILED", payout("P2", null).getString("order_status"));
+        assertEquals(3, calls.get());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+
+        // Payin and payout ids do not collide
+        assertEquals("P1", payin("P1").getString("pay_order_id"));
+        assertEquals(4, calls.get());
+        assertThrows(IllegalArgumentException.class, () -> cache.queryPayout(new PayoutQueryDTO()));
+    }
+
+    @Test
+    public void testWebhookUpdate() throws Exception {
+        payout("P1", null);
+        cache.onPayoutWebhook(new JSONObject().fluentPut("pay_order_id", "P1").fluentPut("request_id", "R1")
+                .fluentPut("order_status", "SUCCEED"));
+        // Merged into the cached order, and now cached as terminal
+        Thread.sleep(80);
+        JSONObject order = payout(null, "R1");
+        assertEquals("SUCCEED", order.getString("order_status"));
+        assertEquals("100.00", order.getString("total_amount"));
+        assertEquals(1, calls.get());
+
+        // A late PENDING delivery does not move the order back
+        cache.onPayoutWebhook(new JSONObject().fluentPut("pay_order_id", "P1").fluentPut("request_id", "R1")
+                .fluentPut("order_status", "PENDING_PAY").fluentPut("event", "order.created"));
+        assertEquals("SUCCEED", payout("P1", null).getString("order_status"));
+        assertEquals(1, calls.get());
+
+        // Not cached: the notification is not stored, the order is queried
+        statuses.put("P9", "CLOSED");
+        cache.onPayinWebhook(new JSONObject().fluentPut("pay_order_id", "P9").fluentPut("order_status", "CLOSED")
+                .fluentPut("event", "order.closed"));
+        JSONObject payin = payin("P9");
+        assertEquals("CLOSED", payin.getString("order_status"));
+        assertEquals("100.00", payin.getString("total_amount"));
+        assertNull(payin.get("event"));
+        cache.onPayinWebhook(null);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testWebhookInvalidatesItsOrderOnly() throws Exception {
+        statuses.put("P1", "SUCCEED");
+        statuses.put("P2", "SUCCEED");
+        gate = new CountDownLatch(1);
+        CompletableFuture<JSONObject> first = CompletableFuture.supplyAsync(() -> payoutUnchecked("P1"));
+        CompletableFuture<JSONObject> second = CompletableFuture.supplyAsync(() -> payoutUnchecked("P2"));
+        while (calls.get() < 2) {
+            Thread.sleep(5);
+        }
+        // Both queries are in flight; P3 is not cached, P2 is the order of a query in flight
+        cache.onPayoutWebhook(new JSONObject().fluentPut("pay_order_id", "P3").fluentPut("order_status", "SUCCEED"));
+        cache.onPayoutWebhook(new JSONObject().fluentPut("request_id", "R2").fluentPut("order_status", "SUCCEED"));
+        gate.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+
+        payout("P1", null);
+        assertEquals(2, calls.get());
+        payout("P2", null);
+        assertEquals(3, calls.get());
+        payout("P2", null);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testSizeEviction() throws Exception {
+        statuses.put("P1", "SUCCEED");
+        statuses.put("P2", "SUCCEED");
+        statuses.put("P3", "SUCCEED");
+        statuses.put("P4", "SUCCEED");
+        payout("P1", null);
+        payout("P2", null);
+        payout("P3", null);
+        // P1 becomes the most recently used, P2 the eldest
+        payout("P1", null);
+        payout("P4", null);
+        assertEquals(3, cache.size());
+        assertEquals(4, calls.get());
+
+        payout(null, "R1");
+        payout("P3", null);
+        assertEquals(4, calls.get());
+        payout(null, "R2");
+        assertEquals(5, calls.get());
+    }
+
+    private JSONObject payout(String payOrderId, String requestId) throws Exception {
+        PayoutQueryDTO query = new PayoutQueryDTO();
+        query.setPayOrderId(payOrderId);
+        query.setRequestId(requestId);
+        return cache.queryPayout(query).getData();
+    }
+
+    private JSONObject payoutUnchecked(String payOrderId) {
+        try {
+            return payout(payOrderId, null);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private JSONObject payin(String payOrderId) throws Exception {
+        PayinQueryDTO query = new PayinQueryDTO();
+        query.setPayOrderId(payOrderId);
+        query.setStartTime(0L);
+        return cache.queryPayin(query).getData();
+    }
+}
@@ -0,0 +1,196 @@
+package com.dpe.lesspay2.demo.query;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Windows must cover the range without overlap; paging and slicing must return every order once with bounded prefetch
+ */
+public class PayinQueryPagerTest {
+
+    private static final long DAY = Duration.ofDays(1).toMillis();
+
+    /**
+     * One order per hour over 17 days
+     */
+    private static final long ORDER_INTERVAL = Duration.ofHours(1).toMillis();
+    private static final int ORDERS = 17 * 24;
+
+    @Test
+    public void testWindows() {
+        List<long[]> windows = PayinQueryPager.windows(0, 17 * DAY, 7 * DAY);
+
+        assertEquals(3, windows.size());
+        assertEquals(0, windows.get(0)[0]);
+        assertEquals(7 * DAY - 1, windows.get(0)[1]);
+        assertEquals(7 * DAY, windows.get(1)[0]);
+        assertEquals(17 * DAY, windows.get(2)[1]);
+        for (long[] window : windows) {
+            assertTrue(window[1] - window[0] < 7 * DAY);
+        }
+        assertEquals(1, PayinQueryPager.windows(5, 5, 7 * DAY).size());
+        assertThrows(IllegalArgumentException.class, () -> PayinQueryPager.windows(10, 5, 7 * DAY));
+    }
+
+    @Test
+    public void testStreamWithTotal() throws Exception {
+        assertStreamsAllOrders(true);
+    }
+
+    @Test
+    public void testStreamWithoutTotal() throws Exception {
+        assertStreamsAllOrders(false);
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        try (GatewayStub gateway = gateway(inFlight, maxInFlight, true, true, new AtomicBoolean())) {
+            PayinQueryPager pager = pager(gateway);
+            List<long[]> slices = pager.plan(0, 17 * DAY - 1);
+            assertTrue(maxInFlight.get() <= 4, "max probes in flight " + maxInFlight.get());
+            // 168 orders per full week, at most 50 per slice
+            assertTrue(slices.size() >= 10, "slices " + slices.size());
+            for (long[] slice : slices) {
+                assertTrue(slice[2] >= 0 && slice[2] <= 50, "slice total " + slice[2]);
+            }
+            assertEquals(ORDERS, slices.stream().mapToLong(slice -> slice[2]).sum(), "orders on slice edges");
+
+            try (Stream<JSONObject> orders = pager.scan(0, 17 * DAY - 1)) {
+                List<String> ids = orders.map(order -> order.getString("pay_order_id")).toList();
+
+                assertEquals(ORDERS, ids.size());
+                assertEquals(ORDERS, Set.copyOf(ids).size());
+            }
+            assertTrue(maxInFlight.get() <= 4, "max in flight " + maxInFlight.get());
+        }
+    }
+
+    @Test
+    public void testScanWithoutCreatedAt() throws Exception {
+        try (GatewayStub gateway = gateway(new AtomicInteger(), new AtomicInteger(), true, false, new AtomicBoolean())) {
+            PayinQueryPager pager = pager(gateway);
+            List<long[]> slices = pager.plan(0, 17 * DAY - 1);
+            // Not deduplicated, so slices must not share their edges
+            for (int i = 1; i < slices.size(); i++) {
+                assertTrue(slices.get(i)[0] > slices.get(i - 1)[1], "shared edge " + slices.get(i)[0]);
+            }
+            assertEquals(ORDERS, slices.stream().mapToLong(slice -> slice[2]).sum());
+
+            try (Stream<JSONObject> orders = pager.scan(0, 17 * DAY - 1)) {
+                List<String> ids = orders.map(order -> order.getString("pay_order_id")).toList();
+
+                assertEquals(ORDERS, ids.size());
+                assertEquals(ORDERS, Set.copyOf(ids).size());
+            }
+        }
+    }
+
+    @Test
+    public void testNearEdge() {
+        NavigableSet<Long> edges = new TreeSet<>(List.of(10_000L));
+        assertTrue(PayinQueryPager.nearEdge(edges, new JSONObject().fluentPut("created_at", 10_000L)));
+        assertTrue(PayinQueryPager.nearEdge(edges, new JSONObject().fluentPut("created_at", 9_500L)));
+        assertTrue(PayinQueryPager.nearEdge(edges, new JSONObject().fluentPut("created_at", "1970-01-01T00:00:10Z")));
+        assertFalse(PayinQueryPager.nearEdge(edges, new JSONObject()));
+        assertFalse(PayinQueryPager.nearEdge(edges, new JSONObject().fluentPut("created_at", 12_000L)));
+        assertFalse(PayinQueryPager.nearEdge(new TreeSet<>(), new JSONObject()));
+    }
+
+    @Test
+    public void testFailedPage() throws Exception {
+        try (GatewayStub gateway = gateway(new AtomicInteger(), new AtomicInteger(), true, true, new AtomicBoolean(true));
+             Stream<JSONObject> orders = pager(gateway).stream(0, 17 * DAY)) {
+            assertThrows(IllegalStateException.class, orders::count);
+        }
+    }
+
+    private static void assertStreamsAllOrders(boolean withTotal) throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        try (GatewayStub gateway = gateway(inFlight, maxInFlight, withTotal, true, new AtomicBoolean());
+             Stream<JSONObject> orders = pager(gateway).stream(0, 17 * DAY - 1)) {
+            Set<String> ids = orders.map(order -> order.getString("pay_order_id")).collect(Collectors.toSet());
+
+            assertEquals(ORDERS, ids.size());
+            // Without totals, pages cancelled past the end of a window may still be running on the server
+            assertTrue(maxInFlight.get() <= (withTotal ? 3 : 5), "max in flight " + maxInFlight.get());
+        }
+    }
+
+    private static PayinQueryPager pager(GatewayStub gateway) {
+        ApiConfig apiConfig = gateway.getApiConfig();
+        apiConfig.getQuery().setPageSize(25);
+        apiConfig.getQuery().setPrefetchPages(3);
+        apiConfig.getQuery().setMaxSliceOrders(50);
+        apiConfig.getQuery().setScanParallelism(4);
+        return new PayinQueryPager(apiConfig, gateway.client());
+    }
+
+    /**
+     * Query endpoint over the hourly orders; rejects windows over 7 days
+     */
+    private static GatewayStub gateway(AtomicInteger inFlight, AtomicInteger maxInFlight, boolean withTotal,
+                                       boolean withCreatedAt, AtomicBoolean failing) throws Exception {
+        return new GatewayStub().handle(PayinQueryPager.PAYIN_QUERY_PATH, exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                JSONObject body = GatewayStub.body(exchange);
+                long start = body.getLongValue("start_time");
+                long end = body.getLongValue("end_time");
+                int page = body.getIntValue("page");
+                int pageSize = body.getIntValue("page_size");
+                JSONObject response = new JSONObject();
+                if (failing.get() || end - start >= 7 * DAY) {
+                    response.put("code", 1001);
+                    response.put("msg", "invalid time range");
+                } else {
+                    long first = (start + ORDER_INTERVAL - 1) / ORDER_INTERVAL;
+                    long last = Math.min(end / ORDER_INTERVAL, ORDERS - 1);
+                    long total = Math.max(0, last - first + 1);
+                    JSONArray list = new JSONArray();
+                    for (long i = first + (long) (page - 1) * pageSize; i <= last && list.size() < pageSize; i++) {
+                        JSONObject order = new JSONObject().fluentPut("pay_order_id", "P" + i);
+                        if (withCreatedAt) {
+                            order.put("created_at", i * ORDER_INTERVAL);
+                        }
+                        list.add(order);
+                    }
+                    JSONObject data = new JSONObject().fluentPut("list", list);
+                    if (withTotal) {
+                        data.put("total", total);
+                    }
+                    response.put("code", 0);
+                    response.put("msg", "success");
+                    response.put("data", data);
+                }
+                Thread.sleep(5);
+                // Before the client can see the response and request the next page
+                inFlight.decrementAndGet();
+                GatewayStub.respond(exchange, 200, response.toJSONString());
+            } catch (InterruptedException e) {
+                inFlight.decrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+}
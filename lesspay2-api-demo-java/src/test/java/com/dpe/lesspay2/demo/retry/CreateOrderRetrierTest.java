@@ -0,0 +1,126 @@
+package com.dpe.lesspay2.demo.retry;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.dto.ApiResponseDTO;
+import com.dpe.lesspay2.demo.mock.GatewayStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A create-order with an unknown outcome must be queried before it is resent, and never created twice
+ */
+public class CreateOrderRetrierTest {
+
+    private static final String CREATE = CreateOrderRetrier.PAYOUT_CREATE_PATH;
+
+    private GatewayStub gateway;
+    private ApiConfig apiConfig;
+    private final Set<String> created = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger creates = new AtomicInteger();
+    private final AtomicInteger queries = new AtomicInteger();
+
+    /**
+     * How the next create-order call fails: "slow" (created, answered after the read timeout),
+     * "502" (not created, HTML error page), or null to succeed
+     */
+    private volatile String nextFailure;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        gateway = new GatewayStub().handle(CREATE, exchange -> {
+            creates.incrementAndGet();
+            String requestId = GatewayStub.body(exchange).getString("request_id");
+            String failure = nextFailure;
+            nextFailure = null;
+            if ("502".equals(failure)) {
+                GatewayStub.respond(exchange, 502, "<html>Bad Gateway</html>");
+                return;
+            }
+            created.add(requestId);
+            if ("slow".equals(failure)) {
+                sleep(1500);
+            }
+            GatewayStub.respond(exchange, 200, "{\"code\":0,\"msg\":\"success\",\"data\":{\"pay_order_id\":\"P-" + requestId + "\"}}");
+        }).json("/api/global/payout/query", body -> {
+            queries.incrementAndGet();
+            String requestId = body.getString("request_id");
+            return created.contains(requestId)
+                    ? "{\"code\":0,\"msg\":\"success\",\"data\":{\"pay_order_id\":\"P-" + requestId + "\",\"order_status\":\"PENDING\"}}"
+                    : "{\"code\":40004,\"msg\":\"order not found\"}";
+        });
+        apiConfig = gateway.getApiConfig();
+        apiConfig.getHttp().getTimeouts().setRead(Duration.ofMillis(500));
+        apiConfig.getRetry().setInitialBackoff(Duration.ofMillis(20));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        gateway.close();
+    }
+
+    @Test
+    public void testTimeoutQueriesInsteadOfResending() throws Exception {
+        nextFailure = "slow";
+        ApiResponseDTO<JSONObject> response = retrier().submit(CREATE, Map.of("request_id", "R1")).get(10, TimeUnit.SECONDS);
+        assertEquals("PENDING", response.getData().getString("order_status"));
+        assertEquals(1, creates.get());
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void testResendWhenNotFound() throws Exception {
+        nextFailure = "502";
+        ApiResponseDTO<JSONObject> response = retrier().submit(CREATE, Map.of("request_id", "R2")).get(10, TimeUnit.SECONDS);
+        assertEquals("P-R2", response.getData().getString("pay_order_id"));
+        assertEquals(2, creates.get());
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void testBudgetExhausted() {
+        apiConfig.getRetry().setBudgetMaxTokens(0);
+        CreateOrderRetrier retrier = retrier();
+        nextFailure = "502";
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> retrier.submit(CREATE, Map.of("request_id", "R3")).get(10, TimeUnit.SECONDS));
+        RetryExhaustedException exhausted = assertInstanceOf(RetryExhaustedException.class, error.getCause());
+        assertTrue(exhausted.isOutcomeUnknown());
+        assertEquals("R3", exhausted.getRequestId());
+        assertEquals(1, creates.get());
+        assertEquals(0, retrier.getRetriesInFlight());
+    }
+
+    @Test
+    public void testRequiresRequestId() {
+        assertThrows(IllegalArgumentException.class, () -> retrier().submit(CREATE, Map.of("amount", "1.00")));
+        assertThrows(IllegalArgumentException.class, () -> retrier().submit("/api/global/payout/balance", Map.of("request_id", "R4")));
+    }
+
+    private CreateOrderRetrier retrier() {
+        return new CreateOrderRetrier(apiConfig, gateway.client());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
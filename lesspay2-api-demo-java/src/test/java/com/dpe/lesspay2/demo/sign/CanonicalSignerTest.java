@@ -0,0 +1,301 @@
+package com.dpe.lesspay2.demo.sign;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.dto.ChannelExtraDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayinOrderDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO;
+import com.dpe.lesspay2.demo.dto.PayinQueryDTO;
+import com.dpe.lesspay2.demo.dto.PayoutBankDTO;
+import com.dpe.lesspay2.demo.dto.PayoutCreateOrderDTO;
+import com.dpe.lesspay2.demo.dto.PayoutEWalletDTO;
+import com.dpe.lesspay2.demo.dto.PayoutQueryDTO;
+import com.dpe.lesspay2.demo.util.SignUtil;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * CanonicalSigner must produce byte-identical signatures to SignUtil.createSign
+ */
+public class CanonicalSignerTest {
+
+    private static final String APP_SECRET = "YOUR_APP_SECRET";
+
+    private static final String PAYOUT_WEBHOOK_SAMPLE = """
+            {
+                "pay_order_id": "P202501130001",
+                "request_id": "PO1736740800001",
+                "order_status": "SUCCEED",
+                "currency": "PHP",
+                "total_amount": "1000.00",
+                "decimal_places": 2,
+                "fail_reason": null,
+                "created_at": "2025-01-13T10:00:00.000+08:00",
+                "details": [
+                    {
+                        "payout_order_detail_id": "POD202501130001",
+                        "mch_order_id": "MCH_001",
+                        "amount": "500.00",
+                        "actual_amount": "500.00",
+                        "status": "Succeeded",
+                        "audit_state": "APPROVED",
+                        "fail_reason": null,
+                        "rejected_reason": "",
+                        "channel_order_no": "CH_001",
+                        "bank_account_no": "1234****5678",
+                        "bank_account_name": "J****N",
+                        "bank_account_type": "business",
+                        "bank_name": "BDO",
+                        "bank_country_code": "PH",
+                        "bank_swift_code": "BNORPHMM",
+                        "success_time": "2025-01-13T10:01:40.000+08:00"
+                    }
+                ]
+            }
+            """;
+
+    private static final String PAYIN_WEBHOOK_SAMPLE = """
+            {
+              "pay_order_id": "P2045118164054515713",
+              "request_id": "1585581674",
+              "order_status": "SUCCEED",
+              "target_currency": "USD",
+              "target_amount": "100.00",
+              "product_name": "deposit",
+              "description": "",
+              "complete_time": null,
+              "api_version": "v2",
+              "order_status_int": 2,
+              "channel_biz_data": {
+                "issuer_country": "PL",
+                "3ds": {
+                  "downgraded": false,
+                  "enrolled": ""
+                },
+                "issuer": "CREDIT AGRICOLE BANK POLSKA S.A."
+              },
+              "event": null
+            }
+            """;
+
+    @Test
+    public void testWebhookSamples() {
+        assertSameSignature(() -> JSON.parseObject(PAYOUT_WEBHOOK_SAMPLE));
+        assertSameSignature(() -> JSON.parseObject(PAYIN_WEBHOOK_SAMPLE));
+        assertSameSignature(JSONObject::new);
+    }
+
+    @Test
+    public void testRequestDtos() {
+        assertSameSignature(() -> JSON.parseObject(JSON.toJSONString(buildCardPayin())));
+        assertSameSignature(() -> JSON.parseObject(JSON.toJSONString(buildBatchPayout(25))));
+        assertEquals(SignUtil.createSign(JSON.parseObject(JSON.toJSONString(buildBatchPayout(3))), APP_SECRET),
+                CanonicalSigner.signObject(buildBatchPayout(3), APP_SECRET));
+        assertEquals(SignUtil.createSign(JSON.parseObject(JSON.toJSONString(buildCardPayin())), APP_SECRET),
+                CanonicalSigner.signObject(buildCardPayin(), APP_SECRET));
+    }
+
+    @Test
+    public void testRandomTrees() {
+        for (int seed = 0; seed < 300; seed++) {
+            long s = seed;
+            assertSameSignature(() -> randomObject(new Random(s), 0));
+        }
+    }
+
+    @Test
+    public void testRandomBodies() {
+        for (int seed = 0; seed < 100; seed++) {
+            Map<String, Object> body = new HashMap<>();
+            fill(new Random(seed), body, 0);
+            String expected = SignUtil.createSign(JSON.parseObject(JSON.toJSONString(body)), APP_SECRET);
+            assertEquals(expected, CanonicalSigner.signObject(body, APP_SECRET), () -> JSON.toJSONString(body));
+        }
+    }
+
+    @Test
+    public void testRandomDtos() throws Exception {
+        Class<?>[] types = {CreatePayinOrderDTO.class, CreatePayoutOrderDTO.class, PayoutCreateOrderDTO.class,
+                PayinQueryDTO.class, PayoutQueryDTO.class, PayoutBankDTO.class};
+        for (int seed = 0; seed < 300; seed++) {
+            Random random = new Random(seed);
+            Object dto = randomDto(random, types[seed % types.length], 0);
+            String expected = SignUtil.createSign(JSON.parseObject(JSON.toJSONString(dto)), APP_SECRET);
+            assertEquals(expected, CanonicalSigner.signObject(dto, APP_SECRET), () -> JSON.toJSONString(dto));
+
+            // A DTO nested in a caller's JSONObject keeps its empty strings
+            JSONObject wrapper = new JSONObject();
+            wrapper.put("dto", dto);
+            wrapper.put("list", Collections.singletonList(dto));
+            assertSameSignature(() -> {
+                JSONObject copy = new JSONObject();
+                copy.putAll(wrapper);
+                return copy;
+            });
+        }
+    }
+
+    private static void assertSameSignature(Supplier<JSONObject> parameters) {
+        // SignUtil mutates its input, so each side gets its own copy
+        JSONObject expectedInput = parameters.get();
+        String expected = SignUtil.createSign(expectedInput, APP_SECRET);
+        assertEquals(expected, CanonicalSigner.sign(parameters.get(), APP_SECRET), () -> JSON.toJSONString(expectedInput));
+    }
+
+    static CreatePayinOrderDTO buildCardPayin() {
+        CreatePayinOrderDTO dto = new CreatePayinOrderDTO();
+        dto.setRequestId("M1736740800001");
+        dto.setProductName("Lesspay Order");
+        dto.setDescription("");
+        dto.setTargetAmount("100.00");
+        dto.setTargetCurrency("USD");
+        dto.setSuccessUrl("https://www.doopayment.com");
+        dto.setFailUrl("https://www.doopayment.com");
+        dto.setPayAccessType(2);
+        dto.setWayType("CARD_PAYMENT");
+        ChannelExtraDTO extra = new ChannelExtraDTO();
+        extra.setExtraType("card");
+        extra.setCardData(ChannelExtraDTO.CardData.builder()
+                .number("4242424242424242").expiryMonth(12).expiryYear(2027).cvv("123").storeForFutureUse(true).build());
+        dto.setChannelExtra(extra);
+        return dto;
+    }
+
+    static CreatePayoutOrderDTO buildBatchPayout(int details) {
+        CreatePayoutOrderDTO dto = new CreatePayoutOrderDTO();
+        dto.setRequestId("PO1736740800001");
+        dto.setCurrency("PHP");
+        dto.setTotalAmount(details + "00.00");
+        dto.setWayCode("EPAY_PAYOUT");
+        dto.setNotifyUrl("https://merchant.domain.com/api/callbackUrl");
+        List<CreatePayoutOrderDTO.PayoutOrderDetailDTO> list = new ArrayList<>();
+        for (int i = 0; i < details; i++) {
+            CreatePayoutOrderDTO.PayoutOrderDetailDTO detail = new CreatePayoutOrderDTO.PayoutOrderDetailDTO();
+            detail.setMchOrderId("MCH_" + i);
+            detail.setAmount("100.00");
+            detail.setBankAccountNo("12345678" + i);
+            detail.setBankAccountName("Juan Dela Cruz");
+            detail.setBankAccountType(i % 2 == 0 ? "individual" : "");
+            detail.setBankName("BDO");
+            detail.setBankCountryCode("PH");
+            if (i % 3 == 0) {
+                PayoutEWalletDTO wallet = new PayoutEWalletDTO();
+                wallet.setProvider("GCASH");
+                wallet.setAccountNumber("0917" + i);
+                detail.setPayoutEWallet(wallet);
+            }
+            list.add(detail);
+        }
+        dto.setPayoutOrderDetails(list);
+        return dto;
+    }
+
+    static Object randomDto(Random random, Class<?> type, int depth) throws Exception {
+        Object dto = type.getDeclaredConstructor().newInstance();
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || random.nextInt(5) == 0) {
+                continue;
+            }
+            field.setAccessible(true);
+            Class<?> fieldType = field.getType();
+            Object value;
+            if (fieldType == String.class) {
+                value = random.nextInt(4) == 0 ? "" : randomString(random);
+            } else if (fieldType == Integer.class) {
+                value = random.nextInt(100_000);
+            } else if (fieldType == Long.class) {
+                value = random.nextLong();
+            } else if (fieldType == Boolean.class) {
+                value = random.nextBoolean();
+            } else if (fieldType == List.class) {
+                List<Object> list = new ArrayList<>();
+                int size = random.nextInt(4);
+                for (int i = 0; i < size; i++) {
+                    list.add(randomDto(random, CreatePayoutOrderDTO.PayoutOrderDetailDTO.class, depth + 1));
+                }
+                value = list;
+            } else {
+                value = depth < 4 ? randomDto(random, fieldType, depth + 1) : null;
+            }
+            field.set(dto, value);
+        }
+        return dto;
+    }
+
+    private enum Kind { ALPHA, BETA }
+
+    static JSONObject randomObject(Random random, int depth) {
+        JSONObject object = new JSONObject(random.nextBoolean());
+        fill(random, object, depth);
+        return object;
+    }
+
+    static void fill(Random random, Map<String, Object> map, int depth) {
+        int size = random.nextInt(depth == 0 ? 20 : 30);
+        for (int i = 0; i < size; i++) {
+            map.put(randomKey(random), randomValue(random, depth + 1));
+        }
+    }
+
+    private static Object randomValue(Random random, int depth) {
+        int pick = random.nextInt(depth > 3 ? 12 : 17);
+        return switch (pick) {
+            case 0 -> null;
+            case 1 -> "";
+            case 2, 3 -> randomString(random);
+            case 4 -> random.nextInt();
+            case 5 -> random.nextLong();
+            case 6 -> new BigDecimal(BigInteger.valueOf(random.nextInt(1_000_000)), random.nextInt(6) - 2);
+            case 7 -> random.nextBoolean();
+            case 8 -> random.nextDouble() * Math.pow(10, random.nextInt(40) - 20);
+            case 9 -> new Date(random.nextInt(Integer.MAX_VALUE) * 1000L);
+            case 10 -> Kind.values()[random.nextInt(2)];
+            case 11 -> new BigInteger(100, random);
+            case 12 -> randomObject(random, depth);
+            case 13 -> {
+                Map<String, Object> map = random.nextBoolean() ? new HashMap<>() : new LinkedHashMap<>();
+                fill(random, map, depth);
+                yield map;
+            }
+            case 14 -> buildCardPayin().getChannelExtra();
+            default -> {
+                List<Object> list = random.nextBoolean() ? new JSONArray() : new ArrayList<>();
+                int size = random.nextInt(5);
+                for (int i = 0; i < size; i++) {
+                    list.add(randomValue(random, depth + 1));
+                }
+                yield list;
+            }
+        };
+    }
+
+    private static String randomKey(Random random) {
+        return random.nextInt(4) == 0 ? randomString(random) : "k" + random.nextInt(200);
+    }
+
+    private static String randomString(Random random) {
+        String alphabet = "abcXYZ019 _-=&{}[]\"\\/:,\t\n\r\b\f\u0000\u001f\u007f\u0085\u00e9\u4e2d\u2028\u2029\ud83d\ude00\ud800";
+        int length = random.nextInt(12);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.dpe.lesspay2.demo.sign;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.dto.CreatePayinOrderDTO;
+import com.dpe.lesspay2.demo.dto.CreatePayoutOrderDTO;
+import com.dpe.lesspay2.demo.dto.PayinQueryDTO;
+import com.dpe.lesspay2.demo.dto.PayoutBankDTO;
+import com.dpe.lesspay2.demo.dto.PayoutCreateOrderDTO;
+import com.dpe.lesspay2.demo.dto.PayoutQueryDTO;
+import com.dpe.lesspay2.demo.util.SignUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * SignedBody must produce the fastjson body and the signature the gateway computes from it
+ */
+public class SignedBodyTest {
+
+    private static final String APP_SECRET = "YOUR_APP_SECRET";
+
+    @Test
+    public void testRequestDtos() {
+        assertSameAsFastjson(CanonicalSignerTest.buildCardPayin());
+        for (int details : new int[]{0, 1, 100, 1000}) {
+            assertSameAsFastjson(CanonicalSignerTest.buildBatchPayout(details));
+        }
+    }
+
+    @Test
+    public void testRandomDtos() throws Exception {
+        Class<?>[] types = {CreatePayinOrderDTO.class, CreatePayoutOrderDTO.class, PayoutCreateOrderDTO.class,
+                PayinQueryDTO.class, PayoutQueryDTO.class, PayoutBankDTO.class};
+        for (int seed = 0; seed < 300; seed++) {
+            assertSameAsFastjson(CanonicalSignerTest.randomDto(new Random(seed), types[seed % types.length], 0));
+        }
+    }
+
+    @Test
+    public void testRandomBodies() {
+        for (int seed = 0; seed < 300; seed++) {
+            Map<String, Object> body = seed % 2 == 0 ? new HashMap<>() : CanonicalSignerTest.randomObject(new Random(-seed), 0);
+            CanonicalSignerTest.fill(new Random(seed), body, 0);
+            try (SignedBody signed = SignedBody.of(body, APP_SECRET)) {
+                String text = signed.toString();
+                String json = JSON.toJSONString(body);
+                // Unpaired surrogates cannot go over the wire; they are sent as '?' like String.getBytes does
+                String expected = new String(json.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+                assertEquals(JSON.parseObject(expected), JSON.parseObject(text), text);
+                if (expected.equals(json)) {
+                    assertEquals(SignUtil.createSign(JSON.parseObject(text), APP_SECRET), signed.getSignature(), text);
+                    assertEquals(CanonicalSigner.signObject(body, APP_SECRET), signed.getSignature(), text);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testClose() {
+        SignedBody signed = SignedBody.of(new JSONObject(), APP_SECRET);
+        assertEquals("{}", signed.toString());
+        assertEquals(SignUtil.createSign(new JSONObject(), APP_SECRET), signed.getSignature());
+        signed.close();
+        signed.close();
+        assertThrows(IllegalStateException.class, signed::array);
+        assertThrows(IllegalArgumentException.class, () -> SignedBody.of("body", APP_SECRET));
+    }
+
+    @Test
+    public void testSigningKey() {
+        SigningKey key = SigningKey.of("秘密-" + APP_SECRET);
+        for (Object body : new Object[]{new JSONObject(), CanonicalSignerTest.buildCardPayin(), CanonicalSignerTest.buildBatchPayout(3)}) {
+            try (SignedBody expected = SignedBody.of(body, key.secret()); SignedBody signed = SignedBody.of(body, key)) {
+                assertEquals(expected.getSignature(), signed.getSignature());
+                assertEquals(SignUtil.createSign(JSON.parseObject(signed.toString()), key.secret()), signed.getSignature());
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> SigningKey.of(null));
+    }
+
+    private static void assertSameAsFastjson(Object dto) {
+        String json = JSON.toJSONString(dto);
+        try (SignedBody signed = SignedBody.of(dto, APP_SECRET)) {
+            assertArrayEquals(json.getBytes(StandardCharsets.UTF_8), Arrays.copyOf(signed.array(), signed.length()), json);
+            assertEquals(SignUtil.createSign(JSON.parseObject(signed.toString()), APP_SECRET), signed.getSignature(), json);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.dpe.lesspay2.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * DigestUtil must match MessageDigest + uppercase hex for every entry point
+ */
+public class DigestUtilTest {
+
+    @Test
+    public void testKnownVector() {
+        assertEquals("BA7816BF8F01CFEA414140DE5DAE2223B00361A396177A9CB410FF61F20015AD", DigestUtil.sha256Hex("abc"));
+        assertEquals("E3B0C44298FC1C149AFBF4C8996FB92427AE41E4649B934CA495991B7852B855", DigestUtil.sha256Hex(new byte[0]));
+    }
+
+    @Test
+    public void testEntryPoints() throws Exception {
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            byte[] bytes = new byte[random.nextInt(300)];
+            random.nextBytes(bytes);
+            String expected = HexFormat.of().withUpperCase().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+
+            assertEquals(expected, DigestUtil.sha256Hex(bytes));
+            assertEquals(expected, DigestUtil.sha256Hex(ByteBuffer.wrap(bytes)));
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+            assertEquals(expected, DigestUtil.sha256Hex(direct));
+            assertEquals(0, direct.remaining());
+
+            byte[] padded = new byte[bytes.length + 7];
+            System.arraycopy(bytes, 0, padded, 3, bytes.length);
+            assertEquals(expected, DigestUtil.sha256Hex(padded, 3, bytes.length));
+        }
+        String text = "request_id=M1736740800001&target_amount=100.00&key=中文";
+        assertEquals(DigestUtil.sha256Hex(text.getBytes(StandardCharsets.UTF_8)), DigestUtil.sha256Hex(text));
+        assertEquals("00017F80FF", DigestUtil.toHex(new byte[]{0, 1, 0x7F, (byte) 0x80, (byte) 0xFF}));
+        assertEquals("00017F80FF", new String(DigestUtil.hex(new byte[]{0, 1, 0x7F, (byte) 0x80, (byte) 0xFF}, new char[10])));
+    }
+}
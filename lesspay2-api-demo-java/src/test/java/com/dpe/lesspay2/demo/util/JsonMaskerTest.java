@@ -0,0 +1,42 @@
+package com.dpe.lesspay2.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JsonMasker must hide sensitive values and cut long bodies without breaking characters
+ */
+public class JsonMaskerTest {
+
+    private final JsonMasker masker = new JsonMasker(List.of("number", "cvv", "bank_account_no"));
+
+    @Test
+    public void testMask() {
+        String json = "{\"card\":{\"number\":\"4111111111111111\",\"cvv\":\"123\",\"holder\":\"number\"},"
+                + "\"bank_account_no\": 1234567890,\"list\":[{\"number\":null},{\"cvv\":{\"x\":\"1\"}}],"
+                + "\"note\":\"a \\\"number\\\": \\\"1\\\"\"}";
+        assertEquals("{\"card\":{\"number\":\"************1111\",\"cvv\":\"***\",\"holder\":\"number\"},"
+                + "\"bank_account_no\": ******7890,\"list\":[{\"number\":null},{\"cvv\":{\"x\":\"1\"}}],"
+                + "\"note\":\"a \\\"number\\\": \\\"1\\\"\"}", masker.mask(json, 4096));
+    }
+
+    @Test
+    public void testTruncate() {
+        String json = "{\"name\":\"中文中文\",\"number\":\"4111111111111111\"}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        for (int max = 1; max < bytes.length + 20; max++) {
+            String masked = masker.mask(bytes, 0, bytes.length, max);
+            assertTrue(!masked.contains("�"), masked);
+            assertTrue(!masked.contains("41111111"), masked);
+            if (max < bytes.length) {
+                assertTrue(masked.endsWith("...(truncated, " + bytes.length + " bytes)"), masked);
+            }
+        }
+        assertEquals("{\"name\":\"中...(truncated, " + bytes.length + " bytes)", masker.mask(bytes, 0, bytes.length, 13));
+    }
+}
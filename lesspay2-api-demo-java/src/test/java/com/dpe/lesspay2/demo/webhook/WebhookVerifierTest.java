@@ -0,0 +1,139 @@
+package com.dpe.lesspay2.demo.webhook;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.dpe.lesspay2.demo.config.ApiConfig;
+import com.dpe.lesspay2.demo.util.SignUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * WebhookVerifier must accept exactly the signatures the webhook examples compute
+ */
+public class WebhookVerifierTest {
+
+    private static final String APP_SECRET = "YOUR_APP_SECRET";
+
+    private static final String PAYOUT_WEBHOOK_SAMPLE = """
+            {
+                "pay_order_id": "P202501130001",
+                "request_id": "PO1736740800001",
+                "order_status": "SUCCEED",
+                "currency": "PHP",
+                "total_amount": "1000.00",
+                "decimal_places": 2,
+                "fail_reason": null,
+                "created_at": "2025-01-13T10:00:00.000+08:00",
+                "details": [
+                    {
+                        "payout_order_detail_id": "POD202501130001",
+                        "mch_order_id": "MCH_001",
+                        "amount": "500.00",
+                        "actual_amount": "500.00",
+                        "status": "Succeeded",
+                        "audit_state": "APPROVED",
+                        "fail_reason": null,
+                        "rejected_reason": "",
+                        "channel_order_no": "CH_001",
+                        "bank_account_no": "1234****5678",
+                        "bank_account_name": "J****N",
+                        "bank_account_type": "business",
+                        "bank_name": "BDO",
+                        "bank_country_code": "PH",
+                        "bank_swift_code": "BNORPHMM",
+                        "success_time": "2025-01-13T10:01:40.000+08:00"
+                    }
+                ]
+            }
+            """;
+
+    private static final String PAYIN_WEBHOOK_SAMPLE = """
+            {
+              "pay_order_id": "P2045118164054515713",
+              "request_id": "1585581674",
+              "order_status": "SUCCEED",
+              "target_currency": "USD",
+              "target_amount": "100.00",
+              "product_name": "deposit",
+              "description": "Deposit #1585581674",
+              "complete_time": null,
+              "api_version": "v1",
+              "order_status_int": 2,
+              "channel_biz_data": {
+                "issuer_country": "PL",
+                "3ds": {
+                  "downgraded": false,
+                  "enrolled": "Y"
+                },
+                "issuer": "CREDIT AGRICOLE BANK POLSKA S.A."
+              },
+              "event": null,
+              "event_data": null
+            }
+            """;
+
+    private final WebhookVerifier verifier = new WebhookVerifier(config());
+
+    @Test
+    public void testPayout() {
+        String signature = SignUtil.createSign(JSON.parseObject(PAYOUT_WEBHOOK_SAMPLE), APP_SECRET);
+
+        JSONObject notification = verifier.verifyPayout(PAYOUT_WEBHOOK_SAMPLE, signature);
+        assertNotNull(notification);
+        assertEquals("P202501130001", notification.getString("pay_order_id"));
+        assertNotNull(verifier.verifyPayout(PAYOUT_WEBHOOK_SAMPLE.getBytes(StandardCharsets.UTF_8), signature));
+
+        assertNull(verifier.verifyPayout(PAYOUT_WEBHOOK_SAMPLE, signature.toLowerCase()));
+        assertNull(verifier.verifyPayout(PAYOUT_WEBHOOK_SAMPLE.replace("1000.00", "9999.00"), signature));
+        assertNull(verifier.verifyPayout(PAYOUT_WEBHOOK_SAMPLE, null));
+    }
+
+    @Test
+    public void testPayinByApiVersion() {
+        for (String apiVersion : new String[]{"v1", "V1", "", " ", null, "v2"}) {
+            JSONObject webhook = JSON.parseObject(PAYIN_WEBHOOK_SAMPLE);
+            webhook.put("api_version", apiVersion);
+            String body = JSON.toJSONString(webhook);
+            String signature = SignUtil.createSign(buildSignPayloadByApiVersion(JSON.parseObject(body)), APP_SECRET);
+
+            assertNotNull(verifier.verifyPayin(body, signature), body);
+            assertNotNull(verifier.verifyPayin(body.getBytes(StandardCharsets.UTF_8), signature), body);
+
+            // Only v2 signs the channel data
+            String tampered = body.replace("\"PL\"", "\"DE\"");
+            assertEquals("v2".equals(apiVersion), verifier.verifyPayin(tampered, signature) == null, body);
+        }
+    }
+
+    @Test
+    public void testOnlyExcludedFields() {
+        String body = "{\"api_version\":\"v1\",\"event\":\"x\"}";
+        assertNotNull(verifier.verifyPayin(body, SignUtil.createSign(new JSONObject(), APP_SECRET)));
+    }
+
+    /**
+     * Reference procedure from PayinWebhookVerifyExample
+     */
+    private static JSONObject buildSignPayloadByApiVersion(JSONObject signPayload) {
+        String apiVersion = signPayload.getString("api_version");
+        if (apiVersion == null || apiVersion.isBlank() || "v1".equalsIgnoreCase(apiVersion)) {
+            signPayload.remove("api_version");
+            signPayload.remove("order_status_int");
+            signPayload.remove("channel_biz_data");
+            signPayload.remove("event");
+            signPayload.remove("event_data");
+        }
+        return signPayload;
+    }
+
+    private static ApiConfig config() {
+        ApiConfig config = new ApiConfig();
+        config.setAppSecret(APP_SECRET);
+        return config;
+    }
+}